@@ -43,9 +43,12 @@ public class AssertJAspect {
             ProceedingJoinPoint pjp) throws Throwable {
 
         AssertionError ae = (AssertionError) pjp.proceed();
-        if (ae.getStackTrace()[2].getMethodName().equals("assertCommandExistsOnTimeOut") ||
-                ae.getStackTrace()[2].getMethodName().equals("assertSeleniumNElementExistsOnTimeOut") ||
-                ae.getStackTrace()[2].getMethodName().equals("sendRequestTimeout")) {
+        // Polled steps run their checks inside lambdas, named lambda$<method>$<n>
+        String methodName = ae.getStackTrace()[2].getMethodName().replaceAll("^lambda\\$(.+)\\$\\d+$", "$1");
+        if (methodName.equals("assertCommandExistsOnTimeOut") ||
+                methodName.equals("assertSeleniumNElementExistsOnTimeOut") ||
+                methodName.equals("sendRequestTimeout") ||
+                methodName.equals("sendRequestDataTableTimeout")) {
             logger.warn("Assertion failed: {}", ae.getMessage());
         } else {
             logger.error("Assertion failed: {}", ae.getMessage());
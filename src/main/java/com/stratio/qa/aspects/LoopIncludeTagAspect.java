@@ -17,6 +17,8 @@
 package com.stratio.qa.aspects;
 
 import com.stratio.qa.exceptions.IncludeException;
+import com.stratio.qa.utils.FeatureCacheUtil;
+import com.stratio.qa.utils.FeatureCacheUtils;
 import cucumber.runtime.io.Resource;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -25,12 +27,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -53,13 +59,70 @@ public class LoopIncludeTagAspect {
      */
     @Around(value = "featureBuilderRead(resource)")
     public String aroundAddLoopTagPointcutScenario(Resource resource) throws Throwable {
-        List<String> lines = Files.readAllLines(Paths.get(resource.getPath()), StandardCharsets.UTF_8);
-        String listParams;
-        String paramReplace;
         String path = resource.getPath();
+        String source = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)))).toString();
+        List<String> lines = readLines(source);
         int endIndex = path.lastIndexOf("/") + 1;
         path = path.substring(0, endIndex);
 
+        FeatureCacheUtils cache = FeatureCacheUtil.INSTANCE.getFeatureCacheUtils();
+        String key = cache.isEnabled() ? cacheKey(source, lines, path) : null;
+        if (key != null) {
+            String feature = cache.get(key);
+            if (feature != null) {
+                logger.debug("Using cached expansion of {}", resource.getPath());
+                return feature;
+            }
+        }
+        String feature = expandLines(lines, path);
+        if (key != null) {
+            cache.put(key, feature);
+        }
+        return feature;
+    }
+
+    private List<String> readLines(String source) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(source));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Key of the expanded feature: hash of its source, the features it includes and the system properties
+     * its loop and background tags refer to.
+     *
+     * @return String, or null if the tags can not be parsed, so that the expansion reports the error
+     */
+    private String cacheKey(String source, List<String> lines, String path) {
+        Map<String, byte[]> includes = new HashMap<>();
+        Map<String, String> properties = new HashMap<>();
+        try {
+            for (String line : lines) {
+                if (line.contains("@include")) {
+                    File include = new File(path + getFeatureName(line));
+                    includes.put(include.getPath(), include.isFile() ? Files.readAllBytes(include.toPath()) : null);
+                } else if (line.toUpperCase().matches("\\s*@(MULTILOOP|LOOP|BACKGROUND).*")) {
+                    String tagParams = line.substring(line.lastIndexOf("(") + 1, line.length() - 1);
+                    properties.put(tagParams, System.getProperty(tagParams));
+                    for (String name : tagParams.split(",|=>")) {
+                        properties.put(name, System.getProperty(name));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Feature expansion will not be cached: {}", e.toString());
+            return null;
+        }
+        return FeatureCacheUtil.INSTANCE.getFeatureCacheUtils().key(source, includes, properties);
+    }
+
+    private String expandLines(List<String> lines, String path) throws IncludeException {
+        String listParams;
+        String paramReplace;
 
         for (int s = 0; s < lines.size(); s++) {
             if (lines.get(s).toUpperCase().matches("\\s*@MULTILOOP.*")) {
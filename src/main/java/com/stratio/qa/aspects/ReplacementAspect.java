@@ -20,11 +20,17 @@ import com.stratio.qa.cucumber.testng.CucumberReporter;
 import com.stratio.qa.exceptions.NonReplaceableException;
 import com.stratio.qa.specs.CommonG;
 import com.stratio.qa.utils.ExceptionList;
-import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.PlaceholderCacheUtil;
+import com.stratio.qa.utils.PlaceholderTemplate;
+import com.stratio.qa.utils.PlaceholderTemplate.Kind;
+import com.stratio.qa.utils.StepMatchCacheUtil;
+import com.stratio.qa.utils.VariableStore;
+import cucumber.runtime.StepDefinitionMatch;
 import gherkin.I18n;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,16 +40,22 @@ import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Aspect
 public class ReplacementAspect {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
 
-    private String lastEchoedStep = "";
+    private static final ConcurrentMap<List<Object>, Field> FIELDS = new ConcurrentHashMap<>();
 
+    private String lastEchoedStep = "";
 
     @Pointcut("(execution (gherkin.formatter.model.Scenario.new(..)) ||  execution (gherkin.formatter.model.ScenarioOutline.new(..))) && "
             + "args (comments, tags, keyword, name, description, line, id) ")
@@ -58,16 +70,7 @@ public class ReplacementAspect {
         String newScenarioName = replacedElement(scenarioName, jp);
 
         if (!scenarioName.equals(newScenarioName)) {
-            Field field = null;
-            Class current = scenario.getClass();
-            do {
-                try {
-                    field = current.getDeclaredField("name");
-                } catch (Exception e) { }
-            } while ((current = current.getSuperclass()) != null);
-
-            field.setAccessible(true);
-            field.set(scenario, replacedElement(name, jp));
+            getField(scenario.getClass(), "name").set(scenario, replacedElement(name, jp));
         }
     }
 
@@ -82,8 +85,9 @@ public class ReplacementAspect {
         List<DataTableRow> rows = step.getRows();
         if (docString != null) {
             String value = replacedElement(docString.getValue(), jp);
-            Field field = docString.getClass().getField("value");
-            field.set(field, value);
+            if (!value.equals(docString.getValue())) {
+                getField(docString.getClass(), "value").set(docString, value);
+            }
         }
         if (rows != null) {
             for (int r = 0; r < rows.size(); r++) {
@@ -104,33 +108,84 @@ public class ReplacementAspect {
         }
         if (!stepName.equals(newName)) {
             //field up to BasicStatement, from Step and ExampleStep
+            getField(step.getClass(), "name").set(step, newName);
+        }
+
+        lastEchoedStep = step.getName();
+        logger.info("  {}{}", step.getKeyword(), step.getName());
+    }
+
+    @Pointcut("execution (* cucumber.runtime.RuntimeGlue.stepDefinitionMatch(..)) && "
+            + "args (featurePath, step, i18n)")
+    protected void stepDefinitionMatch(String featurePath, Step step, I18n i18n) {
+    }
+
+    /**
+     * Matches the steps run by {@link cucumber.runtime.Runtime#runStep}, once replaced, through the step match cache.
+     *
+     * @param pjp         ProceedingJoinPoint
+     * @param featurePath path of the feature of the step
+     * @param step        step to match
+     * @param i18n        language of the feature
+     * @return StepDefinitionMatch
+     * @throws Throwable exception
+     */
+    @Around(value = "stepDefinitionMatch(featurePath, step, i18n)")
+    public Object aroundStepDefinitionMatch(ProceedingJoinPoint pjp, String featurePath, Step step, I18n i18n) throws Throwable {
+        return StepMatchCacheUtil.INSTANCE.getStepMatchCacheUtils().match(pjp.getThis(), featurePath, step, i18n, () -> (StepDefinitionMatch) pjp.proceed());
+    }
+
+    /**
+     * Accessible field with the given name declared by the class or its topmost superclass declaring it, looked up
+     * only once per class.
+     */
+    private static Field getField(Class<?> clazz, String name) {
+        return FIELDS.computeIfAbsent(Arrays.asList(clazz, name), k -> {
             Field field = null;
-            Class current = step.getClass();
+            Class<?> current = clazz;
             do {
                 try {
-                    field = current.getDeclaredField("name");
-                } catch (Exception e) { }
+                    field = current.getDeclaredField(name);
+                } catch (NoSuchFieldException e) { }
             } while ((current = current.getSuperclass()) != null);
-
+            if (field == null) {
+                throw new IllegalArgumentException("Field " + name + " not found in " + clazz.getName());
+            }
             field.setAccessible(true);
-            field.set(step, newName);
-        }
-
-        lastEchoedStep = step.getName();
-        logger.info("  {}{}", step.getKeyword(), step.getName());
+            return field;
+        });
     }
 
+    /**
+     * Replaces the ${}, !{} and @{} placeholders of the element in a single pass, with the template compiled
+     * from it the first time it is found.
+     *
+     * @param el element to be replaced
+     * @param jp JoinPoint
+     * @return String
+     * @throws NonReplaceableException exception
+     */
     protected String replacedElement(String el, JoinPoint jp) throws NonReplaceableException {
-        if (el.contains("${")) {
-            el = replaceEnvironmentPlaceholders(el, jp);
-        }
-        if (el.contains("!{")) {
-            el = replaceReflectionPlaceholders(el, jp);
-        }
-        if (el.contains("@{")) {
-            el = replaceCodePlaceholders(el, jp);
-        }
-        return el;
+        PlaceholderTemplate template = PlaceholderCacheUtil.INSTANCE.getPlaceholderCacheUtils().getTemplate(el);
+        return template.hasPlaceholders() ? template.render(resolver(el, jp)) : el;
+    }
+
+    private String replace(String element, Set<Kind> kinds, JoinPoint jp) throws NonReplaceableException {
+        return PlaceholderTemplate.compile(element, kinds).render(resolver(element, jp));
+    }
+
+    private PlaceholderTemplate.Resolver resolver(String element, JoinPoint jp) {
+        boolean lenient = jp != null && jp.getThis() instanceof CucumberReporter.TestMethod;
+        return (kind, name, defaultValue) -> {
+            switch (kind) {
+                case ENVIRONMENT:
+                    return environmentValue(element, name, defaultValue, lenient);
+                case VARIABLE:
+                    return variableValue(element, name, lenient);
+                default:
+                    return codeValue(element, name, lenient);
+            }
+        };
     }
 
     /**
@@ -154,59 +209,48 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceCodePlaceholders(String element, JoinPoint pjp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("@{")) {
-            String placeholder = newVal.substring(newVal.indexOf("@{"), newVal.indexOf("}", newVal.indexOf("@{")) + 1);
-            String property = placeholder.substring(2, placeholder.length() - 1).toLowerCase();
-            String subproperty = "";
-            CommonG commonJson;
-            if (placeholder.contains(".")) {
-                property = placeholder.substring(2, placeholder.indexOf(".")).toLowerCase();
-                subproperty = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-            } else {
-                if (pjp.getThis() instanceof CucumberReporter.TestMethod) {
-                    return newVal;
-                } else {
-                    logger.error("{} -> {} placeholded element has not been replaced previously.", element, property);
-                    throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-                }
-            }
+        return replace(element, EnumSet.of(Kind.CODE), pjp);
+    }
 
-            switch (property) {
-                case "ip":
-                    boolean found = false;
-                    if (!subproperty.isEmpty()) {
-                        Enumeration<InetAddress> ifs = null;
-                        try {
-                            ifs = NetworkInterface.getByName(subproperty).getInetAddresses();
-                        } catch (SocketException e) {
-                            this.logger.error(e.getMessage());
-                        }
-                        while (ifs.hasMoreElements() && !found) {
-                            InetAddress itf = ifs.nextElement();
-                            if (itf instanceof Inet4Address) {
-                                String ip = itf.getHostAddress();
-                                newVal = newVal.replace(placeholder, ip);
-                                found = true;
-                            }
-                        }
+    private String codeValue(String element, String placeholder, boolean lenient) throws NonReplaceableException {
+        if (!placeholder.contains(".")) {
+            if (lenient) {
+                return null;
+            }
+            logger.error("{} -> {} placeholded element has not been replaced previously.", element, placeholder.toLowerCase());
+            throw new NonReplaceableException("Unreplaceable placeholder: @{" + placeholder + "}");
+        }
+        String property = placeholder.substring(0, placeholder.indexOf(".")).toLowerCase();
+        String subproperty = placeholder.substring(placeholder.indexOf(".") + 1);
+        CommonG commonJson;
+
+        switch (property) {
+            case "ip":
+                if (!subproperty.isEmpty()) {
+                    Enumeration<InetAddress> ifs = null;
+                    try {
+                        NetworkInterface networkInterface = NetworkInterface.getByName(subproperty);
+                        ifs = networkInterface == null ? null : networkInterface.getInetAddresses();
+                    } catch (SocketException e) {
+                        this.logger.error(e.getMessage());
                     }
-                    if (!found) {
-                        throw new NonReplaceableException("Interface " + subproperty + " not available");
+                    while (ifs != null && ifs.hasMoreElements()) {
+                        InetAddress itf = ifs.nextElement();
+                        if (itf instanceof Inet4Address) {
+                            return itf.getHostAddress();
+                        }
                     }
-                    break;
-                case "json":
-                case "file":
-                    commonJson = new CommonG();
-                    newVal = newVal.replace(placeholder, commonJson.retrieveData(subproperty, property));
-                    break;
-                default:
-                    commonJson = new CommonG();
-                    commonJson.getLogger().error("Replacement with an undefined option ({})", property);
-                    newVal = newVal.replace(placeholder, "");
-            }
+                }
+                throw new NonReplaceableException("Interface " + subproperty + " not available");
+            case "json":
+            case "file":
+                commonJson = new CommonG();
+                return commonJson.retrieveData(subproperty, property);
+            default:
+                commonJson = new CommonG();
+                commonJson.getLogger().error("Replacement with an undefined option ({})", property);
+                return "";
         }
-        return newVal;
     }
 
 
@@ -220,24 +264,17 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceReflectionPlaceholders(String element, JoinPoint pjp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("!{")) {
-            String placeholder = newVal.substring(newVal.indexOf("!{"),
-                    newVal.indexOf("}", newVal.indexOf("!{")) + 1);
-            String attribute = placeholder.substring(2, placeholder.length() - 1);
-            // we want to use value previously saved
-            String prop = ThreadProperty.get(attribute);
-
-            if (prop == null && (pjp.getThis() instanceof CucumberReporter.TestMethod)) {
-                return element;
-            } else if (prop == null) {
-                logger.error("{} -> {} local var has not been saved correctly previously.", element, attribute);
-                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-            } else {
-                newVal = newVal.replace(placeholder, prop);
-            }
+        return replace(element, EnumSet.of(Kind.VARIABLE), pjp);
+    }
+
+    private String variableValue(String element, String attribute, boolean lenient) throws NonReplaceableException {
+        // we want to use value previously saved, or shared by the framework
+        String prop = VariableStore.current().get(attribute);
+        if (prop == null && !lenient) {
+            logger.error("{} -> {} local var has not been saved correctly previously.", element, attribute);
+            throw new NonReplaceableException("Unreplaceable placeholder: !{" + attribute + "}");
         }
-        return newVal;
+        return prop;
     }
 
 
@@ -251,64 +288,31 @@ public class ReplacementAspect {
      * @throws NonReplaceableException exception
      */
     protected String replaceEnvironmentPlaceholders(String element, JoinPoint jp) throws NonReplaceableException {
-        String newVal = element;
-        while (newVal.contains("${")) {
-            String placeholder = newVal.substring(newVal.indexOf("${"),
-                    newVal.indexOf("}", newVal.indexOf("${")) + 1);
-            String modifier = "";
-            String sysProp;
-            String defaultValue = "";
-            String prop;
-            String placeholderAux = "";
-
-            if (placeholder.contains(":-")) {
-                defaultValue = placeholder.substring(placeholder.indexOf(":-") + 2, placeholder.length() - 1);
-                placeholderAux = placeholder.substring(0, placeholder.indexOf(":-")) + "}";
-            }
-
-            if (placeholderAux.contains(".")) {
-                if (placeholder.contains(":-")) {
-                    sysProp = placeholderAux.substring(2, placeholderAux.indexOf("."));
-                    modifier = placeholderAux.substring(placeholderAux.indexOf(".") + 1, placeholderAux.length() - 1);
-                } else {
-                    sysProp = placeholder.substring(2, placeholder.indexOf("."));
-                    modifier = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-                }
-            } else {
-                if (defaultValue.isEmpty()) {
-                    if (placeholder.contains(".")) {
-                        modifier = placeholder.substring(placeholder.indexOf(".") + 1, placeholder.length() - 1);
-                        sysProp = placeholder.substring(2, placeholder.indexOf("."));
-                    } else {
-                        sysProp = placeholder.substring(2, placeholder.length() - 1);
-                    }
-                } else {
-                    sysProp = placeholder.substring(2, placeholder.indexOf(":-"));
-                }
-            }
-
-            if (defaultValue.isEmpty()) {
-                prop = System.getProperty(sysProp);
-            } else {
-                prop = System.getProperty(sysProp, defaultValue);
-            }
+        return replace(element, EnumSet.of(Kind.ENVIRONMENT), jp);
+    }
 
-            if (prop == null && (jp.getThis() instanceof CucumberReporter.TestMethod)) {
-                return element;
-            } else if (prop == null) {
-                logger.error("{} -> {} env var has not been defined.", element, sysProp);
-                throw new NonReplaceableException("Unreplaceable placeholder: " + placeholder);
-            }
+    private String environmentValue(String element, String placeholder, String defaultValue, boolean lenient) throws NonReplaceableException {
+        String sysProp = placeholder;
+        String modifier = "";
+        if (placeholder.contains(".")) {
+            sysProp = placeholder.substring(0, placeholder.indexOf("."));
+            modifier = placeholder.substring(placeholder.indexOf(".") + 1);
+        }
 
-            if ("toLower".equals(modifier)) {
-                prop = prop.toLowerCase();
-            } else if ("toUpper".equals(modifier)) {
-                prop = prop.toUpperCase();
+        String prop = defaultValue == null ? System.getProperty(sysProp) : System.getProperty(sysProp, defaultValue);
+        if (prop == null) {
+            if (lenient) {
+                return null;
             }
-            newVal = newVal.replace(placeholder, prop);
+            logger.error("{} -> {} env var has not been defined.", element, sysProp);
+            throw new NonReplaceableException("Unreplaceable placeholder: ${" + placeholder + "}");
         }
 
-        return newVal;
+        if ("toLower".equals(modifier)) {
+            prop = prop.toLowerCase();
+        } else if ("toUpper".equals(modifier)) {
+            prop = prop.toUpperCase();
+        }
+        return prop;
     }
 }
-
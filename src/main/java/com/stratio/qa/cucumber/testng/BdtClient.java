@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Thin client submitting features to a running {@link BdtDaemon} and printing the results as they arrive.
+ *
+ * Usage: BdtClient [--tags expression]... feature... | --stop
+ *
+ * The exit code is 0 when every scenario passed, 1 otherwise and 2 if the daemon is not available.
+ */
+public final class BdtClient {
+
+    private BdtClient() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: BdtClient [--tags expression]... feature... | --stop");
+            System.exit(2);
+        }
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), BdtDaemon.getPort());
+        } catch (Exception e) {
+            System.err.println("BDT daemon not available on port " + BdtDaemon.getPort() + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        boolean passed = false;
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < args.length; i++) {
+                if ("--stop".equals(args[i])) {
+                    out.println(BdtDaemon.STOP);
+                } else if ("--tags".equals(args[i]) && i + 1 < args.length) {
+                    out.println(BdtDaemon.TAGS + args[++i]);
+                } else {
+                    out.println(BdtDaemon.FEATURE + args[i]);
+                }
+            }
+            out.println();
+            out.flush();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                System.out.println(line);
+                if (line.startsWith(BdtDaemon.RESULT)) {
+                    passed = !line.equals(BdtDaemon.RESULT + "FAILED");
+                    break;
+                }
+            }
+        } finally {
+            socket.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import com.stratio.qa.aspects.ReplacementAspect;
+import com.stratio.qa.utils.RestClientUtil;
+import com.stratio.qa.utils.SshSessionUtil;
+import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.VariableStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Long running BDT process executing the features submitted by {@link BdtClient}, so that JVM startup, aspect
+ * weaving, class loading and pooled connections are paid once instead of on every run.
+ *
+ * It listens on BDT_DAEMON_PORT (7917 by default) of the loopback interface only. Requests are one line per
+ * feature path ("FEATURE path") and tag expression ("TAGS expression"), ended by an empty line, or "STOP" to
+ * shut the daemon down. The results are streamed back and the response ends with "RESULT PASSED" or
+ * "RESULT FAILED". Runs are executed one after another, each one with a copy of the initial thread properties.
+ */
+public final class BdtDaemon {
+
+    public static final String FEATURE = "FEATURE ";
+
+    public static final String TAGS = "TAGS ";
+
+    public static final String STOP = "STOP";
+
+    public static final String RESULT = "RESULT ";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BdtDaemon.class);
+
+    private final CucumberRunner runner;
+
+    private final Properties initialProps;
+
+    private BdtDaemon(CucumberRunner runner) {
+        this.runner = runner;
+        this.initialProps = new Properties();
+        this.initialProps.putAll(ThreadProperty.getAll());
+    }
+
+    public static int getPort() {
+        return Integer.parseInt(System.getProperty("BDT_DAEMON_PORT", "7917"));
+    }
+
+    /**
+     * Whether the aspects are woven, either by the aspectjweaver javaagent or at build time, which adds aspectOf to them.
+     *
+     * @return true if they are woven
+     */
+    static boolean isWoven() {
+        try {
+            ReplacementAspect.class.getMethod("aspectOf");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!isWoven()) {
+            throw new IllegalStateException("Aspects are not woven, the daemon has to be run with the aspectjweaver "
+                    + "javaagent (-javaagent:aspectjweaver.jar) or with the jar built by the woven profile");
+        }
+        BdtDaemon daemon = new BdtDaemon(new CucumberRunner(BdtDaemon.class));
+        try (ServerSocket server = new ServerSocket(getPort(), 50, InetAddress.getLoopbackAddress())) {
+            LOGGER.info("BDT daemon listening on port {}", server.getLocalPort());
+            boolean running = true;
+            while (running) {
+                try (Socket client = server.accept()) {
+                    running = daemon.serve(client);
+                } catch (IOException e) {
+                    LOGGER.warn("Error serving BDT client", e);
+                }
+            }
+        } finally {
+            RestClientUtil.INSTANCE.getRestClientUtils().closeAll();
+            SshSessionUtil.INSTANCE.getSshSessionUtils().closeAll();
+        }
+        LOGGER.info("BDT daemon stopped");
+    }
+
+    /**
+     * Serves a request.
+     *
+     * @return false if the daemon has to stop
+     */
+    private boolean serve(Socket client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+        List<String> features = new ArrayList<String>();
+        List<String> tags = new ArrayList<String>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            if (STOP.equals(line)) {
+                out.println(RESULT + "STOPPED");
+                out.flush();
+                return false;
+            } else if (line.startsWith(FEATURE)) {
+                features.add(line.substring(FEATURE.length()).trim());
+            } else if (line.startsWith(TAGS)) {
+                tags.add(line.substring(TAGS.length()).trim());
+            }
+        }
+        if (features.isEmpty()) {
+            out.println("No feature given");
+            out.println(RESULT + "FAILED");
+            out.flush();
+            return true;
+        }
+
+        LOGGER.info("Running {} with tags {}", features, tags);
+        Properties props = new Properties();
+        props.putAll(initialProps);
+        ThreadProperty.setAll(props);
+        VariableStore.reset();
+        DaemonReporter reporter = new DaemonReporter(out);
+        long start = System.currentTimeMillis();
+        List<Throwable> errors;
+        try {
+            errors = runner.runFeatures(features, tags, reporter);
+        } catch (Exception e) {
+            errors = new ArrayList<Throwable>();
+            errors.add(e);
+        }
+        for (Throwable error : errors) {
+            if (error.getMessage() == null || !error.getMessage().contains("TESTS EXECUTION ABORTED!")) {
+                out.println("Error: " + error);
+            }
+        }
+        boolean passed = errors.isEmpty() && reporter.getFailedScenarios() == 0;
+        out.println(String.format("%d scenarios, %d failed in %d ms", reporter.getScenarios(), reporter.getFailedScenarios(),
+                System.currentTimeMillis() - start));
+        out.println(RESULT + (passed ? "PASSED" : "FAILED"));
+        out.flush();
+        return true;
+    }
+}
@@ -21,6 +21,9 @@ import com.jayway.jsonpath.PathNotFoundException;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
 import com.stratio.qa.specs.CommonG;
+import com.stratio.qa.utils.RequestTimings;
+import com.stratio.qa.utils.RequestTimingsUtil;
+import com.stratio.qa.utils.RunStatusUtil;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.runtime.CucumberException;
 import cucumber.runtime.Utils;
@@ -30,24 +33,20 @@ import gherkin.formatter.Formatter;
 import gherkin.formatter.Reporter;
 import gherkin.formatter.model.*;
 import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.*;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -63,31 +62,33 @@ public class CucumberReporter implements Formatter, Reporter {
 
     public static final int DEFAULT_MAX_LENGTH = 140;
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
     private static final String STATUS = "status";
 
-    private final Document document;
+    private static final String[] TESTNG_CONTAINERS = {"testng-results", "suite", "test"};
 
-    private final Document jUnitDocument;
+    private static final String[] JUNIT_CONTAINERS = {"testsuites", "testsuite"};
 
-    private final Element results;
+    private final StreamingXmlReport report;
 
-    private final Element jUnitResults;
+    private final StreamingXmlReport jUnitReport;
 
-    private final Element suite;
+    private Document document;
 
-    private final Element jUnitSuite;
+    private Document jUnitDocument;
 
-    private final Element test;
+    private int totalCount = 0;
 
-    private String featureName;
+    private int passedCount = 0;
+
+    private int failedCount = 0;
 
-    private Writer writer;
+    private int skippedCount = 0;
 
-    private Writer  writerJunit;
+    private List<Double> durations = new ArrayList<Double>();
 
-    private Element clazz;
+    private String featureName;
 
     private Element root;
 
@@ -103,6 +104,14 @@ public class CucumberReporter implements Formatter, Reporter {
 
     private List<Step> tmpStepsBG = new ArrayList<Step>();
 
+    private List<RequestTimings> tmpHookTimings = new ArrayList<RequestTimings>();
+
+    private List<RequestTimings> featureTimings = new ArrayList<RequestTimings>();
+
+    private JSONArray scenarioTimings = new JSONArray();
+
+    private JSONObject scenarioDurations = new JSONObject();
+
     private Integer iteration = 0;
 
     private Integer position = 0;
@@ -130,24 +139,9 @@ public class CucumberReporter implements Formatter, Reporter {
         this.url = url;
         this.cClass = cClass;
         this.additional = additional;
-
-        try {
-            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            results = document.createElement("testng-results");
-            suite = document.createElement("suite");
-            test = document.createElement("test");
-            callerClass = cClass;
-            suite.appendChild(test);
-            results.appendChild(suite);
-            document.appendChild(results);
-            jUnitDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-            jUnitResults = jUnitDocument.createElement("testsuites");
-            jUnitSuite = jUnitDocument.createElement("testsuite");
-            jUnitDocument.appendChild(jUnitResults);
-            jUnitResults.appendChild(jUnitSuite);
-        } catch (ParserConfigurationException e) {
-            throw new CucumberException("Error initializing DocumentBuilder.", e);
-        }
+        this.callerClass = cClass;
+        this.report = new StreamingXmlReport(new File(url + cClass + additional + "TESTNG.xml"), TESTNG_CONTAINERS, "class");
+        this.jUnitReport = new StreamingXmlReport(new File(url + cClass + additional + "JUNIT.xml"), JUNIT_CONTAINERS, null);
     }
 
     @Override
@@ -161,9 +155,13 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void feature(Feature feature) {
         featureName = feature.getName();
-        clazz = document.createElement("class");
+        Element clazz = report.newEntryDocument().createElement("class");
         clazz.setAttribute("name", callerClass);
-        test.appendChild(clazz);
+        try {
+            report.openGroup(clazz);
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
     }
 
     @Override
@@ -182,11 +180,14 @@ public class CucumberReporter implements Formatter, Reporter {
 
     @Override
     public void startOfScenarioLifeCycle(Scenario scenario) {
+        document = report.newEntryDocument();
+        jUnitDocument = jUnitReport.newEntryDocument();
         root = document.createElement("test-method");
         jUnitRoot = jUnitDocument.createElement("testcase");
-        jUnitSuite.appendChild(jUnitRoot);
-        clazz.appendChild(root);
+        jUnitReport.getEntryParent(jUnitDocument).appendChild(jUnitRoot);
+        report.getEntryParent(document).appendChild(root);
         testMethod = new TestMethod(featureName, scenario);
+        RunStatusUtil.INSTANCE.getRunStatusUtils().scenarioStarted(featureName, scenario.getName());
         testMethod.hooks = tmpHooks;
         tmpStepsBG.clear();
         if (tmpExamples == null) {
@@ -231,6 +232,13 @@ public class CucumberReporter implements Formatter, Reporter {
             e.printStackTrace();
         }
 
+        tmpHookTimings.addAll(RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().drain());
+        JSONObject timings = testMethod.timingsToJson(root.getAttribute("name"), tmpHookTimings, featureTimings);
+        if (timings != null) {
+            scenarioTimings.put(timings);
+        }
+        tmpHookTimings.clear();
+
         this.position++;
         if ((tmpExamples != null) && (iteration >= tmpExamples.getRows().size())) {
             tmpExamples = null;
@@ -240,6 +248,49 @@ public class CucumberReporter implements Formatter, Reporter {
         tmpStepsBG.clear();
         testMethod = null;
         jUnitRoot.setAttribute("classname", callerClass);
+        appendScenario();
+    }
+
+    /**
+     * Writes the finished scenario to the reports, keeping only its counters, which are also added to the
+     * live totals of the execution.
+     */
+    private void appendScenario() {
+        double duration;
+        try {
+            duration = Double.parseDouble(root.hasAttribute("duration-ms") ? root.getAttribute("duration-ms") : "0");
+        } catch (NumberFormatException e) {
+            throw new CucumberException(e);
+        }
+        durations.add(duration);
+        addDuration(scenarioDurations, featureName, root.getAttribute("name"), (long) duration);
+        RunStatusUtil.INSTANCE.getRunStatusUtils().scenarioFinished(root.hasAttribute(STATUS) ? root.getAttribute(STATUS) : null, duration);
+        if (root.hasAttribute(STATUS)) {
+            totalCount++;
+            switch (root.getAttribute(STATUS)) {
+                case "PASS":
+                    passedCount++;
+                    break;
+                case "FAIL":
+                    failedCount++;
+                    break;
+                case "SKIP":
+                    skippedCount++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        try {
+            report.append(document);
+            if (jUnitRoot.getParentNode() != null) {
+                jUnitReport.append(jUnitDocument);
+            }
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
+        document = null;
+        jUnitDocument = null;
     }
 
     @Override
@@ -248,67 +299,151 @@ public class CucumberReporter implements Formatter, Reporter {
 
     @Override
     public void done() {
+        Document testNGDocument = newDocument();
+        Element results = testNGDocument.createElement("testng-results");
+        Element suite = testNGDocument.createElement("suite");
+        Element test = testNGDocument.createElement("test");
+        suite.appendChild(test);
+        results.appendChild(suite);
+        testNGDocument.appendChild(results);
+        results.setAttribute("total", String.valueOf(totalCount));
+        results.setAttribute("passed", String.valueOf(passedCount));
+        results.setAttribute("failed", String.valueOf(failedCount));
+        results.setAttribute("skipped", String.valueOf(skippedCount));
+        suite.setAttribute("name", CucumberReporter.class.getName());
+        suite.setAttribute("duration-ms", String.valueOf(getTotalDuration()));
+        test.setAttribute("name", CucumberReporter.class.getName());
+        test.setAttribute("duration-ms", String.valueOf(getTotalDuration()));
         try {
-            results.setAttribute("total", String.valueOf(getElementsCountByAttribute(suite, STATUS, ".*")));
-            results.setAttribute("passed", String.valueOf(getElementsCountByAttribute(suite, STATUS, "PASS")));
-            results.setAttribute("failed", String.valueOf(getElementsCountByAttribute(suite, STATUS, "FAIL")));
-            results.setAttribute("skipped", String.valueOf(getElementsCountByAttribute(suite, STATUS, "SKIP")));
-            suite.setAttribute("name", CucumberReporter.class.getName());
-            suite.setAttribute("duration-ms",
-                    String.valueOf(getTotalDuration(suite.getElementsByTagName("test-method"))));
-            test.setAttribute("name", CucumberReporter.class.getName());
-            test.setAttribute("duration-ms",
-                    String.valueOf(getTotalDuration(suite.getElementsByTagName("test-method"))));
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-            URLOutputStream urlOS = null;
-            try {
-                urlOS = new URLOutputStream(Utils.toURL(url + cClass + additional + "TESTNG.xml"));
-                this.writer = new UTF8OutputStreamWriter(urlOS);
-            } catch (Exception e) {
-                logger.error("error writing TESTNG.xml file", e);
-            }
+            report.finish(testNGDocument);
+        } catch (IOException e) {
+            logger.error("error writing TESTNG.xml file", e);
+        }
+
+        Document jUnitResultsDocument = newDocument();
+        Element jUnitResults = jUnitResultsDocument.createElement("testsuites");
+        Element jUnitSuite = jUnitResultsDocument.createElement("testsuite");
+        jUnitResultsDocument.appendChild(jUnitResults);
+        jUnitResults.appendChild(jUnitSuite);
+        jUnitSuite.setAttribute("name", callerClass + "." + featureName);
+        jUnitSuite.setAttribute("tests", String.valueOf(totalCount));
+        jUnitSuite.setAttribute("failures", String.valueOf(failedCount));
+        jUnitSuite.setAttribute("errors", String.valueOf(failedCount));
+        jUnitSuite.setAttribute("skipped", String.valueOf(skippedCount));
+        jUnitSuite.setAttribute("timestamp", new java.util.Date().toString());
+        jUnitSuite.setAttribute("time",
+                  String.valueOf(BigDecimal.valueOf(getTotalDurationMs()).setScale(3, BigDecimal.ROUND_HALF_UP).floatValue()));
+        try {
+            jUnitReport.finish(jUnitResultsDocument);
+        } catch (IOException e) {
+            logger.error("error writing JUNIT.xml file", e);
+        }
+
+        writeTimings();
+        writeDurations();
+    }
 
-            StreamResult streamResult = new StreamResult(writer);
-            DOMSource domSource = new DOMSource(document);
-            transformer.transform(domSource, streamResult);
-            jUnitSuite.setAttribute("name", callerClass + "." + featureName);
-            jUnitSuite.setAttribute("tests", String.valueOf(getElementsCountByAttribute(suite, STATUS, ".*")));
-            jUnitSuite.setAttribute("failures", String.valueOf(getElementsCountByAttribute(suite, STATUS, "FAIL")));
-            jUnitSuite.setAttribute("errors", String.valueOf(getElementsCountByAttribute(suite, STATUS, "FAIL")));
-            jUnitSuite.setAttribute("skipped", String.valueOf(getElementsCountByAttribute(suite, STATUS, "SKIP")));
-            jUnitSuite.setAttribute("timestamp", new java.util.Date().toString());
-            jUnitSuite.setAttribute("time",
-                      String.valueOf(BigDecimal.valueOf(getTotalDurationMs(suite.getElementsByTagName("test-method"))).setScale(3, BigDecimal.ROUND_HALF_UP).floatValue()));
-
-            Transformer transformerJunit = TransformerFactory.newInstance().newTransformer();
-            transformerJunit.setOutputProperty(OutputKeys.INDENT, "yes");
-
-            try {
-                urlOS = new URLOutputStream(Utils.toURL(url + cClass + additional + "JUNIT.xml"));
-                this.writerJunit = new UTF8OutputStreamWriter(urlOS);
-            } catch (Exception e) {
-                logger.error("error writing TESTNG.xml file", e);
+    /**
+     * Closes the report files until more results are written, so that the reporters of the features waiting to
+     * be merged do not keep them open.
+     */
+    @Override
+    public void close() {
+        try {
+            report.close();
+            jUnitReport.close();
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
+    }
+
+    /**
+     * Appends the results collected by another reporter of the same runner, i.e. the reporter of a feature
+     * executed by a parallel worker. Reports are merged in the order this method is called, so the final
+     * report does not depend on which worker finished first.
+     *
+     * @param other reporter whose results are appended
+     */
+    public void merge(CucumberReporter other) {
+        try {
+            report.append(other.report);
+            jUnitReport.append(other.jUnitReport);
+        } catch (IOException e) {
+            throw new CucumberException("Error writing report.", e);
+        }
+        totalCount += other.totalCount;
+        passedCount += other.passedCount;
+        failedCount += other.failedCount;
+        skippedCount += other.skippedCount;
+        durations.addAll(other.durations);
+        if (other.featureName != null) {
+            featureName = other.featureName;
+        }
+        for (String feature : other.scenarioDurations.keySet()) {
+            JSONObject scenarios = other.scenarioDurations.getJSONObject(feature);
+            for (String scenario : scenarios.keySet()) {
+                addDuration(scenarioDurations, feature, scenario, scenarios.getLong(scenario));
             }
+        }
+        for (int i = 0; i < other.scenarioTimings.length(); i++) {
+            scenarioTimings.put(other.scenarioTimings.get(i));
+        }
+        featureTimings.addAll(other.featureTimings);
+        position += other.position;
+    }
 
-            StreamResult streamResultJunit = new StreamResult(writerJunit);
-            DOMSource domSourceJunit = new DOMSource(jUnitDocument);
-            transformerJunit.transform(domSourceJunit, streamResultJunit);
+    /**
+     * Writes the timings of the REST requests sent by each step, with totals per scenario and feature,
+     * in a json file next to the xml reports.
+     */
+    private void writeTimings() {
+        if (featureTimings.isEmpty()) {
+            return;
+        }
+        JSONObject timings = new JSONObject();
+        timings.put("feature", featureName);
+        timings.put("class", callerClass);
+        timings.put("totals", RequestTimings.totals(featureTimings));
+        timings.put("scenarios", scenarioTimings);
+
+        try (Writer timingsWriter = new UTF8OutputStreamWriter(new URLOutputStream(Utils.toURL(url + cClass + additional + "TIMINGS.json")))) {
+            timingsWriter.write(timings.toString(2));
+        } catch (Exception e) {
+            logger.error("error writing TIMINGS.json file", e);
+        }
+    }
 
-        } catch (TransformerException e) {
-            throw new CucumberException("Error transforming report.", e);
+    /**
+     * Writes the duration of each scenario by feature, in a json file next to the xml reports, so that
+     * {@link FeatureScheduler} can tell apart scenarios with the same name in different features.
+     */
+    private void writeDurations() {
+        if (scenarioDurations.length() == 0) {
+            return;
+        }
+        try (Writer durationsWriter = new UTF8OutputStreamWriter(new URLOutputStream(Utils.toURL(url + cClass + additional + "DURATIONS.json")))) {
+            durationsWriter.write(scenarioDurations.toString(2));
+        } catch (Exception e) {
+            logger.error("error writing DURATIONS.json file", e);
         }
     }
 
-    @Override
-    public void close() {
+    private static void addDuration(JSONObject durations, String feature, String scenario, long duration) {
+        String key = feature != null ? feature : "";
+        if (!durations.has(key)) {
+            durations.put(key, new JSONObject());
+        }
+        JSONObject scenarios = durations.getJSONObject(key);
+        if (scenarios.optLong(scenario, -1) < duration) {
+            scenarios.put(scenario, duration);
+        }
     }
 
     // Reporter methods
     @Override
     public void before(Match match, Result result) {
         tmpHooks.add(result);
+        tmpHookTimings.addAll(RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().drain());
     }
 
     @Override
@@ -318,6 +453,7 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void result(Result result) {
         testMethod.results.add(result);
+        testMethod.stepTimings.add(RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().drain());
     }
 
     @Override
@@ -331,44 +467,30 @@ public class CucumberReporter implements Formatter, Reporter {
     @Override
     public void after(Match match, Result result) {
         testMethod.hooks.add(result);
+        tmpHookTimings.addAll(RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().drain());
     }
 
-    private int getElementsCountByAttribute(Node node, String attributeName, String attributeValue) {
-        int count = 0;
-
-        for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-            count += getElementsCountByAttribute(node.getChildNodes().item(i), attributeName, attributeValue);
-        }
-
-        NamedNodeMap attributes = node.getAttributes();
-        if (attributes != null) {
-            Node namedItem = attributes.getNamedItem(attributeName);
-            if (namedItem != null && namedItem.getNodeValue().matches(attributeValue)) {
-                count++;
-            }
+    private Document newDocument() {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new CucumberException("Error initializing DocumentBuilder.", e);
         }
-        return count;
     }
 
-    private double getTotalDuration(NodeList testCaseNodes) {
+    /**
+     * Sum of the durations of the scenarios, added in the order they are reported.
+     */
+    private double getTotalDuration() {
         double totalDuration = 0;
-        for (int i = 0; i < testCaseNodes.getLength(); i++) {
-            try {
-                String duration = "0";
-                Node durationms = testCaseNodes.item(i).getAttributes().getNamedItem("duration-ms");
-                if (durationms != null) {
-                    duration = durationms.getNodeValue();
-                }
-                totalDuration += Double.parseDouble(duration);
-            } catch (NumberFormatException e) {
-                throw new CucumberException(e);
-            }
+        for (double duration : durations) {
+            totalDuration += duration;
         }
         return totalDuration;
     }
 
-    private double getTotalDurationMs(NodeList testCaseNodes) {
-        return getTotalDuration(testCaseNodes) / 1000;
+    private double getTotalDurationMs() {
+        return getTotalDuration() / 1000;
     }
 
     public final class TestMethod {
@@ -377,6 +499,8 @@ public class CucumberReporter implements Formatter, Reporter {
 
         private final List<Result> results = new ArrayList<Result>();
 
+        private final List<List<RequestTimings>> stepTimings = new ArrayList<List<RequestTimings>>();
+
         private Scenario scenario = null;
 
         private String featureName;
@@ -413,7 +537,7 @@ public class CucumberReporter implements Formatter, Reporter {
                 JunitElement.setAttribute("name", name + " " + data);
                 ThreadProperty.set("dataSet", data);
             }
-            element.setAttribute("started-at", DATE_FORMAT.format(new Date()));
+            element.setAttribute("started-at", DATE_FORMAT.format(LocalDateTime.now()));
         }
 
         public String obtainOutlineScenariosExamples(String examplesData) {
@@ -488,7 +612,7 @@ public class CucumberReporter implements Formatter, Reporter {
             Junit.setAttribute("time", String.valueOf(calculateTotalDurationString() / 1000));
 
             element.setAttribute("duration-ms", String.valueOf(calculateTotalDurationString()));
-            element.setAttribute("finished-at", DATE_FORMAT.format(new Date()));
+            element.setAttribute("finished-at", DATE_FORMAT.format(LocalDateTime.now()));
 
             StringBuilder stringBuilder = new StringBuilder();
 
@@ -650,6 +774,51 @@ public class CucumberReporter implements Formatter, Reporter {
         }
 
 
+        /**
+         * Builds the json with the timings of the REST requests sent by each step and the scenario totals
+         *
+         * @param name scenario name
+         * @param hookTimings timings of the requests sent by hooks
+         * @param featureTimings list where all the timings of the scenario are added
+         * @return JSONObject, or null if no request has been sent
+         */
+        private JSONObject timingsToJson(String name, List<RequestTimings> hookTimings, List<RequestTimings> featureTimings) {
+            List<Step> mergedsteps = new ArrayList<Step>();
+            if (stepsbg != null) {
+                mergedsteps.addAll(stepsbg);
+            }
+            mergedsteps.addAll(steps);
+
+            List<RequestTimings> scenarioTimings = new ArrayList<RequestTimings>(hookTimings);
+            JSONArray stepsJson = new JSONArray();
+            for (int i = 0; i < stepTimings.size(); i++) {
+                if (stepTimings.get(i).isEmpty()) {
+                    continue;
+                }
+                JSONObject stepJson = new JSONObject();
+                stepJson.put("step", i < mergedsteps.size() ? mergedsteps.get(i).getKeyword() + mergedsteps.get(i).getName() : String.valueOf(i));
+                JSONArray requests = new JSONArray();
+                for (RequestTimings timings : stepTimings.get(i)) {
+                    requests.put(timings.toJson());
+                }
+                stepJson.put("requests", requests);
+                stepJson.put("totals", RequestTimings.totals(stepTimings.get(i)));
+                stepsJson.put(stepJson);
+                scenarioTimings.addAll(stepTimings.get(i));
+            }
+            if (scenarioTimings.isEmpty()) {
+                return null;
+            }
+            featureTimings.addAll(scenarioTimings);
+
+            JSONObject json = new JSONObject();
+            json.put("scenario", name);
+            json.put("totals", RequestTimings.totals(scenarioTimings));
+            json.put("hooks", RequestTimings.totals(hookTimings));
+            json.put("steps", stepsJson);
+            return json;
+        }
+
         private double calculateTotalDurationString() {
             double totalDurationNanos = 0;
             for (Result r : results) {
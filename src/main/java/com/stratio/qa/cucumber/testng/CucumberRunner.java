@@ -16,6 +16,14 @@
 
 package com.stratio.qa.cucumber.testng;
 
+import com.stratio.qa.processor.GlueIndexProcessor;
+import com.stratio.qa.specs.HookGSpec;
+import com.stratio.qa.utils.RestClientUtil;
+import com.stratio.qa.utils.RunStatusUtil;
+import com.stratio.qa.utils.SshSessionUtil;
+import com.stratio.qa.utils.StepMatchCacheUtil;
+import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.VariableStore;
 import cucumber.api.CucumberOptions;
 import cucumber.runtime.ClassFinder;
 import cucumber.runtime.CucumberException;
@@ -24,6 +32,11 @@ import cucumber.runtime.RuntimeOptionsFactory;
 import cucumber.runtime.io.MultiLoader;
 import cucumber.runtime.io.ResourceLoader;
 import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Tag;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,19 +45,55 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CucumberRunner {
 
+    private static final String SERIAL_TAG = "@serial";
+
+    private static final String FORMATTERS_PACKAGE = "com.stratio.qa.utils";
+
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
     private final cucumber.runtime.Runtime runtime;
 
     private ClassLoader classLoader;
 
     private RuntimeOptions runtimeOptions;
 
+    private ResourceLoader resourceLoader;
+
+    private ClassFinder classFinder;
+
+    private GlueIndex glueIndex;
+
+    private CucumberReporter reporterTestNG;
+
+    private String targetExecutionsPath;
+
+    private String className;
+
+    private String additional;
+
+    private int shardIndex;
+
+    private int shardCount;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass()
             .getCanonicalName());
 
@@ -64,28 +113,37 @@ public class CucumberRunner {
     public CucumberRunner(Class<?> clazz, String... feature) throws IOException, ClassNotFoundException,
             InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
         classLoader = clazz.getClassLoader();
-        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+        resourceLoader = new MultiLoader(classLoader);
+        className = clazz.getCanonicalName();
 
         RuntimeOptionsFactory runtimeOptionsFactory = new RuntimeOptionsFactory(clazz,
                 new Class[]{CucumberOptions.class});
         runtimeOptions = runtimeOptionsFactory.create();
         String testSuffix = System.getProperty("TESTSUFFIX");
-        String targetExecutionsPath = "target/executions/";
+        targetExecutionsPath = "target/executions/";
         if (testSuffix != null) {
             targetExecutionsPath = targetExecutionsPath + testSuffix + "/";
         }
         boolean aux = new File(targetExecutionsPath).mkdirs();
-        CucumberReporter reporterTestNG;
 
         if ((feature.length == 0)) {
-            reporterTestNG = new CucumberReporter(targetExecutionsPath, clazz.getCanonicalName(), "");
+            additional = "";
         } else {
             List<String> features = new ArrayList<String>();
             String fPath = "src/test/resources/features/" + feature[0] + ".feature";
             features.add(fPath);
             runtimeOptions.getFeaturePaths().addAll(features);
-            reporterTestNG = new CucumberReporter(targetExecutionsPath, clazz.getCanonicalName(), feature[0]);
+            additional = feature[0];
+        }
+        shardCount = Integer.parseInt(System.getProperty("SHARD_COUNT", "1"));
+        shardIndex = Integer.parseInt(System.getProperty("SHARD_INDEX", "0"));
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new CucumberException("SHARD_INDEX must be between 0 and SHARD_COUNT - 1");
         }
+        if (shardCount > 1) {
+            additional = additional + "SHARD" + shardIndex;
+        }
+        reporterTestNG = new CucumberReporter(targetExecutionsPath, className, additional);
 
         List<String> uniqueGlue = new ArrayList<String>();
         uniqueGlue.add("classpath:com/stratio/cct/testsAT/specs");
@@ -129,23 +187,56 @@ public class CucumberRunner {
         runtimeOptions.getGlue().clear();
         runtimeOptions.getGlue().addAll(uniqueGlue);
 
+        glueIndex = GlueIndex.get(classLoader);
         runtimeOptions.addFormatter(reporterTestNG);
-        Set<Class<? extends ICucumberFormatter>> implementers = new Reflections("com.stratio.qa.utils")
-                .getSubTypesOf(ICucumberFormatter.class);
+        for (ICucumberFormatter formatter : createFormatters()) {
+            runtimeOptions.addFormatter(formatter);
+        }
+
+        if (glueIndex != null) {
+            classFinder = new IndexedClassFinder(resourceLoader, classLoader, glueIndex);
+        } else {
+            classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+        }
+        runtime = new cucumber.runtime.Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+    }
+
+    /**
+     * Instances of the formatters found in the glue index, or scanning the classpath when there is no index.
+     */
+    private List<ICucumberFormatter> createFormatters() throws NoSuchMethodException, IllegalAccessException,
+            InvocationTargetException, InstantiationException {
+        List<ICucumberFormatter> formatters = new ArrayList<ICucumberFormatter>();
+        Set<Class<? extends ICucumberFormatter>> implementers = new LinkedHashSet<Class<? extends ICucumberFormatter>>();
+        if (glueIndex != null) {
+            for (String name : glueIndex.getClassNames(FORMATTERS_PACKAGE, GlueIndexProcessor.FORMATTER)) {
+                try {
+                    implementers.add(Class.forName(name, true, classLoader).asSubclass(ICucumberFormatter.class));
+                } catch (ClassNotFoundException e) {
+                    logger.warn("Formatter {} of the glue index can not be loaded, the formatters will be scanned", name);
+                    implementers.clear();
+                    break;
+                }
+            }
+        }
+        if (implementers.isEmpty()) {
+            implementers = new Reflections(FORMATTERS_PACKAGE).getSubTypesOf(ICucumberFormatter.class);
+        }
 
         for (Class<? extends ICucumberFormatter> implementerClazz : implementers) {
             Constructor<?> ctor = implementerClazz.getConstructor();
             ctor.setAccessible(true);
-            runtimeOptions.addFormatter((ICucumberFormatter) ctor.newInstance());
+            formatters.add((ICucumberFormatter) ctor.newInstance());
         }
-
-        ClassFinder classFinder = new ResourceLoaderClassFinder(resourceLoader, classLoader);
-        runtime = new cucumber.runtime.Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+        return formatters;
     }
 
     /**
      * Run the testclases(Features).
      *
+     * The REST clients and SSH sessions pooled for the suite are closed when the last runner running in the JVM
+     * finishes, so that runners running at the same time do not close them for each other.
+     *
      * @throws IOException exception
      * @throws NoSuchMethodException exception
      * @throws InvocationTargetException exception
@@ -153,18 +244,273 @@ public class CucumberRunner {
      */
     public void runCukes() throws IOException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
 
-        runtime.run();
+        int workers = Integer.parseInt(System.getProperty("PARALLEL_WORKERS", "1"));
+        List<Throwable> errors;
 
-        if (!runtime.getErrors().isEmpty()) {
-            Iterator<Throwable> iterator = runtime.getErrors().iterator();
+        RUNNING.incrementAndGet();
+        RunStatusUtil.INSTANCE.getRunStatusUtils().start();
+        try {
+            if (workers > 1 || shardCount > 1) {
+                errors = runParallel(workers);
+            } else {
+                runtime.run();
+                errors = runtime.getErrors();
+            }
+        } finally {
+            RunStatusUtil.INSTANCE.getRunStatusUtils().stop();
+            if (RUNNING.decrementAndGet() == 0) {
+                closeSuite();
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            Iterator<Throwable> iterator = errors.iterator();
             while (iterator.hasNext()) {
                 Throwable value = iterator.next();
                 if (value.getMessage().contains("TESTS EXECUTION ABORTED!")) {
                     iterator.remove();
                 }
             }
-            logger.error ("Got {} exceptions", runtime.getErrors());
-            throw new CucumberException(runtime.getErrors().get(0));
+            logger.error ("Got {} exceptions", errors);
+            throw new CucumberException(errors.get(0));
+        }
+    }
+
+    /**
+     * Runs the features on a pool of workers. Each worker has its own cucumber runtime, so its own
+     * CommonG world, and each feature is reported by its own reporter. Features tagged as {@value #SERIAL_TAG},
+     * or having any scenario tagged as such, run one after another once the parallel ones have finished.
+     * The reports are merged in feature order.
+     *
+     * Features are started longest first according to the durations found in EXECUTIONS_HISTORY (the executions
+     * directory by default), and when SHARD_COUNT is greater than 1 only the features bin-packed into the
+     * SHARD_INDEX shard are run. Every node must compute the same partition, so without an explicit
+     * EXECUTIONS_HISTORY the features are split by path instead.
+     *
+     * When a worker fails, the other ones are still waited for, and the reports of the features run are written
+     * before the failure is thrown.
+     *
+     * @param workers number of workers
+     * @return errors of every worker
+     * @throws IOException exception
+     */
+    private List<Throwable> runParallel(int workers) throws IOException {
+        List<CucumberFeature> features = runtimeOptions.cucumberFeatures(resourceLoader);
+        CucumberReporter[] featureReporters = new CucumberReporter[features.size()];
+        Queue<Integer> parallelFeatures = new ConcurrentLinkedQueue<Integer>();
+        Queue<Integer> serialFeatures = new ConcurrentLinkedQueue<Integer>();
+        String history = System.getProperty("EXECUTIONS_HISTORY");
+        FeatureScheduler scheduler = FeatureScheduler.fromReports(new File(history != null ? history : targetExecutionsPath));
+        long[] estimates = scheduler.estimate(features);
+        List<Integer> scheduled;
+        if (shardCount <= 1) {
+            scheduled = FeatureScheduler.longestFirst(estimates);
+        } else if (history != null) {
+            scheduled = FeatureScheduler.binPack(estimates, shardCount).get(shardIndex);
+        } else {
+            logger.warn("EXECUTIONS_HISTORY is not set, features are split between shards by path");
+            List<String> paths = new ArrayList<String>();
+            for (CucumberFeature feature : features) {
+                paths.add(feature.getPath());
+            }
+            scheduled = FeatureScheduler.splitByName(paths, estimates, shardCount).get(shardIndex);
+        }
+        for (Integer i : scheduled) {
+            if (isSerial(features.get(i))) {
+                serialFeatures.add(i);
+            } else {
+                parallelFeatures.add(i);
+            }
+        }
+        logger.info("Running {} of {} features in {} workers, {} of them serially", scheduled.size(), features.size(),
+                workers, serialFeatures.size());
+
+        List<Throwable> errors = new ArrayList<Throwable>();
+        List<ICucumberFormatter> workerFormatters = Collections.synchronizedList(new ArrayList<ICucumberFormatter>());
+        Properties props = ThreadProperty.getAll();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        Throwable failure = null;
+        try {
+            List<Future<List<Throwable>>> results = new ArrayList<Future<List<Throwable>>>();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> runWorker(features, parallelFeatures, featureReporters,
+                        workerFormatters, props)));
+            }
+            failure = await(results, errors);
+            if (failure == null) {
+                results = Collections.singletonList(executor.submit(() -> runWorker(features, serialFeatures,
+                        featureReporters, workerFormatters, props)));
+                failure = await(results, errors);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            executor.shutdown();
+            for (CucumberReporter featureReporter : featureReporters) {
+                if (featureReporter != null) {
+                    reporterTestNG.merge(featureReporter);
+                }
+            }
+            for (ICucumberFormatter workerFormatter : workerFormatters) {
+                workerFormatter.done();
+                workerFormatter.close();
+            }
+            Formatter formatter = runtimeOptions.formatter(classLoader);
+            formatter.done();
+            formatter.close();
+        }
+        if (failure != null) {
+            throw new CucumberException(failure);
+        }
+        return errors;
+    }
+
+    /**
+     * Waits for every worker, adding their errors to the list, and returns the first failure of a worker, if any.
+     */
+    private Throwable await(List<Future<List<Throwable>>> results, List<Throwable> errors) throws InterruptedException {
+        Throwable failure = null;
+        for (Future<List<Throwable>> result : results) {
+            try {
+                errors.addAll(result.get());
+            } catch (ExecutionException e) {
+                logger.error("Worker failed", e.getCause());
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Runs features taken from the queue until it is empty, in a runtime of its own.
+     */
+    private List<Throwable> runWorker(List<CucumberFeature> features, Queue<Integer> pending,
+                                      CucumberReporter[] featureReporters, List<ICucumberFormatter> workerFormatters,
+                                      Properties props) throws Exception {
+        Integer index = pending.poll();
+        if (index == null) {
+            return new ArrayList<Throwable>();
+        }
+        Properties workerProps = new Properties();
+        workerProps.putAll(props);
+        ThreadProperty.setAll(workerProps);
+        VariableStore.reset();
+
+        cucumber.runtime.Runtime workerRuntime = new cucumber.runtime.Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+        List<ICucumberFormatter> formatters = createFormatters();
+        workerFormatters.addAll(formatters);
+        while (index != null) {
+            CucumberReporter featureReporter = new CucumberReporter(targetExecutionsPath, className, additional);
+            featureReporters[index] = featureReporter;
+            List<Object> featurePlugins = new ArrayList<Object>();
+            featurePlugins.add(featureReporter);
+            featurePlugins.addAll(formatters);
+            Object plugins = chain(featurePlugins);
+            try {
+                features.get(index).run((Formatter) plugins, (Reporter) plugins, workerRuntime);
+            } finally {
+                featureReporter.close();
+            }
+            index = pending.poll();
+        }
+        return workerRuntime.getErrors();
+    }
+
+    /**
+     * Runs features again with the glue, woven classes and pooled connections of this runner. Feature files are
+     * read on every run, so changes are picked up. Used by {@link BdtDaemon}.
+     *
+     * Every run has a runtime of its own, so that the errors, stats and undefined steps of previous runs are not
+     * carried over, and an important scenario failed in a previous run does not abort it.
+     *
+     * The results are written by a reporter of its own and sent to the given plugin. Formatters are not told the
+     * run is done, so that they do not release the resources kept between runs.
+     *
+     * @param featurePaths paths of the features to run
+     * @param tags         tag expressions filtering the scenarios
+     * @param plugin       formatter and reporter receiving the results
+     * @return errors of the run
+     * @throws Exception exception
+     */
+    public synchronized List<Throwable> runFeatures(List<String> featurePaths, List<String> tags, Object plugin) throws Exception {
+        runtimeOptions.getFeaturePaths().clear();
+        runtimeOptions.getFeaturePaths().addAll(featurePaths);
+        runtimeOptions.getFilters().clear();
+        runtimeOptions.getFilters().addAll(tags);
+        HookGSpec.reset();
+        cucumber.runtime.Runtime runRuntime = new cucumber.runtime.Runtime(resourceLoader, classFinder, classLoader, runtimeOptions);
+
+        CucumberReporter featureReporter = new CucumberReporter(targetExecutionsPath, className, additional);
+        List<Object> featurePlugins = new ArrayList<Object>();
+        featurePlugins.add(featureReporter);
+        featurePlugins.add(plugin);
+        featurePlugins.addAll(createFormatters());
+        Object plugins = chain(featurePlugins);
+        RunStatusUtil.INSTANCE.getRunStatusUtils().start();
+        try {
+            for (CucumberFeature feature : runtimeOptions.cucumberFeatures(resourceLoader)) {
+                feature.run((Formatter) plugins, (Reporter) plugins, runRuntime);
+            }
+        } finally {
+            RunStatusUtil.INSTANCE.getRunStatusUtils().stop();
+        }
+        featureReporter.done();
+        return new ArrayList<Throwable>(runRuntime.getErrors());
+    }
+
+    /**
+     * Closes the pools shared by the runners and reports the step match cache.
+     */
+    private static void closeSuite() {
+        RestClientUtil.INSTANCE.getRestClientUtils().closeAll();
+        SshSessionUtil.INSTANCE.getSshSessionUtils().closeAll();
+        StepMatchCacheUtil.INSTANCE.getStepMatchCacheUtils().report();
+    }
+
+    /**
+     * Formatter and reporter forwarding every event to the given plugins, i.e. the feature reporter and the
+     * formatters of a worker.
+     */
+    private Object chain(List<Object> plugins) {
+        return Proxy.newProxyInstance(classLoader, new Class<?>[]{Formatter.class, Reporter.class}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(plugins, args);
+            }
+            for (Object plugin : plugins) {
+                if (method.getDeclaringClass().isInstance(plugin)) {
+                    try {
+                        method.invoke(plugin, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private boolean isSerial(CucumberFeature feature) {
+        for (Tag tag : feature.getGherkinFeature().getTags()) {
+            if (SERIAL_TAG.equals(tag.getName())) {
+                return true;
+            }
+        }
+        for (CucumberTagStatement element : feature.getFeatureElements()) {
+            for (Tag tag : element.getGherkinModel().getTags()) {
+                if (SERIAL_TAG.equals(tag.getName())) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 }
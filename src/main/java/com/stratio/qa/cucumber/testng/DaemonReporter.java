@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Formatter and reporter streaming the results of a {@link BdtDaemon} run to its client, one line per event.
+ */
+public class DaemonReporter implements Formatter, Reporter {
+
+    private final PrintWriter out;
+
+    private final LinkedList<Step> steps = new LinkedList<Step>();
+
+    private int scenarios = 0;
+
+    private int failedScenarios = 0;
+
+    private boolean scenarioFailed = false;
+
+    /**
+     * Constructor of DaemonReporter.
+     *
+     * @param out writer to the client
+     */
+    public DaemonReporter(PrintWriter out) {
+        this.out = out;
+    }
+
+    public int getScenarios() {
+        return scenarios;
+    }
+
+    public int getFailedScenarios() {
+        return failedScenarios;
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        print("Syntax error at " + uri + ":" + line);
+    }
+
+    @Override
+    public void uri(String uri) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+        print("Feature: " + feature.getName());
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        scenarios++;
+        scenarioFailed = false;
+        steps.clear();
+        print("  Scenario: " + scenario.getName());
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+        steps.add(step);
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        if (scenarioFailed) {
+            failedScenarios++;
+        }
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+        hookResult("Before", result);
+    }
+
+    @Override
+    public void result(Result result) {
+        Step step = steps.poll();
+        String name = step == null ? "" : step.getKeyword() + step.getName();
+        print("    [" + result.getStatus() + "] " + name);
+        error(result);
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+        hookResult("After", result);
+    }
+
+    @Override
+    public void match(Match match) {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+        print("    " + text);
+    }
+
+    private void hookResult(String hook, Result result) {
+        if (Result.FAILED.equals(result.getStatus())) {
+            print("    [" + result.getStatus() + "] " + hook + " hook");
+            error(result);
+        }
+    }
+
+    private void error(Result result) {
+        if (Result.FAILED.equals(result.getStatus())) {
+            scenarioFailed = true;
+            if (result.getError() != null) {
+                print("      " + String.valueOf(result.getError().getMessage()).replace("\n", "\n      "));
+            }
+        }
+    }
+
+    private void print(String line) {
+        out.println(line);
+        out.flush();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.CucumberTagStatement;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders and distributes features using the scenario durations recorded in previous TESTNG reports.
+ *
+ * Features are ordered longest first, so that the slowest ones do not start last, and they are bin-packed
+ * (longest processing time first) when split between CI nodes. Every node must read the same history to
+ * compute the same partition, i.e. the merged report of the previous execution. Without a shared history,
+ * the nodes split the features by path instead.
+ *
+ * Durations are kept by feature and scenario, as two features may have scenarios with the same name. The
+ * feature of each scenario is read from the DURATIONS.json files written next to the reports.
+ */
+public class FeatureScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureScheduler.class);
+
+    private static final String DURATIONS = "DURATIONS.json";
+
+    private final Map<String, Map<String, Long>> durations;
+
+    /**
+     * Constructor of FeatureScheduler.
+     *
+     * @param durations duration in milliseconds of each scenario, by feature name and scenario name. Scenarios
+     *                  of reports that do not record their feature are kept under an empty feature name
+     */
+    public FeatureScheduler(Map<String, Map<String, Long>> durations) {
+        this.durations = durations;
+    }
+
+    /**
+     * Creates a scheduler with the durations found in the reports of a directory and its subdirectories: the
+     * DURATIONS.json files, by feature, and the TESTNG reports, whose scenarios are kept under an empty feature
+     * name. When a scenario appears several times, the longest duration is kept.
+     *
+     * @param dir directory with previous reports
+     * @return FeatureScheduler
+     */
+    public static FeatureScheduler fromReports(File dir) {
+        Map<String, Map<String, Long>> durations = new HashMap<String, Map<String, Long>>();
+        List<File> reports = new ArrayList<File>();
+        findReports(dir, reports);
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            for (File report : reports) {
+                try {
+                    if (report.getName().endsWith(DURATIONS)) {
+                        JSONObject features = new JSONObject(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8));
+                        for (String feature : features.keySet()) {
+                            JSONObject scenarios = features.getJSONObject(feature);
+                            for (String scenario : scenarios.keySet()) {
+                                addDuration(durations, feature, scenario, scenarios.getLong(scenario));
+                            }
+                        }
+                        continue;
+                    }
+                    Document document = builder.parse(report);
+                    NodeList methods = document.getElementsByTagName("test-method");
+                    for (int i = 0; i < methods.getLength(); i++) {
+                        Element method = (Element) methods.item(i);
+                        long duration = (long) Double.parseDouble(method.getAttribute("duration-ms"));
+                        addDuration(durations, "", method.getAttribute("name"), duration);
+                    }
+                } catch (Exception e) {
+                    LOGGER.debug("Ignoring report {}: {}", report, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Previous reports can not be read, features will not be scheduled by duration", e);
+        }
+        LOGGER.debug("Found durations for {} features in {} reports", durations.size(), reports.size());
+        return new FeatureScheduler(durations);
+    }
+
+    private static void addDuration(Map<String, Map<String, Long>> durations, String feature, String scenario, long duration) {
+        Map<String, Long> scenarios = durations.get(feature);
+        if (scenarios == null) {
+            scenarios = new HashMap<String, Long>();
+            durations.put(feature, scenarios);
+        }
+        Long previous = scenarios.get(scenario);
+        if (previous == null || previous < duration) {
+            scenarios.put(scenario, duration);
+        }
+    }
+
+    private static void findReports(File dir, List<File> reports) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findReports(file, reports);
+            } else if (file.getName().endsWith("TESTNG.xml") || file.getName().endsWith(DURATIONS)) {
+                reports.add(file);
+            }
+        }
+    }
+
+    /**
+     * Estimated duration of each feature: the sum of the previous durations of its scenarios. Scenario outline
+     * examples are reported with their data between brackets after the scenario name, so they are all added up.
+     * Features without history are estimated as the mean of the known ones.
+     *
+     * @param features features
+     * @return estimated duration in milliseconds of each feature
+     */
+    public long[] estimate(List<CucumberFeature> features) {
+        long[] estimates = new long[features.size()];
+        long known = 0;
+        long total = 0;
+        for (int i = 0; i < features.size(); i++) {
+            estimates[i] = -1;
+            String feature = features.get(i).getGherkinFeature().getName();
+            for (CucumberTagStatement element : features.get(i).getFeatureElements()) {
+                long duration = estimate(feature, element.getGherkinModel().getName());
+                if (duration >= 0) {
+                    estimates[i] = Math.max(estimates[i], 0) + duration;
+                }
+            }
+            if (estimates[i] >= 0) {
+                known++;
+                total += estimates[i];
+            }
+        }
+        long mean = known == 0 ? 1 : Math.max(total / known, 1);
+        for (int i = 0; i < estimates.length; i++) {
+            if (estimates[i] < 0) {
+                estimates[i] = mean;
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * Previous duration of a scenario, adding up its examples. Reports that do not record the feature of their
+     * scenarios are only used for features not found in any other report.
+     *
+     * @param feature  feature name
+     * @param scenario scenario name
+     * @return duration in milliseconds, or -1 when unknown
+     */
+    long estimate(String feature, String scenario) {
+        Map<String, Long> scenarios = durations.containsKey(feature) ? durations.get(feature) : durations.get("");
+        if (scenarios == null) {
+            return -1;
+        }
+        long duration = -1;
+        for (Map.Entry<String, Long> entry : scenarios.entrySet()) {
+            String name = entry.getKey();
+            if (name.equals(scenario) || name.startsWith(scenario + " [")) {
+                duration = Math.max(duration, 0) + entry.getValue();
+            }
+        }
+        return duration;
+    }
+
+    /**
+     * Indexes sorted by estimated duration, longest first. Ties keep their original order.
+     *
+     * @param estimates estimated durations
+     * @return List
+     */
+    public static List<Integer> longestFirst(long[] estimates) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < estimates.length; i++) {
+            indexes.add(i);
+        }
+        Collections.sort(indexes, (a, b) -> Long.compare(estimates[b], estimates[a]));
+        return indexes;
+    }
+
+    /**
+     * Splits the indexes in bins of similar total duration, assigning each one, longest first, to the
+     * bin with the lowest load. Every bin keeps its indexes longest first.
+     *
+     * @param estimates estimated durations
+     * @param bins      number of bins
+     * @return List with the indexes of each bin
+     */
+    public static List<List<Integer>> binPack(long[] estimates, int bins) {
+        List<List<Integer>> packed = new ArrayList<List<Integer>>();
+        long[] loads = new long[bins];
+        for (int i = 0; i < bins; i++) {
+            packed.add(new ArrayList<Integer>());
+        }
+        for (Integer index : longestFirst(estimates)) {
+            int lightest = 0;
+            for (int bin = 1; bin < bins; bin++) {
+                if (loads[bin] < loads[lightest]) {
+                    lightest = bin;
+                }
+            }
+            packed.get(lightest).add(index);
+            loads[lightest] += estimates[index];
+        }
+        return packed;
+    }
+
+    /**
+     * Splits the indexes in bins by name, assigning them in turns in alphabetical order, so that every node
+     * computes the same partition without any history. Every bin keeps its indexes longest first.
+     *
+     * @param names     names, e.g. feature paths
+     * @param estimates estimated durations
+     * @param bins      number of bins
+     * @return List with the indexes of each bin
+     */
+    public static List<List<Integer>> splitByName(List<String> names, long[] estimates, int bins) {
+        List<Integer> sorted = new ArrayList<Integer>();
+        for (int i = 0; i < names.size(); i++) {
+            sorted.add(i);
+        }
+        Collections.sort(sorted, (a, b) -> names.get(a).compareTo(names.get(b)));
+        List<List<Integer>> split = new ArrayList<List<Integer>>();
+        for (int i = 0; i < bins; i++) {
+            split.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            split.get(i % bins).add(sorted.get(i));
+        }
+        for (List<Integer> bin : split) {
+            Collections.sort(bin, (a, b) -> Long.compare(estimates[b], estimates[a]));
+        }
+        return split;
+    }
+}
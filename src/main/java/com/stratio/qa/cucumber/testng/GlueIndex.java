@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import com.stratio.qa.processor.GlueIndexProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Classes listed in the glue indexes written at build time by {@link GlueIndexProcessor}, with their kind
+ * (step definitions, hooks, formatters or any other class), merged from every jar and directory of the classpath.
+ */
+public final class GlueIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GlueIndex.class);
+
+    private static final Map<ClassLoader, GlueIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<ClassLoader, GlueIndex>());
+
+    private static final GlueIndex MISSING = new GlueIndex(Collections.<String[]>emptyList());
+
+    private final List<String[]> entries;
+
+    private final Map<String, String> kinds = new HashMap<String, String>();
+
+    GlueIndex(List<String[]> entries) {
+        this.entries = entries;
+        for (String[] entry : entries) {
+            kinds.putIfAbsent(entry[1], entry[0]);
+        }
+    }
+
+    /**
+     * Glue index visible from a class loader, loaded once per class loader.
+     *
+     * @param classLoader class loader
+     * @return GlueIndex, or null when there is no index or it is disabled with GLUE_INDEX=false
+     */
+    public static GlueIndex get(ClassLoader classLoader) {
+        if (!Boolean.parseBoolean(System.getProperty("GLUE_INDEX", "true"))) {
+            return null;
+        }
+        GlueIndex index = INDEXES.get(classLoader);
+        if (index == null) {
+            index = load(classLoader);
+            INDEXES.put(classLoader, index);
+        }
+        return index == MISSING ? null : index;
+    }
+
+    private static GlueIndex load(ClassLoader classLoader) {
+        List<String[]> entries = new ArrayList<String[]>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(GlueIndexProcessor.INDEX);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] entry = line.trim().split(" ");
+                        if (entry.length == 2) {
+                            entries.add(entry);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Glue index can not be read, the classpath will be scanned", e);
+            return MISSING;
+        }
+        LOGGER.debug("Loaded {} classes from the glue index", entries.size());
+        return entries.isEmpty() ? MISSING : new GlueIndex(entries);
+    }
+
+    /**
+     * Names of the indexed classes of some kinds in a package or its subpackages.
+     *
+     * @param packageName package, empty for every package
+     * @param kinds       kinds of class, as written by {@link GlueIndexProcessor}
+     * @return List
+     */
+    public List<String> getClassNames(String packageName, String... kinds) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        List<String> names = new ArrayList<String>();
+        for (String[] entry : entries) {
+            for (String kind : kinds) {
+                if (kind.equals(entry[0]) && entry[1].startsWith(prefix) && !names.contains(entry[1])) {
+                    names.add(entry[1]);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Kind of an indexed class.
+     *
+     * @param className binary name of the class
+     * @return kind, as written by {@link GlueIndexProcessor}, or null if the class is not indexed
+     */
+    public String getKind(String className) {
+        return kinds.get(className);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import com.stratio.qa.processor.GlueIndexProcessor;
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ClassFinder returning the glue classes of a package with the help of the {@link GlueIndex}.
+ *
+ * The class files of the package are still listed, which is cheap, but only the indexed step definition and
+ * hook classes are loaded, together with any class the index does not know about, i.e. compiled without the
+ * index processor or after the index was written. Any other lookup is scanned.
+ */
+public class IndexedClassFinder extends ResourceLoaderClassFinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedClassFinder.class);
+
+    private final GlueIndex index;
+
+    private final ClassLoader classLoader;
+
+    private final ResourceLoader resourceLoader;
+
+    /**
+     * Constructor of IndexedClassFinder.
+     *
+     * @param resourceLoader resource loader used to scan
+     * @param classLoader    class loader of the glue classes
+     * @param index          glue index
+     */
+    public IndexedClassFinder(ResourceLoader resourceLoader, ClassLoader classLoader, GlueIndex index) {
+        super(resourceLoader, classLoader);
+        this.classLoader = classLoader;
+        this.resourceLoader = resourceLoader;
+        this.index = index;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Collection<Class<? extends T>> getDescendants(Class<T> parentType, String packageName) {
+        if (parentType != Object.class) {
+            return super.getDescendants(parentType, packageName);
+        }
+        List<Class<? extends T>> classes = new ArrayList<Class<? extends T>>();
+        int unindexed = 0;
+        String packagePath = "classpath:" + packageName.replace('.', '/');
+        for (Resource resource : resourceLoader.resources(packagePath, ".class")) {
+            String name = resource.getClassName(".class");
+            String kind = index.getKind(name);
+            if (kind == null) {
+                unindexed++;
+            } else if (!GlueIndexProcessor.STEP.equals(kind) && !GlueIndexProcessor.HOOK.equals(kind)) {
+                continue;
+            }
+            try {
+                classes.add((Class<? extends T>) classLoader.loadClass(name));
+            } catch (ClassNotFoundException | NoClassDefFoundError e) {
+                LOGGER.warn("Class {} can not be loaded: {}", name, e.getMessage());
+            }
+        }
+        LOGGER.debug("Loaded {} glue classes of {}, {} of them not indexed", classes.size(), packageName, unindexed);
+        return classes;
+    }
+}
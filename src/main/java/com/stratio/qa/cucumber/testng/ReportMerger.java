@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import cucumber.runtime.CucumberException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stitches the TESTNG or JUNIT reports written by the shards of an execution back into one report.
+ *
+ * Usage: ReportMerger output-file input...
+ *
+ * Inputs may be reports or directories, from which every report with the same suffix as the output
+ * (TESTNG.xml or JUNIT.xml) is taken. Reports are appended in file name order and their totals are added up.
+ */
+public final class ReportMerger {
+
+    private static final String[] TESTNG_TOTALS = {"total", "passed", "failed", "skipped"};
+
+    private static final String[] JUNIT_TOTALS = {"tests", "failures", "errors", "skipped"};
+
+    private ReportMerger() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ReportMerger output-file input...");
+            System.exit(1);
+        }
+        File output = new File(args[0]);
+        String suffix = output.getName().endsWith("JUNIT.xml") ? "JUNIT.xml" : "TESTNG.xml";
+        List<File> inputs = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            File input = new File(args[i]);
+            if (input.isDirectory()) {
+                File[] reports = input.listFiles((dir, name) -> name.endsWith(suffix));
+                if (reports != null) {
+                    Arrays.sort(reports);
+                    inputs.addAll(Arrays.asList(reports));
+                }
+            } else {
+                inputs.add(input);
+            }
+        }
+        inputs.remove(output.getAbsoluteFile());
+        inputs.remove(output);
+        merge(inputs, output);
+    }
+
+    /**
+     * Merges several TESTNG or JUNIT reports, both kinds can not be mixed.
+     *
+     * @param inputs reports to merge
+     * @param output merged report
+     */
+    public static void merge(List<File> inputs, File output) {
+        if (inputs.isEmpty()) {
+            throw new CucumberException("No reports to merge into " + output);
+        }
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Document merged = builder.parse(inputs.get(0));
+            for (File input : inputs.subList(1, inputs.size())) {
+                Document report = builder.parse(input);
+                if ("testng-results".equals(merged.getDocumentElement().getTagName())) {
+                    mergeTestNG(merged, report);
+                } else {
+                    mergeJUnit(merged, report);
+                }
+            }
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.transform(new DOMSource(merged), new StreamResult(output));
+        } catch (Exception e) {
+            throw new CucumberException("Error merging reports into " + output, e);
+        }
+    }
+
+    private static void mergeTestNG(Document merged, Document report) {
+        Element results = merged.getDocumentElement();
+        Element other = report.getDocumentElement();
+        if (!"testng-results".equals(other.getTagName())) {
+            throw new CucumberException("TESTNG and JUNIT reports can not be merged together");
+        }
+        addTotals(results, other, TESTNG_TOTALS);
+
+        Element suite = first(results, "suite");
+        Element test = first(suite, "test");
+        Element otherSuite = first(other, "suite");
+        Element otherTest = first(otherSuite, "test");
+        append(merged, test, otherTest);
+        addDuration(suite, otherSuite, "duration-ms");
+        addDuration(test, otherTest, "duration-ms");
+    }
+
+    private static void mergeJUnit(Document merged, Document report) {
+        Element suite = first(merged.getDocumentElement(), "testsuite");
+        if (!"testsuites".equals(report.getDocumentElement().getTagName())) {
+            throw new CucumberException("TESTNG and JUNIT reports can not be merged together");
+        }
+        Element otherSuite = first(report.getDocumentElement(), "testsuite");
+        append(merged, suite, otherSuite);
+        addTotals(suite, otherSuite, JUNIT_TOTALS);
+        addDuration(suite, otherSuite, "time");
+    }
+
+    private static Element first(Element parent, String tagName) {
+        NodeList elements = parent.getElementsByTagName(tagName);
+        if (elements.getLength() == 0) {
+            throw new CucumberException("Report without " + tagName + " element");
+        }
+        return (Element) elements.item(0);
+    }
+
+    private static void append(Document merged, Element target, Element source) {
+        NodeList children = source.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                target.appendChild(merged.importNode(children.item(i), true));
+            }
+        }
+    }
+
+    private static void addTotals(Element target, Element source, String[] attributes) {
+        for (String attribute : attributes) {
+            long total = parseLong(target.getAttribute(attribute)) + parseLong(source.getAttribute(attribute));
+            target.setAttribute(attribute, String.valueOf(total));
+        }
+    }
+
+    private static void addDuration(Element target, Element source, String attribute) {
+        BigDecimal total = parseDecimal(target.getAttribute(attribute)).add(parseDecimal(source.getAttribute(attribute)));
+        target.setAttribute(attribute, String.valueOf(total.doubleValue()));
+    }
+
+    private static long parseLong(String value) {
+        return value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    private static BigDecimal parseDecimal(String value) {
+        return value.isEmpty() ? BigDecimal.ZERO : new BigDecimal(value);
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * XML report written as its entries finish, so that they are not kept in memory and a killed JVM leaves the
+ * report of the entries finished so far.
+ *
+ * Entries are appended to a spool file next to the report, kept as a well formed document after every entry.
+ * When the report is finished, the spool is copied into the report between the start and end of its
+ * containers, whose attributes are only known then.
+ *
+ * Every piece is serialized by the same Transformer as a whole document would be, in a document with the same
+ * ancestors, so the report is byte identical to serializing the whole document at once.
+ *
+ * The spool is only kept open while entries are written, {@link #close()} releases it until the next write, so
+ * that the reports of many features waiting to be merged do not keep a file descriptor each.
+ */
+final class StreamingXmlReport {
+
+    private static final String MARKER = "bdt-stream-marker";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File target;
+
+    private final String[] containers;
+
+    private final String group;
+
+    private final Transformer transformer;
+
+    private final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+
+    private File spool;
+
+    private RandomAccessFile spoolFile;
+
+    private long bodyStart;
+
+    private long bodyEnd;
+
+    private byte[] suffix;
+
+    private String groupOpen;
+
+    private String groupClose;
+
+    private String groupEmpty;
+
+    private boolean groupStarted;
+
+    /**
+     * Constructor of StreamingXmlReport.
+     *
+     * @param target     report file
+     * @param containers names of the elements containing the entries, from the root
+     * @param group      name of the element grouping the entries inside the innermost container, or null
+     */
+    StreamingXmlReport(File target, String[] containers, String group) {
+        this.target = target;
+        this.containers = containers.clone();
+        this.group = group;
+        try {
+            this.transformer = TransformerFactory.newInstance().newTransformer();
+        } catch (TransformerException e) {
+            throw new IllegalStateException("Error creating the report transformer", e);
+        }
+        this.transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    }
+
+    /**
+     * New document with the containers, and the group if any, without attributes, to build an entry in.
+     *
+     * @return Document, its innermost element is the parent of the entry
+     */
+    Document newEntryDocument() {
+        Document document = newDocument();
+        Element parent = appendContainers(document);
+        if (group != null) {
+            parent.appendChild(document.createElement(group));
+        }
+        return document;
+    }
+
+    /**
+     * Innermost element of a document created by {@link #newEntryDocument()}.
+     *
+     * @param document entry document
+     * @return Element
+     */
+    Element getEntryParent(Document document) {
+        Element element = document.getDocumentElement();
+        while (element.getLastChild() instanceof Element && !isEntryParent(element)) {
+            element = (Element) element.getLastChild();
+        }
+        return element;
+    }
+
+    private boolean isEntryParent(Element element) {
+        return element.getTagName().equals(group != null ? group : containers[containers.length - 1]);
+    }
+
+    /**
+     * Starts a group, written when its first entry is appended or when it is closed.
+     *
+     * @param groupElement element with the attributes of the group
+     * @throws IOException exception
+     */
+    void openGroup(Element groupElement) throws IOException {
+        closeGroup();
+        Document document = newDocument();
+        Element parent = appendContainers(document);
+        Element element = (Element) document.importNode(groupElement, false);
+        parent.appendChild(element);
+        groupEmpty = slice(serialize(document), parent.getTagName());
+
+        element.appendChild(document.createElement(MARKER));
+        String text = slice(serialize(document), parent.getTagName());
+        int marker = text.indexOf("<" + MARKER + "/>");
+        groupOpen = trimEnd(text.substring(0, marker));
+        groupClose = text.substring(marker + MARKER.length() + 3);
+        groupStarted = false;
+    }
+
+    /**
+     * Writes the group started by {@link #openGroup(Element)}, if any.
+     *
+     * @throws IOException exception
+     */
+    void closeGroup() throws IOException {
+        if (groupOpen == null) {
+            return;
+        }
+        String text = groupStarted ? groupClose : groupEmpty;
+        groupOpen = null;
+        groupClose = null;
+        groupEmpty = null;
+        groupStarted = false;
+        write(text);
+    }
+
+    /**
+     * Appends a finished entry.
+     *
+     * @param document entry document, created by {@link #newEntryDocument()}
+     * @throws IOException exception
+     */
+    void append(Document document) throws IOException {
+        String text = slice(serialize(document), getEntryParent(document).getTagName());
+        if (groupOpen != null && !groupStarted) {
+            groupStarted = true;
+            text = groupOpen + text;
+        }
+        write(text);
+    }
+
+    /**
+     * Appends the entries of another report with the same structure, whose spool is deleted.
+     *
+     * @param other report
+     * @throws IOException exception
+     */
+    void append(StreamingXmlReport other) throws IOException {
+        other.close();
+        if (other.spool == null) {
+            return;
+        }
+        closeGroup();
+        openSpool();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = other.bodyStart;
+        spoolFile.seek(bodyEnd);
+        try (RandomAccessFile otherFile = new RandomAccessFile(other.spool, "r")) {
+            otherFile.seek(position);
+            while (position < other.bodyEnd) {
+                int read = otherFile.read(buffer, 0, (int) Math.min(buffer.length, other.bodyEnd - position));
+                spoolFile.write(buffer, 0, read);
+                position += read;
+            }
+        }
+        bodyEnd = spoolFile.getFilePointer();
+        writeClosing();
+        other.deleteSpool();
+    }
+
+    /**
+     * Writes the report with the containers of the given document, whose attributes are final, and the entries
+     * appended so far. The spool is deleted.
+     *
+     * @param document document with the containers
+     * @throws IOException exception
+     */
+    void finish(Document document) throws IOException {
+        closeGroup();
+        File temp = new File(target.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            if (spool == null || bodyEnd == bodyStart) {
+                out.write(serialize(document).getBytes(StandardCharsets.UTF_8));
+            } else {
+                Element innermost = document.getDocumentElement();
+                while (innermost.getLastChild() instanceof Element) {
+                    innermost = (Element) innermost.getLastChild();
+                }
+                Node marker = innermost.appendChild(document.createElement(MARKER));
+                String text = serialize(document);
+                innermost.removeChild(marker);
+                int position = text.indexOf("<" + MARKER + "/>");
+                out.write(trimEnd(text.substring(0, position)).getBytes(StandardCharsets.UTF_8));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long read = bodyStart;
+                openSpool();
+                spoolFile.seek(bodyStart);
+                while (read < bodyEnd) {
+                    int length = spoolFile.read(buffer, 0, (int) Math.min(buffer.length, bodyEnd - read));
+                    out.write(buffer, 0, length);
+                    read += length;
+                }
+                out.write(text.substring(position + MARKER.length() + 3).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        deleteSpool();
+    }
+
+    /**
+     * Writes the group started by {@link #openGroup(Element)}, if any, and closes the spool, which is opened again
+     * if more entries are appended.
+     *
+     * @throws IOException exception
+     */
+    void close() throws IOException {
+        closeGroup();
+        if (spoolFile != null) {
+            spoolFile.close();
+            spoolFile = null;
+        }
+    }
+
+    /**
+     * Deletes the spool without writing the report.
+     */
+    void deleteSpool() {
+        if (spoolFile != null) {
+            try {
+                spoolFile.close();
+            } catch (IOException e) {
+                // Nothing to do, it is deleted next
+            }
+            spoolFile = null;
+        }
+        if (spool != null) {
+            spool.delete();
+            spool = null;
+        }
+    }
+
+    private void write(String text) throws IOException {
+        openSpool();
+        spoolFile.seek(bodyEnd);
+        spoolFile.write(text.getBytes(StandardCharsets.UTF_8));
+        bodyEnd = spoolFile.getFilePointer();
+        writeClosing();
+    }
+
+    /**
+     * Writes after the body the end of the open group and of the containers, so that the spool is always well formed.
+     */
+    private void writeClosing() throws IOException {
+        spoolFile.seek(bodyEnd);
+        if (groupOpen != null && groupStarted) {
+            spoolFile.write(groupClose.getBytes(StandardCharsets.UTF_8));
+        }
+        spoolFile.write(suffix);
+        spoolFile.setLength(spoolFile.getFilePointer());
+    }
+
+    private void openSpool() throws IOException {
+        if (spoolFile != null) {
+            return;
+        }
+        if (spool != null) {
+            spoolFile = new RandomAccessFile(spool, "rw");
+            return;
+        }
+        File dir = target.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        spool = File.createTempFile(target.getName() + ".", ".partial", dir);
+        spoolFile = new RandomAccessFile(spool, "rw");
+
+        Document document = newDocument();
+        appendContainers(document).appendChild(document.createElement(MARKER));
+        String text = serialize(document);
+        int position = text.indexOf("<" + MARKER + "/>");
+        byte[] header = trimEnd(text.substring(0, position)).getBytes(StandardCharsets.UTF_8);
+        suffix = text.substring(position + MARKER.length() + 3).getBytes(StandardCharsets.UTF_8);
+        spoolFile.write(header);
+        bodyStart = spoolFile.getFilePointer();
+        bodyEnd = bodyStart;
+        writeClosing();
+    }
+
+    private Document newDocument() {
+        try {
+            return documentBuilderFactory.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Error initializing DocumentBuilder", e);
+        }
+    }
+
+    private Element appendContainers(Document document) {
+        Node parent = document;
+        for (String container : containers) {
+            parent = parent.appendChild(document.createElement(container));
+        }
+        return (Element) parent;
+    }
+
+    private String serialize(Document document) throws IOException {
+        StringWriter writer = new StringWriter();
+        try {
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+        } catch (TransformerException e) {
+            throw new IOException("Error transforming report", e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Text of the children of the element, preceded by the whitespace written before them.
+     */
+    private static String slice(String text, String parent) {
+        int start = text.indexOf("<" + parent + ">") + parent.length() + 2;
+        int end = text.lastIndexOf("</" + parent + ">");
+        return trimEnd(text.substring(start, end));
+    }
+
+    private static String trimEnd(String text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+}
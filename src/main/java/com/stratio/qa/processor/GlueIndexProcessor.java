@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Annotation processor writing the glue index read by the CucumberRunner instead of scanning the classpath.
+ *
+ * Every line of {@value #INDEX} has the kind of the class (step, hook, formatter, or class for any other one)
+ * and its name, so that the classes compiled without the processor can be told apart. Classes having both step
+ * definitions and hooks are indexed as steps. On incremental compilations the entries of the classes not being
+ * compiled are kept while they still exist.
+ *
+ * It is registered as a service, so projects depending on this library index their own glue when they compile.
+ */
+@SupportedAnnotationTypes("*")
+public class GlueIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX = "META-INF/stratio/glue.idx";
+
+    public static final String STEP = "step";
+
+    public static final String HOOK = "hook";
+
+    public static final String FORMATTER = "formatter";
+
+    public static final String CLASS = "class";
+
+    private static final String FORMATTER_INTERFACE = "com.stratio.qa.cucumber.testng.ICucumberFormatter";
+
+    private static final String CUCUMBER_ANNOTATIONS = "cucumber.api.java.";
+
+    private final Map<String, String> index = new TreeMap<String, String>();
+
+    private final Set<String> compiled = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                indexType((TypeElement) element);
+            }
+        }
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void indexType(TypeElement type) {
+        String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        compiled.add(name);
+        String kind = kind(type);
+        index.put(name, kind != null ? kind : CLASS);
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                indexType((TypeElement) enclosed);
+            }
+        }
+    }
+
+    private String kind(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return null;
+        }
+        String kind = null;
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            for (AnnotationMirror annotation : enclosed.getAnnotationMirrors()) {
+                String annotationName = annotation.getAnnotationType().toString();
+                if (annotationName.equals(CUCUMBER_ANNOTATIONS + "Before") || annotationName.equals(CUCUMBER_ANNOTATIONS + "After")) {
+                    kind = kind == null ? HOOK : kind;
+                } else if (annotationName.startsWith(CUCUMBER_ANNOTATIONS)) {
+                    return STEP;
+                }
+            }
+        }
+        if (kind == null && type.getModifiers().contains(Modifier.PUBLIC)) {
+            TypeElement formatter = processingEnv.getElementUtils().getTypeElement(FORMATTER_INTERFACE);
+            if (formatter != null) {
+                TypeMirror formatterType = processingEnv.getTypeUtils().erasure(formatter.asType());
+                if (processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type.asType()), formatterType)) {
+                    kind = FORMATTER;
+                }
+            }
+        }
+        return kind;
+    }
+
+    private void writeIndex() {
+        Map<String, String> entries = new TreeMap<String, String>();
+        try {
+            FileObject previous = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(previous.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] entry = line.trim().split(" ");
+                    if (entry.length == 2 && !compiled.contains(entry[1])
+                            && processingEnv.getElementUtils().getTypeElement(entry[1].replace('$', '.')) != null) {
+                        entries.put(entry[1], entry[0]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No previous index
+        }
+        entries.putAll(index);
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Glue index can not be written: " + e.getMessage());
+        }
+    }
+}
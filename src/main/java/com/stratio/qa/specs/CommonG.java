@@ -30,6 +30,8 @@ import com.jayway.jsonpath.spi.json.GsonJsonProvider;
 import com.jayway.jsonpath.spi.mapper.GsonMappingProvider;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.ning.http.client.AsyncCompletionHandlerBase;
+import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
 import com.ning.http.client.Realm;
@@ -40,7 +42,6 @@ import com.stratio.qa.conditions.Conditions;
 import com.stratio.qa.utils.*;
 import cucumber.api.DataTable;
 import org.apache.commons.collections.IteratorUtils;
-import org.apache.commons.io.FileUtils;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.api.Condition;
 import org.hjson.JsonObject;
@@ -62,12 +63,19 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,6 +91,10 @@ public class CommonG {
 
     private static final int DEFAULT_SLEEP_TIME = 1500;
 
+    private static final Pattern JSON_KEYS_PATTERN = Pattern.compile("^(.*?).~(.*?)$");
+
+    private static final Pattern JSON_KEYS_INDEX_PATTERN = Pattern.compile("^\\[(-?\\d+)\\]$");
+
     private final Logger logger = LoggerFactory.getLogger(ThreadProperty.get("class"));
 
     private RemoteWebDriver driver = null;
@@ -95,8 +107,16 @@ public class CommonG {
 
     private AsyncHttpClient client;
 
+    private boolean pooledClient = false;
+
+    private Boolean compression = null;
+
+    private boolean compressRequests = false;
+
     private HttpResponse response;
 
+    private LoadResults loadResults;
+
     private List<Cookie> cookies = new ArrayList<Cookie>();
 
     private ResultSet previousCassandraResults;
@@ -127,6 +147,10 @@ public class CommonG {
 
     private String commandResult;
 
+    private CommandOutput commandOutput;
+
+    private List<HostCommandResult> hostCommandResults = new ArrayList<HostCommandResult>();
+
     private String restProtocol;
 
     private ZookeeperSecUtils zkSecClient;
@@ -405,12 +429,13 @@ public class CommonG {
     }
 
     /**
-     * Capture a snapshot or an evidence in the driver
+     * Capture a snapshot or an evidence in the driver. Only the driver round-trip is done in the calling thread,
+     * the evidence is written asynchronously by {@link EvidenceUtils}.
      *
      * @param driver driver used for testing
      * @param type   type
      * @param suffix suffix
-     * @return String
+     * @return String, path of the evidence file
      */
     public String captureEvidence(WebDriver driver, String type, String suffix) {
         String testSuffix = System.getProperty("TESTSUFFIX");
@@ -456,19 +481,7 @@ public class CommonG {
 
             if (!outputFile.equals("")) {
                 String source = ((RemoteWebDriver) driver).getPageSource();
-
-                File fout = new File(outputFile);
-                boolean dirs = fout.getParentFile().mkdirs();
-
-                try (FileOutputStream fos = new FileOutputStream(fout, true)) {
-                    Writer out = new OutputStreamWriter(fos, "UTF8");
-                    PrintWriter writer = new PrintWriter(out, false);
-                    writer.append(source);
-                    writer.close();
-                    out.close();
-                } catch (IOException e) {
-                    logger.error("Exception on evidence capture", e);
-                }
+                outputFile = EvidenceUtil.INSTANCE.getEvidenceUtils().writeSource(outputFile, source);
             }
 
         } else if ("screenCapture".equals(type)) {
@@ -489,11 +502,7 @@ public class CommonG {
                 file = ((TakesScreenshot) driver)
                         .getScreenshotAs(OutputType.FILE);
             }
-            try {
-                FileUtils.copyFile(file, new File(outputFile));
-            } catch (IOException e) {
-                logger.error("Exception on copying browser screen capture", e);
-            }
+            outputFile = EvidenceUtil.INSTANCE.getEvidenceUtils().writeCapture(outputFile, file);
         }
 
         return outputFile;
@@ -635,7 +644,16 @@ public class CommonG {
     }
 
     // COPIED FROM COMMON.JAVA
+    /**
+     * Returns the REST client. If none has been explicitly set and pooled clients are enabled,
+     * the pooled client for the current rest protocol, host and port is used.
+     *
+     * @return AsyncHttpClient
+     */
     public AsyncHttpClient getClient() {
+        if (client == null && pooledClient && this.getRestHost() != null) {
+            return RestClientUtil.INSTANCE.getRestClientUtils().getClient(this.getRestProtocol(), this.getRestHost(), this.getRestPort());
+        }
         return client;
     }
 
@@ -643,6 +661,35 @@ public class CommonG {
         this.client = client;
     }
 
+    public boolean isPooledClient() {
+        return pooledClient;
+    }
+
+    public void setPooledClient(boolean pooledClient) {
+        this.pooledClient = pooledClient;
+    }
+
+    public Boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Overrides the suite compression setting (REST_COMPRESSION) for the next requests.
+     *
+     * @param compression true to request compressed responses, false to request uncompressed ones, null to use the suite setting
+     */
+    public void setCompression(Boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
     public HttpResponse getResponse() {
         return response;
     }
@@ -652,7 +699,23 @@ public class CommonG {
         Integer statusCode = response.getStatusCode();
         String httpResponse = response.getResponseBody();
         List<Cookie> cookies = response.getCookies();
-        this.response = new HttpResponse(statusCode, httpResponse, cookies);
+        setResponse(new HttpResponse(statusCode, httpResponse, cookies));
+
+        long decodedSize = response.getResponseBodyAsBytes().length;
+        this.response.setResponseSize(decodedSize);
+        this.response.setWireSize(WireSizeHandler.getWireSize(response.getHeader(WireSizeHandler.WIRE_LENGTH_HEADER), decodedSize));
+    }
+
+    /**
+     * Saves the response of a request. The body of the previous response is deleted if it was spilled to disk.
+     *
+     * @param response response, may be null
+     */
+    public void setResponse(HttpResponse response) {
+        if (this.response != null && this.response != response) {
+            this.response.deleteResponseFile();
+        }
+        this.response = response;
     }
 
     /**
@@ -663,17 +726,36 @@ public class CommonG {
      * @return String
      */
     public String retrieveData(String baseData, String type) {
-        String result;
+        URL resource = getClass().getClassLoader().getResource(baseData);
+
+        if (resource == null) {
+            this.getLogger().error("File does not exist: {}", baseData);
+            return "ERR! File not found: " + baseData;
+        }
 
-        InputStream stream = getClass().getClassLoader().getResourceAsStream(baseData);
+        return TemplateCacheUtil.INSTANCE.getTemplateCacheUtils().getTemplate(resource, type, () -> readData(resource, type));
+    }
+
+    /**
+     * Reads and parses the file passed as parameter
+     *
+     * @param resource file to be read
+     * @param type     type of information, it can be: json|string
+     * @return String
+     */
+    private String readData(URL resource, String type) {
+        String result;
 
         Writer writer = new StringWriter();
-        char[] buffer = new char[1024];
+        char[] buffer = new char[8192];
         Reader reader;
+        InputStream stream;
 
-        if (stream == null) {
-            this.getLogger().error("File does not exist: {}", baseData);
-            return "ERR! File not found: " + baseData;
+        try {
+            stream = resource.openStream();
+        } catch (IOException openException) {
+            this.getLogger().error(openException.getMessage());
+            return "ERR! File not found: " + resource;
         }
 
         try {
@@ -795,6 +877,35 @@ public class CommonG {
      * @throws Exception
      */
     public String modifyData(String data, String type, DataTable modifications) throws Exception {
+        TemplateCacheUtils cache = TemplateCacheUtil.INSTANCE.getTemplateCacheUtils();
+        List<List<String>> rows = modifications.raw();
+
+        String modifiedData = cache.getBody(data, type, rows);
+        if (modifiedData != null) {
+            // Headers are not part of the body, they have to be applied again
+            for (List<String> row : rows) {
+                if ("HEADER".equals(row.get(1).toUpperCase())) {
+                    this.headers.put(row.get(0), row.get(2));
+                }
+            }
+            return modifiedData;
+        }
+
+        modifiedData = applyModifications(data, type, modifications);
+        cache.putBody(data, type, rows, modifiedData);
+        return modifiedData;
+    }
+
+    /**
+     * Applies the modifications to the data, see {@link #modifyData(String, String, DataTable)}
+     *
+     * @param data          string containing the information
+     * @param type          type of information, it can be: json|string
+     * @param modifications modifications to apply
+     * @return String
+     * @throws Exception
+     */
+    private String applyModifications(String data, String type, DataTable modifications) throws Exception {
         String modifiedData = data;
         String typeJsonObject = "";
         String nullValue = "";
@@ -1062,9 +1173,41 @@ public class CommonG {
      * @throws Exception exception
      */
     public Future<Response> generateRequest(String requestType, boolean secure, String user, String password, String endPoint, String data, String type) throws Exception {
+        return generateRequest(requestType, secure, user, password, endPoint, data, type, new AsyncCompletionHandlerBase());
+    }
+
+    /**
+     * Generates the request based on the type of request, the end point, the data and type passed,
+     * processing the response with the given handler (i.e. a {@link StreamingResponseHandler})
+     *
+     * @param requestType type of request to be sent
+     * @param secure      type of protocol
+     * @param user        user to be used in request
+     * @param password    password to be used in request
+     * @param endPoint    end point to sent the request to
+     * @param data        to be sent for PUT/POST requests
+     * @param type        type of data to be sent (json|string)
+     * @param handler     handler processing the response
+     * @throws Exception exception
+     */
+    public <T> Future<T> generateRequest(String requestType, boolean secure, String user, String password, String endPoint, String data, String type, AsyncHandler<T> handler) throws Exception {
+        BoundRequestBuilder request = prepareRequest(requestType, user, password, endPoint, data, type);
+        return request.execute(new TimingHandler<T>(handler, requestType.toUpperCase(), this.getRestHost() + this.getRestPort() + endPoint));
+    }
 
+    /**
+     * Builds the request based on the type of request, the end point, the data and type passed
+     *
+     * @param requestType type of request to be sent
+     * @param user        user to be used in request
+     * @param password    password to be used in request
+     * @param endPoint    end point to sent the request to
+     * @param data        to be sent for PUT/POST requests
+     * @param type        type of data to be sent (json|string)
+     * @throws Exception exception
+     */
+    private BoundRequestBuilder prepareRequest(String requestType, String user, String password, String endPoint, String data, String type) throws Exception {
         String protocol = this.getRestProtocol();
-        Future<Response> response = null;
         BoundRequestBuilder request;
         Realm realm = null;
 
@@ -1130,7 +1273,6 @@ public class CommonG {
                     request = request.setRealm(realm);
                 }
 
-                response = request.execute();
                 break;
 
             case "DELETE":
@@ -1166,11 +1308,6 @@ public class CommonG {
                     request = request.setRealm(realm);
                 }
 
-                if (data == "") {
-                    response = request.execute();
-                } else {
-                    response = this.getClient().executeRequest(request.build());
-                }
                 break;
             case "POST":
                 if (data == null) {
@@ -1210,7 +1347,6 @@ public class CommonG {
                         request = request.setRealm(realm);
                     }
 
-                    response = this.getClient().executeRequest(request.build());
                     break;
                 }
             case "PUT":
@@ -1250,7 +1386,6 @@ public class CommonG {
                         request = request.setRealm(realm);
                     }
 
-                    response = this.getClient().executeRequest(request.build());
                     break;
                 }
             case "CONNECT":
@@ -1263,7 +1398,29 @@ public class CommonG {
             default:
                 throw new Exception("Operation not valid: " + requestType);
         }
-        return response;
+
+        if (compression != null && !hasHeader("Accept-Encoding")) {
+            request = request.setHeader("Accept-Encoding", compression ? "gzip, deflate" : "identity");
+        }
+
+        if (compressRequests && data != null && !data.isEmpty() && !"GET".equals(requestType.toUpperCase())
+                && data.length() >= Integer.parseInt(System.getProperty("REST_COMPRESS_REQUESTS_MIN_SIZE", "1024"))) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(data.getBytes(StandardCharsets.UTF_8));
+            }
+            request = request.setBody(compressed.toByteArray()).setHeader("Content-Encoding", "gzip");
+        }
+        return request;
+    }
+
+    private boolean hasHeader(String name) {
+        for (String header : headers.keySet()) {
+            if (header.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -1282,6 +1439,120 @@ public class CommonG {
         return generateRequest(requestType, false, null, null, endPoint, data, type, "");
     }
 
+    /**
+     * Sends the same request a number of times, keeping at most {@code concurrency} requests in flight,
+     * and records latency and errors of every request.
+     *
+     * @param requestType type of request to be sent
+     * @param endPoint    end point to sent the request to
+     * @param data        to be sent for PUT/POST requests
+     * @param type        type of data to be sent (json|string)
+     * @param total       number of requests to be sent
+     * @param concurrency maximum number of requests in flight, at least 1
+     * @return LoadResults
+     * @throws Exception exception
+     */
+    public LoadResults generateConcurrentRequests(String requestType, String endPoint, String data, String type, int total, int concurrency) throws Exception {
+        assertThat(concurrency).as("Concurrency must be at least 1").isGreaterThanOrEqualTo(1);
+        LoadResults results = new LoadResults();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch pending = new CountDownLatch(total);
+
+        results.start();
+        for (int i = 0; i < total; i++) {
+            inFlight.acquire();
+            generateLoadRequest(requestType, endPoint, data, type, System.nanoTime(), results, inFlight, pending);
+        }
+        awaitLoadResponses(results, pending);
+        return results;
+    }
+
+    /**
+     * Sends the same request at a constant rate during the given time, and records latency and errors of
+     * every request. Latencies are measured from the time each request should have been sent, so requests
+     * delayed because of a slow service are accounted for.
+     *
+     * @param requestType type of request to be sent
+     * @param endPoint    end point to sent the request to
+     * @param data        to be sent for PUT/POST requests
+     * @param type        type of data to be sent (json|string)
+     * @param duration    seconds to keep sending requests
+     * @param rate        requests per second, at least 1
+     * @return LoadResults
+     * @throws Exception exception
+     */
+    public LoadResults generateRequestsAtRate(String requestType, String endPoint, String data, String type, int duration, int rate) throws Exception {
+        assertThat(rate).as("Rate must be at least 1 request per second").isGreaterThanOrEqualTo(1);
+        LoadResults results = new LoadResults();
+        int total = duration * rate;
+        Semaphore inFlight = new Semaphore(Integer.valueOf(System.getProperty("LOAD_MAX_IN_FLIGHT", "1000")));
+        CountDownLatch pending = new CountDownLatch(total);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        results.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            inFlight.acquire();
+            generateLoadRequest(requestType, endPoint, data, type, scheduled, results, inFlight, pending);
+        }
+        awaitLoadResponses(results, pending);
+        return results;
+    }
+
+    /**
+     * Waits up to LOAD_TIMEOUT seconds (120) for the responses of the requests already sent. The requests
+     * still unanswered then are accounted as errors.
+     */
+    private void awaitLoadResponses(LoadResults results, CountDownLatch pending) throws InterruptedException {
+        long timeout = Long.valueOf(System.getProperty("LOAD_TIMEOUT", "120"));
+        boolean answered = pending.await(timeout, TimeUnit.SECONDS);
+        results.finish();
+        if (!answered) {
+            long unanswered = pending.getCount();
+            getLogger().warn("{} load requests not answered after {} seconds, accounted as errors", unanswered, timeout);
+            results.recordUnanswered(unanswered);
+        }
+    }
+
+    private void generateLoadRequest(String requestType, String endPoint, String data, String type, long start,
+                                     LoadResults results, Semaphore inFlight, CountDownLatch pending) throws Exception {
+        try {
+            // Load requests are not timed one by one, they are already accounted in the results
+            prepareRequest(requestType, null, null, endPoint, data, type).execute(new AsyncCompletionHandlerBase() {
+                @Override
+                public Response onCompleted(Response response) throws Exception {
+                    results.record(System.nanoTime() - start, response.getStatusCode());
+                    inFlight.release();
+                    pending.countDown();
+                    return response;
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    results.recordError();
+                    inFlight.release();
+                    pending.countDown();
+                }
+            });
+        } catch (Exception e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    public LoadResults getLoadResults() {
+        return loadResults;
+    }
+
+    public void setLoadResults(LoadResults loadResults) {
+        this.loadResults = loadResults;
+    }
+
 
     /**
      * Saves the value in the attribute in class extending CommonG.
@@ -1718,6 +1989,45 @@ public class CommonG {
 
     public void setCommandResult(String commandResult) {
         this.commandResult = commandResult;
+        this.commandOutput = null;
+    }
+
+    /**
+     * Set the result of a remote command, keeping its whole output to be searched.
+     *
+     * @param commandOutput output of the command
+     */
+    public void setCommandOutput(CommandOutput commandOutput) {
+        this.commandResult = commandOutput.getText().trim();
+        this.commandOutput = commandOutput;
+    }
+
+    /**
+     * Whether the result of the last command contains the text. If the output of a remote command was too big
+     * to be kept in memory, the part spilled to disk is searched as well.
+     *
+     * @param search text to look for
+     * @return boolean
+     * @throws IOException exception reading the spilled output
+     */
+    public boolean commandOutputContains(String search) throws IOException {
+        if (commandOutput != null && commandOutput.isTruncated()) {
+            return commandOutput.contains(search);
+        }
+        return commandResult != null && commandResult.contains(search);
+    }
+
+    /**
+     * Results of the last command run in several hosts, in the order of the hosts.
+     *
+     * @return List
+     */
+    public List<HostCommandResult> getHostCommandResults() {
+        return hostCommandResults;
+    }
+
+    public void setHostCommandResults(List<HostCommandResult> hostCommandResults) {
+        this.hostCommandResults = hostCommandResults;
     }
 
     public String getRestProtocol() {
@@ -1757,20 +2067,32 @@ public class CommonG {
      * @param position   position from a search result
      */
     public String getJSONPathString(String jsonString, String expr, String position) {
+        return getJSONPathString(JsonDocumentUtil.INSTANCE.getJsonDocumentUtils().parse(jsonString), expr, position);
+    }
+
+    /**
+     * Returns the information contained in the parsed json document, see {@link #getJSONPathString(String, String, String)}
+     *
+     * @param document parsed json document
+     * @param expr     jsonpath expression to retrieve
+     * @param position position from a search result
+     * @return String
+     */
+    public String getJSONPathString(DocumentContext document, String expr, String position) {
 
         String value;
+        JsonDocumentUtils jsonDocumentUtils = JsonDocumentUtil.INSTANCE.getJsonDocumentUtils();
 
         if (expr.contains(".~")) {
             this.getLogger().debug("Expression referred to json keys");
-            Pattern pattern = Pattern.compile("^(.*?).~(.*?)$");
-            Matcher matcher = pattern.matcher(expr);
+            Matcher matcher = JSON_KEYS_PATTERN.matcher(expr);
             String aux = null;
             String op = null;
             if (matcher.find()) {
                 aux = matcher.group(1);
                 op = matcher.group(2);
             }
-            LinkedHashMap auxData = JsonPath.parse(jsonString).read(aux);
+            LinkedHashMap auxData = jsonDocumentUtils.read(document, aux);
             JSONObject json = new JSONObject(auxData);
             List<String> keys = IteratorUtils.toList(json.keys());
             List<String> stringKeys = new ArrayList<String>();
@@ -1780,8 +2102,7 @@ public class CommonG {
                 }
                 value = stringKeys.toString();
             } else {
-                Pattern patternOp = Pattern.compile("^\\[(-?\\d+)\\]$");
-                Matcher matcherOp = patternOp.matcher(op);
+                Matcher matcherOp = JSON_KEYS_INDEX_PATTERN.matcher(op);
                 Integer index = null;
                 Boolean isNegative = false;
                 if (matcherOp.find()) {
@@ -1798,8 +2119,7 @@ public class CommonG {
 
             }
         } else {
-            String result = JsonValue.readHjson(jsonString).toString();
-            Object data = JsonPath.parse(result).read(expr);
+            Object data = jsonDocumentUtils.read(document, expr);
             if (position != null) {
                 JSONArray jsonArray = new JSONArray(data.toString());
                 value = jsonArray.get(Integer.parseInt(position)).toString();
@@ -1902,7 +2222,7 @@ public class CommonG {
 
     public void runCommandAndGetResult(String command) throws Exception {
         getRemoteSSHConnection().runCommand(command);
-        setCommandResult(getRemoteSSHConnection().getResult());
+        setCommandOutput(getRemoteSSHConnection().getOutput());
     }
 
     public String updateMarathonJson(String json) {
@@ -1926,9 +2246,9 @@ public class CommonG {
 
         if (envVar != null) {
             if (this.getRemoteSSHConnection() != null && !local) {
-                ThreadProperty.set(envVar, this.getRemoteSSHConnection().getResult().trim());
+                VariableStore.current().set(envVar, this.getRemoteSSHConnection().getResult().trim());
             } else {
-                ThreadProperty.set(envVar, this.getCommandResult().trim());
+                VariableStore.current().set(envVar, this.getCommandResult().trim());
             }
         }
         if (this.getCommandExitStatus() != exitStatus) {
@@ -2186,9 +2506,7 @@ public class CommonG {
         this.setResponse("GET", (Response) response.get());
         assertThat(this.getResponse().getStatusCode()).as("It hasn't been possible to obtain status for service: " + service).isEqualTo(200);
 
-        String json = this.getResponse().getResponse();
-
-        String value = this.getJSONPathString(json, element, null);
+        String value = this.getJSONPathString(this.getResponse().getDocument(), element, null);
 
         switch (value) {
             case "0":
@@ -2232,9 +2550,7 @@ public class CommonG {
         this.setResponse("GET", (Response) response.get());
         assertThat(this.getResponse().getStatusCode()).as("It hasn't been possible to obtain health status for service: " + service).isEqualTo(200);
 
-        String json = this.getResponse().getResponse();
-
-        String value = this.getJSONPathString(json, element, null);
+        String value = this.getJSONPathString(this.getResponse().getDocument(), element, null);
 
         switch (value) {
             case "0":
@@ -21,8 +21,14 @@ import com.ning.http.client.Response;
 import com.ning.http.client.cookie.Cookie;
 import com.stratio.qa.exceptions.DBException;
 import com.stratio.qa.utils.GosecSSOUtils;
+import com.stratio.qa.utils.HostCommandResult;
+import com.stratio.qa.utils.PollingUtil;
+import com.stratio.qa.utils.PollingUtils.PollResult;
 import com.stratio.qa.utils.RemoteSSHConnection;
-import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.SshFanOutUtil;
+import com.stratio.qa.utils.SshFanOutUtils;
+import com.stratio.qa.utils.StreamingResponseHandler;
+import com.stratio.qa.utils.VariableStore;
 import cucumber.api.DataTable;
 import cucumber.api.java.en.Given;
 import org.assertj.core.api.Assertions;
@@ -35,6 +41,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -234,20 +241,15 @@ public class GivenGSpec extends BaseGSpec {
 
         Pattern pattern = Pattern.compile("^((.*)(\\.)+)(\\$.*)$");
         Matcher matcher = pattern.matcher(element);
-        String json;
-        String parsedElement;
+        String value;
 
         if (matcher.find()) {
-            json = matcher.group(2);
-            parsedElement = matcher.group(4);
+            value = commonspec.getJSONPathString(matcher.group(2), matcher.group(4), position);
         } else {
-            json = commonspec.getResponse().getResponse();
-            parsedElement = element;
+            value = commonspec.getJSONPathString(commonspec.getResponse().getDocument(), element, position);
         }
 
-        String value = commonspec.getJSONPathString(json, parsedElement, position);
-
-        ThreadProperty.set(envVar, value.replaceAll("\n", ""));
+        VariableStore.current().set(envVar, value.replaceAll("\n", ""));
     }
 
 
@@ -259,7 +261,7 @@ public class GivenGSpec extends BaseGSpec {
      */
     @Given("^I save \'(.+?)\' in variable \'(.+?)\'$")
     public void saveInEnvironment(String value, String envVar) {
-        ThreadProperty.set(envVar, value);
+        VariableStore.current().set(envVar, value);
     }
 
 
@@ -299,7 +301,7 @@ public class GivenGSpec extends BaseGSpec {
         if (value == null) {
             throw new Exception("No cluster name is found");
         } else {
-            ThreadProperty.set(envVar, value);
+            VariableStore.current().set(envVar, value);
         }
     }
 
@@ -458,6 +460,28 @@ public class GivenGSpec extends BaseGSpec {
         commonspec.setRestPort(restPort);
     }
 
+    /**
+     * Requests compressed or uncompressed responses in the next REST requests, overriding the suite
+     * setting (-DREST_COMPRESSION). Compressed responses are decompressed while they are received.
+     *
+     * @param accept null to request compressed responses, not null to request uncompressed ones
+     */
+    @Given("^I( do not)? accept compressed REST responses$")
+    public void setRestCompression(String accept) {
+        commonspec.setCompression(accept == null);
+    }
+
+    /**
+     * Compresses with gzip the bodies of the next REST requests, when bigger than
+     * -DREST_COMPRESS_REQUESTS_MIN_SIZE bytes (1024).
+     *
+     * @param compress null to compress request bodies, not null to send them uncompressed
+     */
+    @Given("^I( do not)? compress REST request bodies$")
+    public void setRestRequestCompression(String compress) {
+        commonspec.setCompressRequests(compress == null);
+    }
+
     /**
      * Maximizes current browser window. Mind the current resolution could break a test.
      */
@@ -675,7 +699,7 @@ public class GivenGSpec extends BaseGSpec {
 
         command = "set -o pipefail && alias grep='grep --color=never' && " + command;
         commonspec.getRemoteSSHConnection().runCommand(command);
-        commonspec.setCommandResult(commonspec.getRemoteSSHConnection().getResult());
+        commonspec.setCommandOutput(commonspec.getRemoteSSHConnection().getOutput());
         commonspec.setCommandExitStatus(commonspec.getRemoteSSHConnection().getExitStatus());
         commonspec.runCommandLoggerAndEnvVar(exitStatus, envVar, Boolean.FALSE);
 
@@ -792,58 +816,90 @@ public class GivenGSpec extends BaseGSpec {
         commonspec.getLogger().debug("Modifying data {} as {}", retrievedData, type);
         String modifiedData = commonspec.modifyData(retrievedData, type, modifications).toString();
 
-        Boolean searchUntilContains;
-        if (contains == null || contains.isEmpty()) {
-            searchUntilContains = Boolean.TRUE;
-        } else {
-            searchUntilContains = Boolean.FALSE;
-        }
-        Boolean found = !searchUntilContains;
-        AssertionError ex = null;
-
-        Future<Response> response;
-
-        Pattern pattern = CommonG.matchesOrContains(responseVal);
+        boolean searchUntilContains = contains == null || contains.isEmpty();
+        Pattern pattern = searchUntilContains ? CommonG.matchesOrContains(responseVal) : Pattern.compile(Pattern.quote(responseVal));
+        // An unwanted match means a retry, so there is no point in reading the rest of the body
+        boolean abortOnMatch = !searchUntilContains || Boolean.valueOf(System.getProperty("REST_STREAMING_ABORT_ON_MATCH", "false"));
 
-        for (int i = 0; (i <= timeout); i += wait) {
-            if (found && searchUntilContains) {
-                break;
-            }
+        PollResult result = PollingUtil.INSTANCE.getPollingUtils().poll("Response value check", () -> {
             commonspec.getLogger().debug("Generating request {} to {} with data {} as {}", requestType, endPoint, modifiedData, type);
-            response = commonspec.generateRequest(requestType, false, null, null, endPoint, modifiedData, type);
+            StreamingResponseHandler handler = new StreamingResponseHandler(pattern, abortOnMatch);
             commonspec.getLogger().debug("Saving response");
-            commonspec.setResponse(requestType, response.get());
+            commonspec.setResponse(commonspec.generateRequest(requestType, false, null, null, endPoint, modifiedData, type, handler).get());
             commonspec.getLogger().debug("Checking response value");
-            try {
-                if (searchUntilContains) {
-                    assertThat(commonspec.getResponse().getResponse()).containsPattern(pattern);
-                    found = true;
-                    timeout = i;
-                } else {
-                    assertThat(commonspec.getResponse().getResponse()).doesNotContain(responseVal);
-                    found = false;
-                    timeout = i;
-                }
-            } catch (AssertionError e) {
-                if (!found) {
-                    commonspec.getLogger().info("Response value not found after " + i + " seconds");
-                } else {
-                    commonspec.getLogger().info("Response value found after " + i + " seconds");
-                }
-                Thread.sleep(wait * 1000);
-                ex = e;
-            }
-            if (!found && !searchUntilContains) {
-                break;
+            if (searchUntilContains) {
+                assertThat(handler.isMatched()).as("Expecting response to contain pattern '%s'", pattern).isTrue();
+            } else {
+                assertThat(handler.isMatched()).as("Expecting response not to contain '%s'", responseVal).isFalse();
             }
-        }
-        if ((!found && searchUntilContains) || (found && !searchUntilContains)) {
-            throw (ex);
+            return true;
+        }, timeout, wait, TimeUnit.SECONDS);
+
+        if (!result.isSuccess()) {
+            throw result.getError();
         }
         if (searchUntilContains) {
-            commonspec.getLogger().info("Success! Response value found after " + timeout + " seconds");
+            commonspec.getLogger().info("Success! Response value found after " + result.getElapsedSeconds() + " seconds");
         } else {
-            commonspec.getLogger().info("Success! Response value not found after " + timeout + " seconds");
+            commonspec.getLogger().info("Success! Response value not found after " + result.getElapsedSeconds() + " seconds");
+        }
+    }
+
+
+    /**
+     * Executes the command in several hosts at the same time, through a pooled ssh connection to each of them.
+     * At most SSH_FANOUT_PARALLELISM (10) hosts run it at once, and each one is given SSH_FANOUT_TIMEOUT
+     * seconds (60). The exit status and output of every host are kept to be checked by the following steps.
+     *
+     * @param command    command to be run
+     * @param hosts      hosts, separated by commas
+     * @param remotePort remote port, 22 if null
+     * @param user       remote user
+     * @param password   (required if pemFile null)
+     * @param pemFile    (required if password null)
+     * @param envVar     variable where the table of results is saved (host, exit status, output and error)
+     * @throws Exception exception
+     */
+    @Given("^I run '(.+?)' in hosts '(.+?)'( in port '(.+?)')? with user '(.+?)'( and password '(.+?)')?( using pem file '(.+?)')?( and save the results in environment variable '(.+?)')?$")
+    public void executeCommandInHosts(String command, String hosts, String foo, String remotePort, String user, String bar, String password,
+                                      String baz, String pemFile, String qux, String envVar) throws Exception {
+        if ((pemFile == null) || (pemFile.equals("none"))) {
+            if (password == null) {
+                throw new Exception("You have to provide a password or a pem file to be used for connection");
+            }
+            pemFile = null;
+        } else if (!new File(pemFile).exists()) {
+            throw new Exception("Pem file: " + pemFile + " does not exist");
+        }
+        Set<String> hostList = new LinkedHashSet<String>();
+        for (String host : hosts.split(",")) {
+            if (!host.trim().isEmpty()) {
+                hostList.add(host.trim());
+            }
+        }
+
+        String fullCommand = "set -o pipefail && alias grep='grep --color=never' && " + command;
+        SshFanOutUtils.HostCommand hostCommand = SshFanOutUtils.sshCommand(fullCommand, user, password, remotePort, pemFile);
+        List<HostCommandResult> results = SshFanOutUtil.INSTANCE.getSshFanOutUtils().run(new ArrayList<String>(hostList), hostCommand);
+        commonspec.setHostCommandResults(results);
+
+        int succeeded = 0;
+        for (HostCommandResult result : results) {
+            if (result.getError() == null && result.getExitStatus() == 0) {
+                succeeded++;
+            } else {
+                commonspec.getLogger().debug("Command failed in {}", result);
+            }
+        }
+        commonspec.getLogger().debug("Command run in {} hosts, {} of them with exit status 0", results.size(), succeeded);
+
+        if (envVar != null) {
+            List<List<String>> table = new ArrayList<List<String>>();
+            table.add(Arrays.asList("host", "exitStatus", "output", "error"));
+            for (HostCommandResult result : results) {
+                table.add(result.toRow());
+            }
+            VariableStore.current().setTable(envVar, table);
         }
     }
 
@@ -872,7 +928,7 @@ public class GivenGSpec extends BaseGSpec {
             throw new IllegalStateException("No unused nodes in the cluster.");
         } else {
             //Pick the first available node
-            ThreadProperty.set(envVar, hostList.iterator().next());
+            VariableStore.current().set(envVar, hostList.iterator().next());
         }
     }
 
@@ -1073,7 +1129,7 @@ public class GivenGSpec extends BaseGSpec {
     @Given("^I convert jsonSchema '(.+?)' to json and save it in variable '(.+?)'")
     public void convertJSONSchemaToJSON(String jsonSchema, String envVar) throws Exception {
         String json = commonspec.parseJSONSchema(new JSONObject(jsonSchema)).toString();
-        ThreadProperty.set(envVar, json);
+        VariableStore.current().setJson(envVar, json);
     }
 
     /**
@@ -1103,7 +1159,7 @@ public class GivenGSpec extends BaseGSpec {
     public void getServiceStatus(String service, String cluster, String envVar) throws Exception {
         String status = commonspec.retrieveServiceStatus(service, cluster);
 
-        ThreadProperty.set(envVar, status);
+        VariableStore.current().set(envVar, status);
     }
 
     /**
@@ -1118,7 +1174,7 @@ public class GivenGSpec extends BaseGSpec {
     public void getServiceHealthStatus(String service, String cluster, String envVar) throws Exception {
         String health = commonspec.retrieveHealthServiceStatus(service, cluster);
 
-        ThreadProperty.set(envVar, health);
+        VariableStore.current().set(envVar, health);
     }
 
     /**
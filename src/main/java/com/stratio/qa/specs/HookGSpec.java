@@ -16,10 +16,11 @@
 
 package com.stratio.qa.specs;
 
-import com.ning.http.client.AsyncHttpClient;
-import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.cookie.Cookie;
 import com.stratio.qa.exceptions.SuppressableException;
 import com.stratio.qa.utils.CukesGHooks;
+import com.stratio.qa.utils.HttpResponse;
+import com.stratio.qa.utils.RestClientUtils;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.Scenario;
 import cucumber.api.java.After;
@@ -40,6 +41,7 @@ import org.openqa.selenium.remote.internal.HttpClientFactory;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
@@ -77,6 +79,15 @@ public class HookGSpec extends BaseGSpec {
         this.commonspec = spec;
     }
 
+    /**
+     * Forgets a failed important scenario, so that a new run of the same JVM is not aborted. Used by
+     * {@link com.stratio.qa.cucumber.testng.CucumberRunner#runFeatures}.
+     */
+    public static void reset() {
+        prevScenarioFailed = false;
+        loggerEnabled = true;
+    }
+
     /**
      * Clean the exception list.
      */
@@ -243,25 +254,41 @@ public class HookGSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * REST clients are pooled and shared along the whole suite (see {@link RestClientUtils}), so only
+     * scenario scoped state is reset here.
+     */
     @Before(order = 10, value = "@rest")
     public void restClientSetup() throws Exception {
-        commonspec.getLogger().debug("Starting a REST client");
-
-        commonspec.setClient(new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setAcceptAnyCertificate(true).setAllowPoolingConnections(false)
-                .build()));
+        commonspec.getLogger().debug("Using pooled REST client");
+        commonspec.setClient(null);
+        commonspec.setPooledClient(true);
+        commonspec.setCookies(new ArrayList<Cookie>());
+        commonspec.setHeaders(new HashMap<String, String>());
     }
 
     @After(order = 10, value = "@rest")
     public void restClientTeardown() throws IOException {
-        commonspec.getLogger().debug("Shutting down REST client");
-        commonspec.getClient().close();
+        commonspec.getLogger().debug("Releasing pooled REST client");
+        commonspec.setClient(null);
+        commonspec.setPooledClient(false);
+        commonspec.getCookies().clear();
+        commonspec.getHeaders().clear();
+    }
+
+    /**
+     * Delete the response body spilled to disk, if any.
+     */
+    @After(order = 10)
+    public void responseTeardown() {
+        commonspec.setResponse((HttpResponse) null);
     }
 
     @After(order = 10)
     public void remoteSSHConnectionTeardown() throws Exception {
         if (commonspec.getRemoteSSHConnection() != null) {
-            commonspec.getLogger().debug("Closing SSH remote connection");
-            commonspec.getRemoteSSHConnection().getSession().disconnect();
+            commonspec.getLogger().debug("Releasing SSH remote connection");
+            commonspec.getRemoteSSHConnection().closeConnection();
         }
     }
 
@@ -19,10 +19,16 @@ package com.stratio.qa.specs;
 import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.Row;
+import com.jayway.jsonpath.DocumentContext;
 import com.mongodb.DBObject;
 import com.stratio.qa.assertions.DBObjectsAssert;
+import com.stratio.qa.utils.CommandOutput;
+import com.stratio.qa.utils.HostCommandResult;
+import com.stratio.qa.utils.LoadResults;
+import com.stratio.qa.utils.PollingUtil;
+import com.stratio.qa.utils.PollingUtils.PollResult;
 import com.stratio.qa.utils.PreviousWebElements;
-import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.VariableStore;
 import cucumber.api.DataTable;
 import cucumber.api.java.en.Then;
 import gherkin.formatter.model.DataTableRow;
@@ -40,6 +46,8 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static com.stratio.qa.assertions.Assertions.assertThat;
@@ -321,7 +329,7 @@ public class ThenGSpec extends BaseGSpec {
 
     /**
      * Checks if {@code expectedCount} webelements are found, whithin a {@code timeout} and with a location
-     * {@code method}. Each negative lookup is followed by a wait of {@code wait} seconds. Selenium times are not
+     * {@code method}. Each negative lookup is followed by a wait of {@code wait} seconds. Selenium times are
      * accounted for the mentioned timeout.
      *
      * @param timeout
@@ -329,27 +337,18 @@ public class ThenGSpec extends BaseGSpec {
      * @param expectedCount
      * @param method
      * @param element
-     * @throws InterruptedException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws SecurityException
-     * @throws NoSuchFieldException
-     * @throws ClassNotFoundException
+     * @throws Exception
      */
     @Then("^in less than '(\\d+?)' seconds, checking each '(\\d+?)' seconds, '(\\d+?)' elements exists with '([^:]*?):(.+?)'$")
     public void assertSeleniumNElementExistsOnTimeOut(Integer timeout, Integer wait, Integer expectedCount,
-                                                      String method, String element) throws InterruptedException, ClassNotFoundException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
-        List<WebElement> wel = null;
-        for (int i = 0; i < timeout; i += wait) {
-            wel = commonspec.locateElement(method, element, -1);
-            if (wel.size() == expectedCount) {
-                break;
-            } else {
-                Thread.sleep(wait * 1000);
-            }
-        }
-
-        PreviousWebElements pwel = new PreviousWebElements(wel);
+                                                      String method, String element) throws Exception {
+        AtomicReference<List<WebElement>> wel = new AtomicReference<List<WebElement>>(new ArrayList<WebElement>());
+        PollingUtil.INSTANCE.getPollingUtils().poll("Elements count check", () -> {
+            wel.set(commonspec.locateElement(method, element, -1));
+            return wel.get().size() == expectedCount;
+        }, timeout, wait, TimeUnit.SECONDS);
+
+        PreviousWebElements pwel = new PreviousWebElements(wel.get());
         assertThat(this.commonspec, pwel).as("Element count doesnt match").hasSize(expectedCount);
         commonspec.setPreviousWebElements(pwel);
 
@@ -368,33 +367,24 @@ public class ThenGSpec extends BaseGSpec {
      */
     @Then("^in less than '(\\d+?)' seconds, checking each '(\\d+?)' seconds, the command output '(.+?)' contains '(.+?)'( with exit status '(.+?)')?$")
     public void assertCommandExistsOnTimeOut(Integer timeout, Integer wait, String command, String search, String foo, Integer exitStatus) throws Exception {
-        Boolean found = false;
-        AssertionError ex = null;
-        command = "set -o pipefail && alias grep='grep --color=never' && " + command;
-        for (int i = 0; (i <= timeout); i += wait) {
-            if (found) {
-                break;
-            }
+        String fullCommand = "set -o pipefail && alias grep='grep --color=never' && " + command;
+        // without exit status to check, the command can be stopped as soon as a line contains the text
+        CommandOutput.LineListener listener = exitStatus == null && !search.contains("\n") ? line -> line.contains(search) : null;
+        PollResult result = PollingUtil.INSTANCE.getPollingUtils().poll("Command output check", () -> {
             commonspec.getLogger().debug("Checking output value");
-            commonspec.getRemoteSSHConnection().runCommand(command);
-            commonspec.setCommandResult(commonspec.getRemoteSSHConnection().getResult());
-            try {
-                if (exitStatus != null) {
-                    assertThat(commonspec.getRemoteSSHConnection().getExitStatus()).isEqualTo(exitStatus);
-                }
-                assertThat(commonspec.getCommandResult()).as("Contains " + search + ".").contains(search);
-                found = true;
-                timeout = i;
-            } catch (AssertionError e) {
-                commonspec.getLogger().info("Command output don't found yet after " + i + " seconds");
-                Thread.sleep(wait * 1000);
-                ex = e;
+            commonspec.getRemoteSSHConnection().runCommand(fullCommand, listener);
+            commonspec.setCommandOutput(commonspec.getRemoteSSHConnection().getOutput());
+            if (exitStatus != null) {
+                assertThat(commonspec.getRemoteSSHConnection().getExitStatus()).isEqualTo(exitStatus);
             }
+            assertThat(commonspec.commandOutputContains(search)).as("Contains " + search + ".").isTrue();
+            return true;
+        }, timeout, wait, TimeUnit.SECONDS);
+
+        if (!result.isSuccess()) {
+            throw result.getError();
         }
-        if (!found) {
-            throw (ex);
-        }
-        commonspec.getLogger().info("Command output found after " + timeout + " seconds");
+        commonspec.getLogger().info("Command output found after " + result.getElapsedSeconds() + " seconds");
     }
 
 
@@ -516,6 +506,52 @@ public class ThenGSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * Checks a latency statistic of the last load test
+     *
+     * @param statistic  percentile (i.e. p50, p95, p99, p99.9), mean or max
+     * @param maxLatency maximum latency in milliseconds
+     */
+    @Then("^the load test '(p\\d+(?:\\.\\d+)?|mean|max)' latency must be lower than '(\\d+?)' milliseconds$")
+    public void assertLoadLatency(String statistic, Integer maxLatency) {
+        LoadResults results = commonspec.getLoadResults();
+        assertThat(results).as("No load test has been run").isNotNull();
+
+        double latency;
+        if ("mean".equals(statistic)) {
+            latency = results.getHistogram().getMean() / 1000.0;
+        } else if ("max".equals(statistic)) {
+            latency = results.getHistogram().getMax() / 1000.0;
+        } else {
+            latency = results.getPercentile(Double.valueOf(statistic.substring(1)));
+        }
+        assertThat(latency).as("Load test " + statistic + " latency (ms). " + results).isLessThan(maxLatency);
+    }
+
+    /**
+     * Checks the percentage of failed requests of the last load test
+     *
+     * @param maxErrorRate maximum percentage of failed requests
+     */
+    @Then("^the load test error rate must be lower than '(\\d+(?:\\.\\d+)?)'%$")
+    public void assertLoadErrorRate(Double maxErrorRate) {
+        LoadResults results = commonspec.getLoadResults();
+        assertThat(results).as("No load test has been run").isNotNull();
+        assertThat(results.getErrorRate()).as("Load test error rate (%). " + results).isLessThan(maxErrorRate);
+    }
+
+    /**
+     * Checks the throughput of the last load test
+     *
+     * @param minThroughput minimum number of requests per second
+     */
+    @Then("^the load test throughput must be higher than '(\\d+(?:\\.\\d+)?)' requests per second$")
+    public void assertLoadThroughput(Double minThroughput) {
+        LoadResults results = commonspec.getLoadResults();
+        assertThat(results).as("No load test has been run").isNotNull();
+        assertThat(results.getThroughput()).as("Load test throughput (req/s). " + results).isGreaterThan(minThroughput);
+    }
+
     /**
      * Checks the different results of a previous query
      *
@@ -561,7 +597,7 @@ public class ThenGSpec extends BaseGSpec {
      **/
     @Then("^the command output contains '(.+?)'$")
     public void findShellOutput(String search) throws Exception {
-        assertThat(commonspec.getCommandResult()).as("Contains " + search + ".").contains(search);
+        assertThat(commonspec.commandOutputContains(search)).as("Contains " + search + ". Output: " + commonspec.getCommandResult()).isTrue();
     }
 
     /**
@@ -571,7 +607,59 @@ public class ThenGSpec extends BaseGSpec {
      **/
     @Then("^the command output does not contain '(.+?)'$")
     public void notFindShellOutput(String search) throws Exception {
-        assertThat(commonspec.getCommandResult()).as("NotContains " + search + ".").doesNotContain(search);
+        assertThat(commonspec.commandOutputContains(search)).as("NotContains " + search + ". Output: " + commonspec.getCommandResult()).isFalse();
+    }
+
+    /**
+     * Check the existence of a text at the output of the command run in every host
+     *
+     * @param search
+     **/
+    @Then("^every host output contains '(.+?)'$")
+    public void assertEveryHostOutputContains(String search) {
+        List<HostCommandResult> results = commonspec.getHostCommandResults();
+        Assertions.assertThat(results).as("No command has been run in hosts").isNotEmpty();
+        List<String> failed = new ArrayList<String>();
+        for (HostCommandResult result : results) {
+            if (result.getError() != null || !result.getOutput().contains(search)) {
+                failed.add(result.toString());
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new AssertionError(failed.size() + " of " + results.size() + " hosts output does not contain '" + search + "':\n" + String.join("\n", failed));
+        }
+    }
+
+    /**
+     * Check the exit status of the command run in every host
+     *
+     * @param exitStatus
+     **/
+    @Then("^every host exits with status '(\\d+?)'$")
+    public void assertEveryHostExitStatus(Integer exitStatus) {
+        Assertions.assertThat(commonspec.getHostCommandResults()).as("No command has been run in hosts").isNotEmpty();
+        assertHostsExitStatus(commonspec.getHostCommandResults().size(), exitStatus);
+    }
+
+    /**
+     * Check that a minimum number of the hosts the command was run in exited with the given status
+     *
+     * @param minimum
+     * @param exitStatus
+     **/
+    @Then("^at least '(\\d+?)' hosts exit with status '(\\d+?)'$")
+    public void assertHostsExitStatus(Integer minimum, Integer exitStatus) {
+        List<HostCommandResult> results = commonspec.getHostCommandResults();
+        List<String> failed = new ArrayList<String>();
+        for (HostCommandResult result : results) {
+            if (result.getError() != null || result.getExitStatus() != exitStatus) {
+                failed.add(result.toString());
+            }
+        }
+        if (results.size() - failed.size() < minimum) {
+            throw new AssertionError((results.size() - failed.size()) + " of " + results.size() + " hosts exited with status " + exitStatus
+                    + ", expected at least " + minimum + ":\n" + String.join("\n", failed));
+        }
     }
 
     /**
@@ -605,12 +693,12 @@ public class ThenGSpec extends BaseGSpec {
             for (Cookie cookie: commonspec.getSeleniumCookies()) {
                 if (cookie.getName().contains("dcos-acs-auth-cookie")) {
                     //It's this cookie where we have to extract the value
-                    ThreadProperty.set(envVar, cookie.getValue());
+                    VariableStore.current().set(envVar, cookie.getValue());
                     break;
                 }
             }
         } else {
-            ThreadProperty.set(envVar, null);
+            VariableStore.current().remove(envVar);
         }
     }
 
@@ -623,12 +711,12 @@ public class ThenGSpec extends BaseGSpec {
             for (Cookie cookie: commonspec.getSeleniumCookies()) {
                 if (cookie.getName().contains(cookieName)) {
                     //It's this cookie where we have to extract the value
-                    ThreadProperty.set(envVar, cookie.getValue());
+                    VariableStore.current().set(envVar, cookie.getValue());
                     break;
                 }
             }
         } else {
-            ThreadProperty.set(envVar, null);
+            VariableStore.current().remove(envVar);
         }
     }
 
@@ -661,18 +749,47 @@ public class ThenGSpec extends BaseGSpec {
      */
     @Then("^'(.+?)' matches the following cases:$")
     public void matchWithExpresion(String envVar, DataTable table) throws Exception {
-        String jsonString = ThreadProperty.get(envVar);
+        DocumentContext document = VariableStore.current().getJson(envVar);
 
         for (DataTableRow row : table.getGherkinRows()) {
             String expression = row.getCells().get(0);
             String condition = row.getCells().get(1);
             String result = row.getCells().get(2);
 
-            String value = commonspec.getJSONPathString(jsonString, expression, null);
+            String value = commonspec.getJSONPathString(document, expression, null);
             commonspec.evaluateJSONElementOperation(value, condition, result);
         }
     }
 
+    /**
+     * Check every expression defined by JSONPath (http://goessner.net/articles/JsonPath/index.html)
+     * against the last response, parsed only once. All rows are evaluated and every mismatch is reported at once.
+     *
+     * @param table data table in which each row stores one expression, its operation and the expected value
+     */
+    @Then("^the service response matches:$")
+    public void assertResponseMatches(DataTable table) throws Exception {
+        DocumentContext document = commonspec.getResponse().getDocument();
+        List<List<String>> rows = table.raw();
+        List<String> failed = new ArrayList<>();
+
+        for (List<String> row : rows) {
+            String expression = row.get(0);
+            String condition = row.get(1);
+            String result = row.get(2);
+            try {
+                String value = commonspec.getJSONPathString(document, expression, null);
+                commonspec.evaluateJSONElementOperation(value, condition, result);
+            } catch (AssertionError | Exception e) {
+                failed.add("'" + expression + "' " + condition + " '" + result + "': " + e.getMessage());
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            throw new AssertionError(failed.size() + " of " + rows.size() + " expressions did not match:\n" + String.join("\n", failed));
+        }
+    }
+
     /**
      * A PUT request over the body value.
      *
@@ -890,7 +1007,7 @@ public class ThenGSpec extends BaseGSpec {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
         String text = commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getText();
-        ThreadProperty.set(envVar, text);
+        VariableStore.current().set(envVar, text);
     }
 
     /**
@@ -1045,13 +1162,15 @@ public class ThenGSpec extends BaseGSpec {
         List<String> sqlTable = new ArrayList<String>();
 
         //the result is taken from previous step
-        for (int i = 0; ThreadProperty.get("queryresponse" + i) != null; i++) {
-            String ip_value = ThreadProperty.get("queryresponse" + i);
-            sqlTable.add(i, ip_value);
+        List<List<String>> queryResponse = VariableStore.current().getTable("queryresponse");
+        if (queryResponse != null) {
+            for (List<String> row : queryResponse) {
+                sqlTable.addAll(row);
+            }
         }
-
-        for (int i = 0; ThreadProperty.get("queryresponse" + i) != null; i++) {
-            ThreadProperty.remove("queryresponse" + i);
+        VariableStore.current().remove("queryresponse");
+        for (int i = 0; i < sqlTable.size(); i++) {
+            VariableStore.current().remove("queryresponse" + i);
         }
 
         assertThat(tablePattern).as("response is not equal to the expected").isEqualTo(sqlTable);
@@ -1221,24 +1340,18 @@ public class ThenGSpec extends BaseGSpec {
      */
     @Then("^service '(.+?)' status in cluster '(.+?)' is '(suspended|running|deploying)'( in less than '(\\d+?)' seconds checking every '(\\d+?)' seconds)?")
     public void serviceStatusCheck(String service, String cluster, String status, String foo, Integer totalWait, Integer interval) throws Exception {
-        String response;
-        Integer i = 0;
-        boolean matched;
-
-        response = commonspec.retrieveServiceStatus(service, cluster);
+        AtomicReference<String> response = new AtomicReference<>("");
 
         if (foo != null) {
-            matched = status.matches(response);
-            while (!matched && i < totalWait) {
-                this.commonspec.getLogger().info("Service status not found yet after " + i + " seconds");
-                i = i + interval;
-                response = commonspec.retrieveServiceStatus(service, cluster);
-                matched = status.matches(response);
-            }
+            PollingUtil.INSTANCE.getPollingUtils().poll("Service status check", () -> {
+                response.set(commonspec.retrieveServiceStatus(service, cluster));
+                return status.matches(response.get());
+            }, totalWait, interval, TimeUnit.SECONDS);
+        } else {
+            response.set(commonspec.retrieveServiceStatus(service, cluster));
         }
 
-        assertThat(status).as("Expected status: " + status + " doesn't match obtained one: " + response).matches(response);
-
+        assertThat(status).as("Expected status: " + status + " doesn't match obtained one: " + response.get()).matches(response.get());
     }
 
     /**
@@ -1251,23 +1364,18 @@ public class ThenGSpec extends BaseGSpec {
      */
     @Then("^service '(.+?)' health status in cluster '(.+?)' is '(unhealthy|healthy|unknown)'( in less than '(\\d+?)' seconds checking every '(\\d+?)' seconds)?")
     public void serviceHealthStatusCheck(String service, String cluster, String status, String foo, Integer totalWait, Integer interval) throws Exception {
-        String response;
-        Integer i = 0;
-        boolean matched;
-
-        response = commonspec.retrieveHealthServiceStatus(service, cluster);
+        AtomicReference<String> response = new AtomicReference<>("");
 
         if (foo != null) {
-            matched = status.matches(response);
-            while (!matched && i < totalWait) {
-                this.commonspec.getLogger().info("Service health status not found yet after " + i + " seconds");
-                i = i + interval;
-                response = commonspec.retrieveHealthServiceStatus(service, cluster);
-                matched = status.matches(response);
-            }
+            PollingUtil.INSTANCE.getPollingUtils().poll("Service health status check", () -> {
+                response.set(commonspec.retrieveHealthServiceStatus(service, cluster));
+                return status.matches(response.get());
+            }, totalWait, interval, TimeUnit.SECONDS);
+        } else {
+            response.set(commonspec.retrieveHealthServiceStatus(service, cluster));
         }
 
-        assertThat(status).as("Expected status: " + status + " doesn't match obtained one: " + response).matches(response);
+        assertThat(status).as("Expected status: " + status + " doesn't match obtained one: " + response.get()).matches(response.get());
     }
 
 }
@@ -25,7 +25,11 @@ import com.mongodb.util.JSON;
 import com.ning.http.client.Response;
 import com.stratio.qa.cucumber.converter.ArrayListConverter;
 import com.stratio.qa.cucumber.converter.NullableStringConverter;
-import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.LoadResults;
+import com.stratio.qa.utils.PollingUtil;
+import com.stratio.qa.utils.PollingUtils.PollResult;
+import com.stratio.qa.utils.StreamingResponseHandler;
+import com.stratio.qa.utils.VariableStore;
 import cucumber.api.DataTable;
 import cucumber.api.Transform;
 import cucumber.api.java.en.When;
@@ -45,7 +49,9 @@ import java.sql.Connection;
 import java.sql.ResultSetMetaData;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.stratio.qa.assertions.Assertions.assertThat;
@@ -392,73 +398,174 @@ public class WhenGSpec extends BaseGSpec {
     @When("^in less than '(\\d+?)' seconds, checking each '(\\d+?)' seconds, I send a '(.+?)' request to '(.+?)'( so that the response( does not)? contains '(.+?)')?$")
     public void sendRequestTimeout(Integer timeout, Integer wait, String requestType, String endPoint, String foo, String contains, String responseVal) throws Exception {
 
-        AssertionError ex = null;
         String type = "";
-        Future<Response> response;
 
         if (foo != null) {
-            Boolean searchUntilContains;
-            if (contains == null || contains.isEmpty()) {
-                searchUntilContains = Boolean.TRUE;
-            } else {
-                searchUntilContains = Boolean.FALSE;
-            }
-            Boolean found = !searchUntilContains;
-
-            Pattern pattern = CommonG.matchesOrContains(responseVal);
-            for (int i = 0; (i <= timeout); i += wait) {
-                if (found && searchUntilContains) {
-                    break;
-                }
-                response = commonspec.generateRequest(requestType, false, null, null, endPoint, "", type, "");
-                commonspec.setResponse(requestType, response.get());
+            boolean searchUntilContains = contains == null || contains.isEmpty();
+            Pattern pattern = searchUntilContains ? CommonG.matchesOrContains(responseVal) : Pattern.compile(Pattern.quote(responseVal));
+            // An unwanted match means a retry, so there is no point in reading the rest of the body
+            boolean abortOnMatch = !searchUntilContains || Boolean.valueOf(System.getProperty("REST_STREAMING_ABORT_ON_MATCH", "false"));
+
+            PollResult result = PollingUtil.INSTANCE.getPollingUtils().poll("Response value check", () -> {
+                StreamingResponseHandler handler = new StreamingResponseHandler(pattern, abortOnMatch);
+                commonspec.setResponse(commonspec.generateRequest(requestType, false, null, null, endPoint, "", type, handler).get());
                 commonspec.getLogger().debug("Checking response value");
-                try {
-                    if (searchUntilContains) {
-                        assertThat(commonspec.getResponse().getResponse()).containsPattern(pattern);
-                        found = true;
-                        timeout = i;
-                    } else {
-                        assertThat(commonspec.getResponse().getResponse()).doesNotContain(responseVal);
-                        found = false;
-                        timeout = i;
-                    }
-                } catch (AssertionError e) {
-                    if (!found) {
-                        commonspec.getLogger().info("Response value not found after " + i + " seconds");
-                    } else {
-                        commonspec.getLogger().info("Response value found after " + i + " seconds");
-                    }
-                    Thread.sleep(wait * 1000);
-                    ex = e;
-                }
-                if (!found && !searchUntilContains) {
-                    break;
+                if (searchUntilContains) {
+                    assertThat(handler.isMatched()).as("Expecting response to contain pattern '%s'", pattern).isTrue();
+                } else {
+                    assertThat(handler.isMatched()).as("Expecting response not to contain '%s'", responseVal).isFalse();
                 }
-            }
-            if ((!found && searchUntilContains) || (found && !searchUntilContains)) {
-                throw (ex);
+                return true;
+            }, timeout, wait, TimeUnit.SECONDS);
+
+            if (!result.isSuccess()) {
+                throw result.getError();
             }
             if (searchUntilContains) {
-                commonspec.getLogger().info("Success! Response value found after " + timeout + " seconds");
+                commonspec.getLogger().info("Success! Response value found after " + result.getElapsedSeconds() + " seconds");
             } else {
-                commonspec.getLogger().info("Success! Response value not found after " + timeout + " seconds");
+                commonspec.getLogger().info("Success! Response value not found after " + result.getElapsedSeconds() + " seconds");
             }
         } else {
+            PollResult result = PollingUtil.INSTANCE.getPollingUtils().poll("Response check", () -> {
+                commonspec.setResponse(requestType, commonspec.generateRequest(requestType, false, null, null, endPoint, "", type).get());
+                return true;
+            }, timeout, wait, TimeUnit.SECONDS);
 
-            for (int i = 0; (i <= timeout); i += wait) {
-                response = commonspec.generateRequest(requestType, false, null, null, endPoint, "", type, "");
-                commonspec.setResponse(requestType, response.get());
-                commonspec.getLogger().debug("Checking response value");
-                try {
-                    assertThat(commonspec.getResponse().getResponse());
-                    timeout = i;
-                } catch (AssertionError e) {
-                    Thread.sleep(wait * 1000);
-                    ex = e;
-                }
+            if (!result.isSuccess()) {
+                throw result.getError();
+            }
+        }
+    }
+
+    /**
+     * Sends the same request {@code total} times, with at most {@code concurrency} requests in flight.
+     * Latency and status of every request are recorded, to be checked with the load test assertions.
+     *
+     * @param total       number of requests to be sent
+     * @param requestType type of request to be sent
+     * @param endPoint    end point to be used
+     * @param concurrency maximum number of requests in flight
+     * @param foo         parameter generated by cucumber because of the optional expression
+     * @param baseData    path to file containing the data to be sent
+     * @param bar         parameter generated by cucumber because of the optional expression
+     * @param type        type of data to be sent (json|string)
+     * @throws Exception
+     */
+    @When("^I send '(\\d+?)' '(.+?)' requests to '(.+?)' with concurrency '(\\d+?)'( based on '([^:]+?)')?( as '(json|string)')?$")
+    public void sendConcurrentRequests(Integer total, String requestType, String endPoint, Integer concurrency, String foo, String baseData, String bar, String type) throws Exception {
+        String data = "";
+        if (baseData != null) {
+            data = commonspec.retrieveData(baseData, type);
+        }
+
+        LoadResults results = commonspec.generateConcurrentRequests(requestType, endPoint, data, type, total, concurrency);
+        commonspec.getLogger().info("Load test results: {}", results);
+        commonspec.setLoadResults(results);
+    }
+
+    /**
+     * Sends the same request at a constant rate of {@code rate} requests per second during {@code duration} seconds.
+     * Latency and status of every request are recorded, to be checked with the load test assertions.
+     *
+     * @param requestType type of request to be sent
+     * @param endPoint    end point to be used
+     * @param duration    seconds to keep sending requests
+     * @param rate        requests per second
+     * @param foo         parameter generated by cucumber because of the optional expression
+     * @param baseData    path to file containing the data to be sent
+     * @param bar         parameter generated by cucumber because of the optional expression
+     * @param type        type of data to be sent (json|string)
+     * @throws Exception
+     */
+    @When("^I send '(.+?)' requests to '(.+?)' for '(\\d+?)' seconds at '(\\d+?)' requests per second( based on '([^:]+?)')?( as '(json|string)')?$")
+    public void sendRequestsAtRate(String requestType, String endPoint, Integer duration, Integer rate, String foo, String baseData, String bar, String type) throws Exception {
+        String data = "";
+        if (baseData != null) {
+            data = commonspec.retrieveData(baseData, type);
+        }
+
+        LoadResults results = commonspec.generateRequestsAtRate(requestType, endPoint, data, type, duration, rate);
+        commonspec.getLogger().info("Load test results: {}", results);
+        commonspec.setLoadResults(results);
+    }
+
+    /**
+     * Sends all the requests in the table at the same time, checking each response and saving it in an
+     * environment variable. Every mismatch is reported together once all the responses have been received.
+     *
+     * @param requests DataTable with a header row and one row per request. Valid columns:
+     *                 method: type of request to be sent (GET|DELETE|POST|PUT)
+     *                 endpoint: end point to be used
+     *                 body: (optional) path to file containing the data to be sent
+     *                 type: (optional) type of data to be sent (json|string)
+     *                 status: (optional) expected status code
+     *                 content: (optional) text (or regex, with "regex:" prefix) the response must contain
+     *                 variable: (optional) environment variable to save the response in
+     *                 Empty or N/A cells are ignored. For example:
+     *                 {@code
+     *                 | method | endpoint      | body       | type | status | content     | variable |
+     *                 | GET    | /health       | N/A        | N/A  | 200    | UP          | health   |
+     *                 | POST   | /config/query | query.conf | json | 200    | regex:v\d+ | config   |
+     *                 }
+     * @throws Exception
+     */
+    @When("^I send in parallel the following requests:$")
+    public void sendParallelRequests(DataTable requests) throws Exception {
+        List<String> header = requests.raw().get(0);
+        if (!header.contains("method") || !header.contains("endpoint")) {
+            throw new Exception("Columns 'method' and 'endpoint' are mandatory");
+        }
+        List<List<String>> rows = requests.raw().subList(1, requests.raw().size());
+
+        List<Future<Response>> responses = new ArrayList<>();
+        for (List<String> row : rows) {
+            String data = "";
+            if (getCell(header, row, "body") != null) {
+                data = commonspec.retrieveData(getCell(header, row, "body"), getCell(header, row, "type"));
             }
+            commonspec.getLogger().debug("Generating request {} to {}", getCell(header, row, "method"), getCell(header, row, "endpoint"));
+            responses.add(commonspec.generateRequest(getCell(header, row, "method"), false, null, null, getCell(header, row, "endpoint"),
+                    data, getCell(header, row, "type")));
         }
+
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            List<String> row = rows.get(i);
+            String request = getCell(header, row, "method") + " " + getCell(header, row, "endpoint");
+            Response response;
+            try {
+                response = responses.get(i).get();
+            } catch (ExecutionException e) {
+                mismatches.add(request + ": request failed: " + e.getCause());
+                continue;
+            }
+
+            String expectedStatus = getCell(header, row, "status");
+            if (expectedStatus != null && response.getStatusCode() != Integer.parseInt(expectedStatus)) {
+                mismatches.add(request + ": expected status " + expectedStatus + " but was " + response.getStatusCode());
+            }
+            String body = response.getResponseBody();
+            String expectedContent = getCell(header, row, "content");
+            if (expectedContent != null && !CommonG.matchesOrContains(expectedContent).matcher(body).find()) {
+                mismatches.add(request + ": expected response to contain '" + expectedContent + "' but was: " + body);
+            }
+            if (getCell(header, row, "variable") != null) {
+                VariableStore.current().set(getCell(header, row, "variable"), body);
+            }
+        }
+
+        if (!mismatches.isEmpty()) {
+            throw new AssertionError(mismatches.size() + " of " + rows.size() + " requests did not match:\n" + String.join("\n", mismatches));
+        }
+    }
+
+    private String getCell(List<String> header, List<String> row, String column) {
+        int index = header.indexOf(column);
+        if (index < 0 || index >= row.size() || row.get(index).isEmpty() || "N/A".equals(row.get(index))) {
+            return null;
+        }
+        return row.get(index);
     }
 
     @When("^I login to '(.+?)' based on '([^:]+?)' as '(json|string)'$")
@@ -689,7 +796,7 @@ public class WhenGSpec extends BaseGSpec {
     @When("^I sort elements in '(.+?)' by '(.+?)' criteria in '(.+?)' order$")
     public void sortElements(String envVar, String criteria, String order) {
 
-        String value = ThreadProperty.get(envVar);
+        String value = VariableStore.current().get(envVar);
         JsonArray jsonArr = JsonValue.readHjson(value).asArray();
 
         List<JsonValue> jsonValues = new ArrayList<JsonValue>();
@@ -722,7 +829,7 @@ public class WhenGSpec extends BaseGSpec {
             Collections.sort(jsonValues, comparator.reversed());
         }
 
-        ThreadProperty.set(envVar, jsonValues.toString());
+        VariableStore.current().setJson(envVar, jsonValues.toString());
     }
 
     /**
@@ -931,7 +1038,7 @@ public class WhenGSpec extends BaseGSpec {
         String modifiedData = commonspec.modifyData(retrievedData, type, modifications).toString();
 
         // Save in environment variable
-        ThreadProperty.set(envVar, modifiedData);
+        saveData(envVar, type, modifiedData);
     }
 
     /**
@@ -948,7 +1055,15 @@ public class WhenGSpec extends BaseGSpec {
         String retrievedData = commonspec.retrieveData(baseData, type);
 
         // Save in environment variable
-        ThreadProperty.set(envVar, retrievedData);
+        saveData(envVar, type, retrievedData);
+    }
+
+    private void saveData(String envVar, String type, String data) {
+        if ("json".equals(type)) {
+            VariableStore.current().setJson(envVar, data);
+        } else {
+            VariableStore.current().set(envVar, data);
+        }
     }
 
     /**
@@ -1020,8 +1135,7 @@ public class WhenGSpec extends BaseGSpec {
     public void selectData(String query) throws Exception {
         Statement myStatement = null;
         //postgres table
-        List<String> sqlTable = new ArrayList<String>();
-        List<String> sqlTableAux = new ArrayList<String>();
+        List<List<String>> sqlTable = new ArrayList<List<String>>();
         Connection myConnection = this.commonspec.getConnection();
         java.sql.ResultSet rs = null;
         try {
@@ -1030,21 +1144,27 @@ public class WhenGSpec extends BaseGSpec {
             //column names
             ResultSetMetaData resultSetMetaData = rs.getMetaData();
             int count = resultSetMetaData.getColumnCount();
+            List<String> columns = new ArrayList<String>(count);
             for (int i = 1; i <= count; i++) {
-                sqlTable.add(resultSetMetaData.getColumnName(i).toString());
+                columns.add(resultSetMetaData.getColumnName(i).toString());
             }
+            sqlTable.add(columns);
             //takes column names and culumn count
             while (rs.next()) {
+                List<String> row = new ArrayList<String>(count);
                 for (int i = 1; i <= count; i++) {
-                    //aux list without column names
-                    sqlTableAux.add(rs.getObject(i).toString());
+                    row.add(rs.getObject(i).toString());
                 }
+                sqlTable.add(row);
             }
-            sqlTable.addAll(sqlTableAux);
 
-            //sends raws to environment variable
-            for (int i = 0; i < sqlTable.size(); i++) {
-                ThreadProperty.set("queryresponse" + i, sqlTable.get(i));
+            //sends rows to environment variable, and every cell as queryresponse<N> as well
+            VariableStore.current().setTable("queryresponse", sqlTable);
+            int cell = 0;
+            for (List<String> row : sqlTable) {
+                for (String value : row) {
+                    VariableStore.current().set("queryresponse" + cell++, value);
+                }
             }
             rs.close();
             myStatement.close();
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Output of a command, read from its stream as soon as it is available.
+ *
+ * Bytes are kept in a growable buffer up to the given limit, and the rest is spilled to a temporary file, so
+ * commands writing huge logs do not exhaust the memory. A listener can be notified of every line, and stop the
+ * reading as soon as the line it waits for is found. Lines longer than 1 MB are truncated before being notified.
+ */
+public class CommandOutput implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private static final int READ_SIZE = 8192;
+
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private final long maxMemoryBytes;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+    private int count = 0;
+
+    private long spilled = 0;
+
+    private File spillFile;
+
+    private OutputStream spill;
+
+    private byte[] line = new byte[256];
+
+    private int lineLength = 0;
+
+    /**
+     * Receives every line of the output.
+     */
+    public interface LineListener {
+
+        /**
+         * @param line line, without the line terminator
+         * @return true to stop reading the output
+         */
+        boolean onLine(String line);
+    }
+
+    /**
+     * Constructor of CommandOutput.
+     *
+     * @param maxMemoryBytes bytes kept in memory, the rest is spilled to disk
+     */
+    public CommandOutput(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Reads the stream until its end, or until the listener asks to stop. Each read blocks only until some
+     * bytes are available, so the end of the output is detected as soon as the stream is closed.
+     *
+     * @param in       stream to read
+     * @param listener listener of the lines, may be null
+     * @return true if the listener stopped the reading
+     * @throws IOException exception
+     */
+    public boolean pump(InputStream in, LineListener listener) throws IOException {
+        byte[] chunk = new byte[READ_SIZE];
+        int read;
+        while ((read = in.read(chunk, 0, chunk.length)) >= 0) {
+            write(chunk, 0, read);
+            if (listener != null && lines(chunk, read, listener)) {
+                flush();
+                return true;
+            }
+        }
+        if (listener != null && lineLength > 0 && listener.onLine(lineText())) {
+            flush();
+            return true;
+        }
+        flush();
+        return false;
+    }
+
+    /**
+     * Appends bytes to the output.
+     *
+     * @param bytes  bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @throws IOException exception spilling to disk
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int inMemory = (int) Math.max(Math.min(length, maxMemoryBytes - count), 0);
+        if (inMemory > 0) {
+            ensureCapacity(count + inMemory);
+            System.arraycopy(bytes, offset, buffer, count, inMemory);
+            count += inMemory;
+        }
+        if (inMemory < length) {
+            if (spill == null) {
+                spillFile = File.createTempFile("command-output.", ".log");
+                spillFile.deleteOnExit();
+                spill = new FileOutputStream(spillFile);
+            }
+            spill.write(bytes, offset + inMemory, length - inMemory);
+            spilled += length - inMemory;
+        }
+    }
+
+    /**
+     * Text kept in memory. The rest of the output, if any, is in {@link #getSpillFile()}.
+     *
+     * @return String
+     */
+    public String getText() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Note with the size and location of the spilled output.
+     *
+     * @return String, empty if the output is not truncated
+     */
+    public String getSpillNote() {
+        return isTruncated() ? spilled + " more bytes in " + spillFile.getAbsolutePath() : "";
+    }
+
+    /**
+     * Total size of the output, in bytes.
+     *
+     * @return long
+     */
+    public long getSize() {
+        return count + spilled;
+    }
+
+    /**
+     * Whether part of the output has been spilled to disk.
+     *
+     * @return boolean
+     */
+    public boolean isTruncated() {
+        return spilled > 0;
+    }
+
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Whether the whole output, including the part spilled to disk, contains the text. The spilled part is
+     * read only until the text is found.
+     *
+     * @param search text to look for
+     * @return boolean
+     * @throws IOException exception reading the spilled output
+     */
+    public boolean contains(String search) throws IOException {
+        String text = new String(buffer, 0, count, StandardCharsets.UTF_8);
+        if (text.contains(search)) {
+            return true;
+        }
+        if (!isTruncated()) {
+            return false;
+        }
+        flush();
+        int overlap = Math.max(search.length() - 1, 0);
+        StringBuilder window = new StringBuilder(text.substring(Math.max(text.length() - overlap, 0)));
+        char[] chunk = new char[READ_SIZE];
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8))) {
+            int read;
+            while ((read = reader.read(chunk)) >= 0) {
+                window.append(chunk, 0, read);
+                if (window.indexOf(search) >= 0) {
+                    return true;
+                }
+                window.delete(0, Math.max(window.length() - overlap, 0));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the spilled output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (spill != null) {
+            spill.flush();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, (int) Math.min(Math.max((long) buffer.length * 2, capacity), Integer.MAX_VALUE - 8));
+        }
+    }
+
+    private boolean lines(byte[] chunk, int length, LineListener listener) {
+        for (int i = 0; i < length; i++) {
+            byte b = chunk[i];
+            if (b == '\n') {
+                if (listener.onLine(lineText())) {
+                    return true;
+                }
+                lineLength = 0;
+            } else if (b != '\r' && lineLength < MAX_LINE_BYTES) {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+        }
+        return false;
+    }
+
+    private String lineText() {
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+}
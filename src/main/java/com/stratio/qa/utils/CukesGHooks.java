@@ -28,6 +28,10 @@ import java.util.List;
 
 public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumberFormatter {
 
+    private static final long EVIDENCE_FLUSH_TIMEOUT = 60000;
+
+    private static final boolean FEATURE_SCOPED_VARIABLES = "feature".equalsIgnoreCase(System.getProperty("VARIABLE_SCOPE", "scenario"));
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
 
     Feature feature;
@@ -55,6 +59,11 @@ public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumb
 
     @Override
     public void done() {
+        try {
+            EvidenceUtil.INSTANCE.getEvidenceUtils().flush(EVIDENCE_FLUSH_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -74,6 +83,9 @@ public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumb
     public void feature(Feature feature) {
         this.feature = feature;
         ThreadProperty.set("feature", feature.getName());
+        if (FEATURE_SCOPED_VARIABLES) {
+            VariableStore.current().clear();
+        }
     }
 
     @Override
@@ -99,6 +111,9 @@ public class CukesGHooks extends BaseGSpec implements ICucumberReporter, ICucumb
         if (HookGSpec.loggerEnabled) {
             logger.info(""); //empty line to split scenarios
         }
+        if (!FEATURE_SCOPED_VARIABLES) {
+            VariableStore.current().clear();
+        }
     }
 
     @Override
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the evidences (page sources and screen captures) taken by the steps, so that the test thread only
+ * waits for the driver to return them and hashes them.
+ *
+ * Evidences are written by a bounded pool of EVIDENCE_THREADS threads (2). When EVIDENCE_QUEUE (32) evidences
+ * are waiting the test thread writes the next one itself, so memory stays bounded. Page sources are gzipped
+ * unless EVIDENCE_COMPRESS is false. An evidence identical to a previous one of the same scenario is not
+ * written again and the path of the previous one is returned. Once EVIDENCE_MAX_SCENARIO_MB (50) have been
+ * written for a scenario its next evidences are discarded and an empty path is returned.
+ */
+public class EvidenceUtils {
+
+    private static final int SCENARIOS = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final boolean compress;
+
+    private final long maxScenarioBytes;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, ScenarioEvidences> scenarios = Collections.synchronizedMap(new LruMap<String, ScenarioEvidences>(SCENARIOS));
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Generic constructor of EvidenceUtils.
+     */
+    public EvidenceUtils() {
+        this(Boolean.valueOf(System.getProperty("EVIDENCE_COMPRESS", "true")),
+                Long.parseLong(System.getProperty("EVIDENCE_MAX_SCENARIO_MB", "50")) * 1024 * 1024,
+                Integer.parseInt(System.getProperty("EVIDENCE_THREADS", "2")),
+                Integer.parseInt(System.getProperty("EVIDENCE_QUEUE", "32")));
+    }
+
+    EvidenceUtils(boolean compress, long maxScenarioBytes, int threads, int queue) {
+        this.compress = compress;
+        this.maxScenarioBytes = maxScenarioBytes;
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "evidence-writer");
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queue),
+                threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Writes a page source.
+     *
+     * @param outputFile evidence file
+     * @param source     page source
+     * @return String, path of the evidence file, with .gz extension if compressed, the path of the identical
+     * evidence already written, or empty if the evidence was discarded
+     */
+    public String writeSource(String outputFile, String source) {
+        String path = compress ? outputFile + ".gz" : outputFile;
+        return write(path, source.getBytes(StandardCharsets.UTF_8), compress);
+    }
+
+    /**
+     * Writes a screen capture taken by the driver.
+     *
+     * @param outputFile evidence file
+     * @param capture    capture returned by the driver
+     * @return String, path of the evidence file, the path of the identical evidence already written, or empty if
+     * the evidence was discarded
+     */
+    public String writeCapture(String outputFile, File capture) {
+        try {
+            return write(outputFile, Files.readAllBytes(capture.toPath()), false);
+        } catch (IOException e) {
+            logger.error("Exception on copying browser screen capture", e);
+            return "";
+        }
+    }
+
+    /**
+     * Waits for the evidences already taken to be written.
+     *
+     * @param timeout maximum time to wait, in milliseconds
+     * @return boolean, false if there are evidences pending after the timeout
+     * @throws InterruptedException exception
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    logger.warn("{} evidences not written after {} ms", pending.get(), timeout);
+                    return false;
+                }
+                pending.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void submit(Runnable task) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                synchronized (pending) {
+                    if (pending.decrementAndGet() == 0) {
+                        pending.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks the evidence against the previous ones of its scenario and reserves its size in the calling thread,
+     * so that the returned path is the final one. Compressed evidences reserve their uncompressed size, which is
+     * reduced once they are compressed.
+     */
+    private String write(String path, byte[] content, boolean gzip) {
+        File file = new File(path).getAbsoluteFile();
+        ScenarioEvidences evidences = scenarios.computeIfAbsent(file.getParent(), k -> new ScenarioEvidences());
+        String hash = hash(content);
+        synchronized (evidences) {
+            String previous = evidences.files.get(hash);
+            if (previous != null) {
+                logger.info("Evidence {} is identical to {}, not written", path, previous);
+                return previous;
+            }
+            if (evidences.bytes + content.length > maxScenarioBytes) {
+                logger.warn("Evidence {} discarded, the scenario already has {} bytes of evidences", path, evidences.bytes);
+                return "";
+            }
+            evidences.files.put(hash, path);
+            evidences.bytes += content.length;
+        }
+        submit(() -> store(file, content, gzip, evidences, hash));
+        return path;
+    }
+
+    private void store(File file, byte[] content, boolean gzip, ScenarioEvidences evidences, String hash) {
+        byte[] data = content;
+        try {
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+                try (OutputStream out = new GZIPOutputStream(compressed, 64 * 1024)) {
+                    out.write(content);
+                }
+                data = compressed.toByteArray();
+                synchronized (evidences) {
+                    evidences.bytes -= content.length - data.length;
+                }
+            }
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), data);
+        } catch (IOException e) {
+            logger.error("Exception on evidence capture", e);
+            synchronized (evidences) {
+                evidences.files.remove(hash);
+                evidences.bytes -= data.length;
+            }
+        }
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Evidences written for a scenario, by content hash, and their size.
+     */
+    private static final class ScenarioEvidences {
+
+        private final Map<String, String> files = new HashMap<String, String>();
+
+        private long bytes = 0;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cache of the feature files expanded by LoopIncludeTagAspect, in memory and on disk, so that repeated
+ * executions and runners in other JVMs do not expand the same features again.
+ *
+ * Entries are keyed by a hash of the feature source, the content of the features it includes and the value of
+ * the system properties its tags refer to, so they never get stale.
+ */
+public class FeatureCacheUtils {
+
+    private static final String VERSION = "1";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final boolean enabled;
+
+    private final File directory;
+
+    private final Map<String, String> features;
+
+    /**
+     * Generic constructor of FeatureCacheUtils.
+     */
+    public FeatureCacheUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("FEATURE_CACHE", "true"));
+        this.directory = new File(System.getProperty("FEATURE_CACHE_DIR", "target/feature-cache/"));
+        this.features = Collections.synchronizedMap(new LruMap<String, String>(Integer.parseInt(System.getProperty("FEATURE_CACHE_SIZE", "128"))));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hash identifying an expanded feature.
+     *
+     * @param source     feature source
+     * @param includes   content of the included features by path, null for the missing ones
+     * @param properties value of the referred system properties by name, null for the undefined ones
+     * @return String
+     */
+    public String key(String source, Map<String, byte[]> includes, Map<String, String> properties) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, VERSION);
+            update(digest, source);
+            for (Map.Entry<String, byte[]> include : new TreeMap<String, byte[]>(includes).entrySet()) {
+                update(digest, include.getKey());
+                if (include.getValue() == null) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update((byte) 1);
+                    digest.update(include.getValue());
+                }
+            }
+            for (Map.Entry<String, String> property : new TreeMap<String, String>(properties).entrySet()) {
+                update(digest, property.getKey());
+                if (property.getValue() == null) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update((byte) 1);
+                    update(digest, property.getValue());
+                }
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(String.valueOf(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    /**
+     * Returns the expanded feature cached in memory or on disk.
+     *
+     * @param key hash of the feature
+     * @return String, or null if not cached
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        String feature = features.get(key);
+        if (feature == null) {
+            File file = new File(directory, key + ".feature");
+            if (file.isFile()) {
+                try {
+                    feature = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                    features.put(key, feature);
+                } catch (IOException e) {
+                    logger.debug("Cached feature {} can not be read: {}", file, e.getMessage());
+                }
+            }
+        }
+        return feature;
+    }
+
+    /**
+     * Caches an expanded feature in memory and on disk. The file is written to a temporary file and then
+     * moved, so runners in other JVMs never read it half written.
+     *
+     * @param key     hash of the feature
+     * @param feature expanded feature
+     */
+    public void put(String key, String feature) {
+        if (!enabled) {
+            return;
+        }
+        features.put(key, feature);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            Files.write(temp, feature.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, new File(directory, key + ".feature").toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.debug("Expanded feature can not be cached on disk: {}", e.getMessage());
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                logger.debug("Temporary file {} can not be deleted", temp);
+            }
+        }
+    }
+
+    /**
+     * Forgets the features cached in memory.
+     */
+    public void clear() {
+        features.clear();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of a command run in one of several hosts: exit status, output, and the error that prevented it from
+ * being run or finished, if any.
+ */
+public class HostCommandResult {
+
+    private final String host;
+
+    private int exitStatus = -1;
+
+    private String output = "";
+
+    private String error;
+
+    private boolean timedOut = false;
+
+    private long elapsedMillis;
+
+    /**
+     * Constructor of HostCommandResult.
+     *
+     * @param host host
+     */
+    public HostCommandResult(String host) {
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getExitStatus() {
+        return exitStatus;
+    }
+
+    public void setExitStatus(int exitStatus) {
+        this.exitStatus = exitStatus;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output == null ? "" : output;
+    }
+
+    /**
+     * Error that prevented the command from being run or finished, null if it finished.
+     *
+     * @return String
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Row of the result table: host, exit status, output and error.
+     *
+     * @return List
+     */
+    public List<String> toRow() {
+        return Arrays.asList(host, String.valueOf(exitStatus), output, error == null ? "" : error);
+    }
+
+    @Override
+    public String toString() {
+        String firstLine = output.isEmpty() ? "" : output.split("\r?\n", 2)[0];
+        return String.format("%s: exit status %d in %d ms%s: %s", host, exitStatus, elapsedMillis,
+                error == null ? "" : " (" + error + ")", firstLine);
+    }
+}
@@ -16,8 +16,18 @@
 
 package com.stratio.qa.utils;
 
+import com.jayway.jsonpath.DocumentContext;
 import com.ning.http.client.cookie.Cookie;
+import org.apache.commons.io.FileUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class HttpResponse {
@@ -28,6 +38,18 @@ public class HttpResponse {
 
     private List<Cookie> cookies;
 
+    private File responseFile;
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    private long responseSize = -1;
+
+    private long wireSize = -1;
+
+    private boolean truncated = false;
+
+    private DocumentContext document;
+
     /**
      * Constructor of an HttpResponse.
      *
@@ -48,12 +70,55 @@ public class HttpResponse {
         this.statusCode = status;
     }
 
+    /**
+     * Returns the response body. If the body was spilled to disk, it is read from there.
+     *
+     * @return String
+     * @throws IllegalStateException if the body was not completely read
+     */
     public String getResponse() {
+        checkComplete();
+        if (response == null && responseFile != null) {
+            try {
+                response = FileUtils.readFileToString(responseFile, charset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return response;
     }
 
+    /**
+     * Returns the response body as a stream, without loading spilled bodies in memory.
+     *
+     * @return InputStream
+     * @throws IOException
+     * @throws IllegalStateException if the body was not completely read
+     */
+    public InputStream getResponseStream() throws IOException {
+        checkComplete();
+        if (response == null && responseFile != null) {
+            return new FileInputStream(responseFile);
+        }
+        return new ByteArrayInputStream(response == null ? new byte[0] : response.getBytes(charset));
+    }
+
     public void setResponse(String response) {
         this.response = response;
+        this.document = null;
+    }
+
+    /**
+     * Returns the response body parsed as json. It is parsed the first time it is requested.
+     *
+     * @return DocumentContext, read only
+     * @throws IllegalStateException if the body was not completely read
+     */
+    public DocumentContext getDocument() {
+        if (document == null) {
+            document = JsonDocumentUtil.INSTANCE.getJsonDocumentUtils().parse(getResponse());
+        }
+        return document;
     }
 
     public List<Cookie> getCookies() {
@@ -64,4 +129,69 @@ public class HttpResponse {
         this.cookies = cookies;
     }
 
-}
\ No newline at end of file
+    public File getResponseFile() {
+        return responseFile;
+    }
+
+    public void setResponseFile(File responseFile, Charset charset) {
+        this.responseFile = responseFile;
+        this.charset = charset;
+        this.document = null;
+    }
+
+    /**
+     * Deletes the file the body was spilled to, if any. The body is no longer available unless it was read before.
+     */
+    public void deleteResponseFile() {
+        if (responseFile != null) {
+            if (!responseFile.delete() && responseFile.exists()) {
+                responseFile.deleteOnExit();
+            }
+            responseFile = null;
+        }
+    }
+
+    public long getResponseSize() {
+        return responseSize;
+    }
+
+    public void setResponseSize(long responseSize) {
+        this.responseSize = responseSize;
+    }
+
+    /**
+     * Size of the body as received, before being decompressed. It is the same as the response size
+     * for uncompressed responses, and -1 if unknown.
+     *
+     * @return long
+     */
+    public long getWireSize() {
+        return wireSize;
+    }
+
+    public void setWireSize(long wireSize) {
+        this.wireSize = wireSize;
+    }
+
+    /**
+     * Whether the body was not completely read, i.e. the request was aborted as soon as a streamed body matched.
+     * Reading the body of a truncated response fails, the status code and cookies are still available.
+     *
+     * @return boolean
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    private void checkComplete() {
+        if (truncated) {
+            throw new IllegalStateException("The body of the response was not completely read, the request was aborted after "
+                    + responseSize + " bytes once the expected pattern was found");
+        }
+    }
+
+}
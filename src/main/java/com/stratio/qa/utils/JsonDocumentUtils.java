@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.hjson.JsonValue;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Parses json documents and compiles JsonPath expressions once, keeping the results in bounded LRU caches.
+ *
+ * Documents are normalized through Hjson before being parsed, and keyed by their text, so the same response,
+ * command output or variable read by several steps is only parsed the first time. Cached documents are shared:
+ * they must only be read, never modified.
+ */
+public class JsonDocumentUtils {
+
+    private final Map<String, DocumentContext> documents;
+
+    private final Map<String, JsonPath> expressions;
+
+    /**
+     * Generic constructor of JsonDocumentUtils.
+     */
+    public JsonDocumentUtils() {
+        this.documents = Collections.synchronizedMap(new LruMap<String, DocumentContext>(
+                Integer.parseInt(System.getProperty("JSON_DOCUMENT_CACHE_SIZE", "8"))));
+        this.expressions = Collections.synchronizedMap(new LruMap<String, JsonPath>(
+                Integer.parseInt(System.getProperty("JSONPATH_CACHE_SIZE", "512"))));
+    }
+
+    /**
+     * Returns the parsed document, parsing it only if it is not cached.
+     *
+     * @param json json or hjson text
+     * @return DocumentContext, read only
+     */
+    public DocumentContext parse(String json) {
+        DocumentContext document = documents.get(json);
+        if (document == null) {
+            document = JsonPath.parse(JsonValue.readHjson(json).toString());
+            documents.put(json, document);
+        }
+        return document;
+    }
+
+    /**
+     * Returns the compiled expression, compiling it only if it is not cached.
+     *
+     * @param expression JsonPath expression
+     * @return JsonPath
+     */
+    public JsonPath compile(String expression) {
+        JsonPath path = expressions.get(expression);
+        if (path == null) {
+            path = JsonPath.compile(expression);
+            expressions.put(expression, path);
+        }
+        return path;
+    }
+
+    /**
+     * Evaluates the expression against the document.
+     *
+     * @param document   parsed document
+     * @param expression JsonPath expression
+     * @param <T>        expected type
+     * @return T
+     */
+    public <T> T read(DocumentContext document, String expression) {
+        return document.read(compile(expression));
+    }
+
+    /**
+     * Forgets every cached document and expression.
+     */
+    public void clear() {
+        documents.clear();
+        expressions.clear();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe latency histogram with microsecond resolution.
+ *
+ * Values are stored in log-linear buckets: exact below 128us, and with 64 sub-buckets per power of two
+ * above it, so any recorded value is reported with an error lower than 1.6%, using a fixed amount of memory
+ * whatever the number of recorded values.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 128;
+
+    private static final int SUB_BUCKETS = 64;
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int FIRST_EXPONENT = 7;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(LINEAR_BUCKETS + (Long.SIZE - 1 - FIRST_EXPONENT) * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records a latency.
+     *
+     * @param latency latency
+     * @param unit    time unit of the latency
+     */
+    public void record(long latency, TimeUnit unit) {
+        long value = Math.max(unit.toMicros(latency), 0);
+        buckets.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Latency below which the given percentage of the recorded values are, in microseconds.
+     *
+     * @param percentile percentile (0-100)
+     * @return long
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max((long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total), 1);
+        long accumulated = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= target) {
+                return Math.min(Math.max(highestValue(i), min.get()), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Mean of the recorded values, in microseconds.
+     *
+     * @return double
+     */
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * Minimum recorded value, in microseconds.
+     *
+     * @return long
+     */
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * Maximum recorded value, in microseconds.
+     *
+     * @return long
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
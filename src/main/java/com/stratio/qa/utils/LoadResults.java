@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a load test: latency histogram, errors and throughput.
+ *
+ * Requests failing with an exception or answered with a status code greater or equal than 400 are
+ * accounted as errors.
+ */
+public class LoadResults {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+
+    private long start;
+
+    private long end;
+
+    private volatile boolean finished = false;
+
+    /**
+     * Marks the beginning of the load test.
+     */
+    public void start() {
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the load test, once every response has been received or the wait for them has
+     * expired. Responses received later are not recorded.
+     */
+    public void finish() {
+        this.end = System.nanoTime();
+        this.finished = true;
+    }
+
+    /**
+     * Records a received response.
+     *
+     * @param latency    latency in nanoseconds
+     * @param statusCode status code of the response
+     */
+    public void record(long latency, int statusCode) {
+        if (finished) {
+            return;
+        }
+        histogram.record(latency, TimeUnit.NANOSECONDS);
+        requests.incrementAndGet();
+        statusCodes.computeIfAbsent(statusCode, k -> new AtomicLong()).incrementAndGet();
+        if (statusCode >= 400) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a request failed without response.
+     */
+    public void recordError() {
+        if (finished) {
+            return;
+        }
+        requests.incrementAndGet();
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Records the requests not answered when the load test finished, as errors.
+     *
+     * @param count number of requests
+     */
+    public void recordUnanswered(long count) {
+        requests.addAndGet(count);
+        errors.addAndGet(count);
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Number of responses received for each status code.
+     *
+     * @return Map
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> codes = new TreeMap<>();
+        for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+            codes.put(entry.getKey(), entry.getValue().get());
+        }
+        return codes;
+    }
+
+    /**
+     * Latency percentile in milliseconds.
+     *
+     * @param percentile percentile (0-100)
+     * @return double
+     */
+    public double getPercentile(double percentile) {
+        return histogram.getPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Percentage of failed requests.
+     *
+     * @return double
+     */
+    public double getErrorRate() {
+        long total = requests.get();
+        return total == 0 ? 0 : 100.0 * errors.get() / total;
+    }
+
+    /**
+     * Completed requests per second.
+     *
+     * @return double
+     */
+    public double getThroughput() {
+        long elapsed = end - start;
+        return elapsed <= 0 ? 0 : requests.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Elapsed time in milliseconds.
+     *
+     * @return long
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(end - start);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests in %d ms (%.2f req/s), %d errors (%.2f%%), latency ms: p50=%.3f p95=%.3f p99=%.3f max=%.3f, status codes: %s",
+                getRequests(), getElapsedMillis(), getThroughput(), getErrors(), getErrorRate(), getPercentile(50),
+                getPercentile(95), getPercentile(99), histogram.getMax() / 1000.0, getStatusCodes());
+    }
+}
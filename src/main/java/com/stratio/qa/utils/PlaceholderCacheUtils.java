@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.stratio.qa.exceptions.NonReplaceableException;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the placeholder templates compiled from step names, DocStrings and DataTable cells, so that steps
+ * repeated by loops and scenario outlines are parsed only once.
+ *
+ * Texts without placeholders are not cached, checking them is cheaper than a lookup. The cache is bounded
+ * and evicts the least recently used templates.
+ */
+public class PlaceholderCacheUtils {
+
+    private static final Set<PlaceholderTemplate.Kind> ALL_KINDS = EnumSet.allOf(PlaceholderTemplate.Kind.class);
+
+    private final boolean enabled;
+
+    private final Map<String, PlaceholderTemplate> templates;
+
+    /**
+     * Generic constructor of PlaceholderCacheUtils.
+     */
+    public PlaceholderCacheUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("PLACEHOLDER_CACHE", "true"));
+        this.templates = Collections.synchronizedMap(new LruMap<String, PlaceholderTemplate>(
+                Integer.parseInt(System.getProperty("PLACEHOLDER_CACHE_SIZE", "1024"))));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the template compiled from the text, compiling it only if it is not cached.
+     *
+     * @param text text with placeholders
+     * @return PlaceholderTemplate
+     * @throws NonReplaceableException if a placeholder is not closed
+     */
+    public PlaceholderTemplate getTemplate(String text) throws NonReplaceableException {
+        if (!enabled || !PlaceholderTemplate.hasPlaceholders(text, ALL_KINDS)) {
+            return PlaceholderTemplate.compile(text, ALL_KINDS);
+        }
+        PlaceholderTemplate template = templates.get(text);
+        if (template == null) {
+            template = PlaceholderTemplate.compile(text, ALL_KINDS);
+            templates.put(text, template);
+        }
+        return template;
+    }
+
+    /**
+     * Forgets every cached template.
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.stratio.qa.exceptions.NonReplaceableException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Text with ${}, !{} and @{} placeholders, parsed once into literal and placeholder segments so that it can be
+ * rendered many times in a single pass.
+ *
+ * Placeholders can be nested, i.e. !{${VAR}} or ${A:-${B}}, and a placeholder preceded by a backslash is kept
+ * as literal text without the backslash. As when they were replaced kind after kind, values replacing ${}
+ * placeholders can contain !{} and @{} placeholders, and values replacing !{} placeholders can contain @{} ones.
+ */
+public final class PlaceholderTemplate {
+
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Kinds of placeholder, in the order they are replaced.
+     */
+    public enum Kind {
+        ENVIRONMENT('$'), VARIABLE('!'), CODE('@');
+
+        private final char opener;
+
+        Kind(char opener) {
+            this.opener = opener;
+        }
+    }
+
+    /**
+     * Values of the placeholders.
+     */
+    public interface Resolver {
+
+        /**
+         * Value of a placeholder.
+         *
+         * @param kind         kind of placeholder
+         * @param name         content of the placeholder, already rendered, without the default value
+         * @param defaultValue default value of ${} placeholders given after ":-", already rendered, or null
+         * @return String, or null to keep the placeholder as it is
+         * @throws NonReplaceableException if the placeholder can not be replaced
+         */
+        String resolve(Kind kind, String name, String defaultValue) throws NonReplaceableException;
+    }
+
+    private final Set<Kind> kinds;
+
+    private final String constant;
+
+    private final List<Object> segments;
+
+    private final int length;
+
+    private PlaceholderTemplate(Set<Kind> kinds, String constant, List<Object> segments, int length) {
+        this.kinds = kinds;
+        this.constant = constant;
+        this.segments = segments;
+        this.length = length;
+    }
+
+    /**
+     * Parses a text with placeholders of every kind.
+     *
+     * @param text text
+     * @return PlaceholderTemplate
+     * @throws NonReplaceableException if a placeholder is not closed
+     */
+    public static PlaceholderTemplate compile(String text) throws NonReplaceableException {
+        return compile(text, EnumSet.allOf(Kind.class));
+    }
+
+    /**
+     * Parses a text with placeholders of the given kinds, the others are kept as literal text.
+     *
+     * @param text  text
+     * @param kinds kinds of placeholder to parse
+     * @return PlaceholderTemplate
+     * @throws NonReplaceableException if a placeholder is not closed
+     */
+    public static PlaceholderTemplate compile(String text, Set<Kind> kinds) throws NonReplaceableException {
+        if (!hasPlaceholders(text, kinds)) {
+            return new PlaceholderTemplate(kinds, text, Collections.emptyList(), text.length());
+        }
+        List<Object> segments = new ArrayList<>();
+        boolean placeholders = false;
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            Kind kind;
+            if (c == '\\' && opener(text, i + 1, kinds) != null) {
+                literal.append(text, i + 1, i + 3);
+                i += 3;
+            } else if ((kind = opener(text, i, kinds)) != null) {
+                int end = close(text, i + 2, kinds);
+                if (end < 0) {
+                    throw new NonReplaceableException("Unreplaceable placeholder: " + text.substring(i));
+                }
+                String body = text.substring(i + 2, end);
+                int defaultStart = kind == Kind.ENVIRONMENT ? defaultSeparator(body, kinds) : -1;
+                PlaceholderTemplate name = compile(defaultStart < 0 ? body : body.substring(0, defaultStart), kinds);
+                PlaceholderTemplate defaultValue = defaultStart < 0 ? null : compile(body.substring(defaultStart + 2), kinds);
+                if (literal.length() > 0) {
+                    segments.add(literal.toString());
+                    literal.setLength(0);
+                }
+                segments.add(new Placeholder(kind, name, defaultValue, text.substring(i, end + 1)));
+                placeholders = true;
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (!placeholders) {
+            return new PlaceholderTemplate(kinds, literal.toString(), Collections.emptyList(), n);
+        }
+        if (literal.length() > 0) {
+            segments.add(literal.toString());
+        }
+        return new PlaceholderTemplate(kinds, null, segments, n);
+    }
+
+    /**
+     * Whether the text contains any placeholder opener of the given kinds.
+     *
+     * @param text  text
+     * @param kinds kinds of placeholder
+     * @return boolean
+     */
+    public static boolean hasPlaceholders(String text, Set<Kind> kinds) {
+        for (int i = text.indexOf('{', 1); i > 0; i = text.indexOf('{', i + 1)) {
+            if (opener(text, i - 1, kinds) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the template has placeholders, so that rendering it may return a different text.
+     *
+     * @return boolean
+     */
+    public boolean hasPlaceholders() {
+        return constant == null;
+    }
+
+    /**
+     * Replaces the placeholders with the values given by the resolver.
+     *
+     * @param resolver resolver of the placeholders
+     * @return String
+     * @throws NonReplaceableException if a placeholder can not be replaced
+     */
+    public String render(Resolver resolver) throws NonReplaceableException {
+        return render(resolver, 0);
+    }
+
+    private String render(Resolver resolver, int depth) throws NonReplaceableException {
+        if (constant != null) {
+            return constant;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new NonReplaceableException("Too many nested placeholders replacing " + segments);
+        }
+        StringBuilder result = new StringBuilder(length + 16);
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                result.append((String) segment);
+                continue;
+            }
+            Placeholder placeholder = (Placeholder) segment;
+            String name = placeholder.name.render(resolver, depth + 1);
+            String defaultValue = placeholder.defaultValue == null ? null : placeholder.defaultValue.render(resolver, depth + 1);
+            String value = resolver.resolve(placeholder.kind, name, defaultValue);
+            if (value == null) {
+                result.append(placeholder.source);
+                continue;
+            }
+            Set<Kind> following = EnumSet.range(placeholder.kind, Kind.CODE);
+            following.retainAll(kinds);
+            if (hasPlaceholders(value, following)) {
+                value = compile(value, following).render(resolver, depth + 1);
+            }
+            result.append(value);
+        }
+        return result.toString();
+    }
+
+    private static Kind opener(String text, int i, Set<Kind> kinds) {
+        if (i < 0 || i + 1 >= text.length() || text.charAt(i + 1) != '{') {
+            return null;
+        }
+        char c = text.charAt(i);
+        for (Kind kind : kinds) {
+            if (kind.opener == c) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Position of the brace closing the placeholder whose content starts at the given position, skipping the
+     * nested ones.
+     */
+    private static int close(String text, int from, Set<Kind> kinds) {
+        int depth = 0;
+        int i = from;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\\' && opener(text, i + 1, kinds) != null) {
+                i += 3;
+            } else if (opener(text, i, kinds) != null) {
+                depth++;
+                i += 2;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position of the ":-" separating the default value of a ${} placeholder, outside nested placeholders.
+     */
+    private static int defaultSeparator(String body, Set<Kind> kinds) {
+        int depth = 0;
+        for (int i = 0; i < body.length() - 1; i++) {
+            if (body.charAt(i) == '\\' && opener(body, i + 1, kinds) != null) {
+                i += 2;
+            } else if (opener(body, i, kinds) != null) {
+                depth++;
+                i++;
+            } else if (body.charAt(i) == '}') {
+                depth--;
+            } else if (depth == 0 && body.charAt(i) == ':' && body.charAt(i + 1) == '-') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Placeholder {
+
+        private final Kind kind;
+
+        private final PlaceholderTemplate name;
+
+        private final PlaceholderTemplate defaultValue;
+
+        private final String source;
+
+        private Placeholder(Kind kind, PlaceholderTemplate name, PlaceholderTemplate defaultValue, String source) {
+            this.kind = kind;
+            this.name = name;
+            this.defaultValue = defaultValue;
+            this.source = source;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+}
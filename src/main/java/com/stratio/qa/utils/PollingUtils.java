@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polling engine for the "in less than X seconds, checking each Y seconds" steps.
+ *
+ * Probes are run in a shared scheduler against a monotonic deadline: the time spent by the probe itself is
+ * accounted for, and a probe still running when the deadline expires is cancelled. A probe succeeds returning
+ * true, and fails returning false or throwing an AssertionError. Any other exception is propagated.
+ *
+ * The first probe is always run until it finishes, even if it takes longer than the timeout. A cancelled probe
+ * is interrupted and waited for, up to POLLING_CANCEL_WAIT seconds (30), so that it does not run along the
+ * next steps.
+ *
+ * Every probe works with a child of the variable store of the scenario, and only the variables saved by the
+ * probe that succeeded are copied to it.
+ */
+public class PollingUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(PollingUtils.class);
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private Backoff backoff;
+
+    private long maxInterval;
+
+    private long cancelWait;
+
+    /**
+     * Generic constructor of PollingUtils.
+     */
+    public PollingUtils() {
+        this.backoff = Backoff.valueOf(System.getProperty("POLLING_BACKOFF", "fixed").toUpperCase());
+        this.maxInterval = Long.valueOf(System.getProperty("POLLING_MAX_INTERVAL", "60"));
+        this.cancelWait = Long.valueOf(System.getProperty("POLLING_CANCEL_WAIT", "30"));
+        this.scheduler = new ScheduledThreadPoolExecutor(Integer.valueOf(System.getProperty("POLLING_THREADS", "8")),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bdt-polling-%d").build());
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Runs the probe until it succeeds or the timeout expires, using the default backoff.
+     *
+     * @param description description of the probe, used in logs
+     * @param probe       probe to be run
+     * @param timeout     total time to wait for the probe to succeed
+     * @param interval    base interval between probes
+     * @param unit        time unit of timeout and interval
+     * @return PollResult
+     * @throws Exception exception thrown by the probe
+     */
+    public PollResult poll(String description, Callable<Boolean> probe, long timeout, long interval, TimeUnit unit) throws Exception {
+        return poll(description, probe, timeout, interval, unit, backoff);
+    }
+
+    /**
+     * Runs the probe until it succeeds or the timeout expires.
+     *
+     * @param description description of the probe, used in logs
+     * @param probe       probe to be run
+     * @param timeout     total time to wait for the probe to succeed
+     * @param interval    base interval between probes
+     * @param unit        time unit of timeout and interval
+     * @param backoff     policy to compute the wait between probes
+     * @return PollResult
+     * @throws Exception exception thrown by the probe
+     */
+    public PollResult poll(String description, Callable<Boolean> probe, long timeout, long interval, TimeUnit unit, Backoff backoff) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        long intervalNanos = unit.toNanos(interval);
+        long maxIntervalNanos = Math.max(TimeUnit.SECONDS.toNanos(maxInterval), intervalNanos);
+        Properties props = ThreadProperty.getAll();
+        VariableStore variables = VariableStore.current();
+        PollResult result = new PollResult(description);
+        long delay = 0;
+
+        while (true) {
+            final long[] probeStart = new long[1];
+            AtomicBoolean started = new AtomicBoolean();
+            CountDownLatch finished = new CountDownLatch(1);
+            VariableStore attempt = variables.fork();
+            Callable<Boolean> task = () -> {
+                if (!started.compareAndSet(false, true)) {
+                    return false;
+                }
+                probeStart[0] = System.nanoTime();
+                ThreadProperty.setAll(props);
+                VariableStore.attach(attempt);
+                try {
+                    return probe.call();
+                } finally {
+                    ThreadProperty.setAll(new Properties());
+                    VariableStore.reset();
+                    finished.countDown();
+                }
+            };
+
+            ScheduledFuture<Boolean> future = scheduler.schedule(task, delay, TimeUnit.NANOSECONDS);
+            boolean success = false;
+            try {
+                if (result.getAttempts() == 0) {
+                    success = Boolean.TRUE.equals(future.get());
+                } else {
+                    success = Boolean.TRUE.equals(future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS));
+                }
+            } catch (TimeoutException e) {
+                if (cancel(description, future, started, finished)) {
+                    result.addAttempt(System.nanoTime() - probeStart[0]);
+                    result.setError(new AssertionError(description + ": probe cancelled, deadline of " + timeout + " "
+                            + unit.toString().toLowerCase() + " expired"));
+                } else if (!result.hasError()) {
+                    result.setError(new AssertionError(description + ": deadline of " + timeout + " "
+                            + unit.toString().toLowerCase() + " expired"));
+                }
+                logger.debug("{}: probe cancelled after deadline", description);
+                break;
+            } catch (InterruptedException e) {
+                cancel(description, future, started, finished);
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof AssertionError) {
+                    result.setError((AssertionError) cause);
+                } else if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else {
+                    throw (Error) cause;
+                }
+            }
+            result.addAttempt(System.nanoTime() - probeStart[0]);
+
+            if (success) {
+                attempt.commit();
+                result.setSuccess(true);
+                break;
+            }
+
+            delay = backoff.delay(intervalNanos, result.getAttempts(), maxIntervalNanos);
+            long remaining = deadline - System.nanoTime();
+            logger.info("{}: condition not met after {} attempts and {} seconds", description, result.getAttempts(),
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            if (delay >= remaining) {
+                break;
+            }
+        }
+
+        result.setElapsed(System.nanoTime() - start);
+        logger.debug("{}", result);
+        return result;
+    }
+
+    /**
+     * Cancels a probe and, if it had already started, waits for it to finish.
+     *
+     * @return whether the probe had started
+     */
+    private boolean cancel(String description, ScheduledFuture<Boolean> future, AtomicBoolean started, CountDownLatch finished)
+            throws InterruptedException {
+        future.cancel(true);
+        if (started.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!finished.await(cancelWait, TimeUnit.SECONDS)) {
+            logger.warn("{}: cancelled probe still running after {} seconds", description, cancelWait);
+        }
+        return true;
+    }
+
+    /**
+     * Policies to compute the wait between two probes.
+     */
+    public enum Backoff {
+        /**
+         * Always waits the given interval.
+         */
+        FIXED,
+        /**
+         * Doubles the interval after each probe, up to POLLING_MAX_INTERVAL seconds.
+         */
+        EXPONENTIAL,
+        /**
+         * Exponential, waiting a random time between half and the whole exponential interval.
+         */
+        JITTERED;
+
+        long delay(long interval, int attempts, long maxInterval) {
+            if (this == FIXED) {
+                return interval;
+            }
+            long exponential = interval;
+            for (int i = 1; i < attempts && exponential < maxInterval; i++) {
+                exponential *= 2;
+            }
+            exponential = Math.min(exponential, maxInterval);
+            if (this == EXPONENTIAL) {
+                return exponential;
+            }
+            return exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1);
+        }
+    }
+
+    /**
+     * Outcome of a polling: whether it succeeded, number of attempts and latency of each probe.
+     */
+    public static final class PollResult {
+
+        private final String description;
+
+        private final List<Long> latencies = new ArrayList<>();
+
+        private boolean success = false;
+
+        private long elapsed;
+
+        private AssertionError error;
+
+        PollResult(String description) {
+            this.description = description;
+        }
+
+        void addAttempt(long latency) {
+            latencies.add(TimeUnit.NANOSECONDS.toMillis(latency));
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        void setSuccess(boolean success) {
+            this.success = success;
+        }
+
+        public int getAttempts() {
+            return latencies.size();
+        }
+
+        /**
+         * Latency in milliseconds of each probe.
+         *
+         * @return List
+         */
+        public List<Long> getLatencies() {
+            return Collections.unmodifiableList(latencies);
+        }
+
+        /**
+         * Total time spent polling, in seconds.
+         *
+         * @return long
+         */
+        public long getElapsedSeconds() {
+            return TimeUnit.NANOSECONDS.toSeconds(elapsed);
+        }
+
+        /**
+         * Total time spent polling, in milliseconds.
+         *
+         * @return long
+         */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsed);
+        }
+
+        void setElapsed(long elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Error of the last failed probe.
+         *
+         * @return AssertionError
+         */
+        public AssertionError getError() {
+            if (error == null) {
+                return new AssertionError(description + ": condition not met after " + getAttempts() + " attempts");
+            }
+            return error;
+        }
+
+        void setError(AssertionError error) {
+            this.error = error;
+        }
+
+        boolean hasError() {
+            return error != null;
+        }
+
+        @Override
+        public String toString() {
+            return description + ": " + (success ? "succeeded" : "failed") + " after " + getAttempts() + " attempts in "
+                    + getElapsedMillis() + " ms, probe latencies (ms): " + latencies;
+        }
+    }
+}
@@ -23,10 +23,14 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 
 public class RemoteSSHConnection {
 
+    private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
     private final Logger logger = LoggerFactory.getLogger(RemoteSSHConnection.class);
 
     private Session session;
@@ -35,6 +39,20 @@ public class RemoteSSHConnection {
 
     private int exitStatus;
 
+    private CommandOutput output;
+
+    private final String user;
+
+    private final String password;
+
+    private final String remoteHost;
+
+    private int sshPort = 22;
+
+    private final String pemFile;
+
+    private final SshSessionUtils pool;
+
     /**
      * Default constructor.
      */
@@ -43,34 +61,23 @@ public class RemoteSSHConnection {
     }
 
     public RemoteSSHConnection(String user, String password, String remoteHost, String remotePort, String pemFile) throws Exception {
-        // Create session
-        JSch jsch = new JSch();
+        this(SshSessionUtil.INSTANCE.getSshSessionUtils(), user, password, remoteHost, remotePort, pemFile);
+    }
 
-        if (pemFile != null) {
-            // Pass pem file
-            jsch.addIdentity(pemFile);
-        }
+    RemoteSSHConnection(SshSessionUtils pool, String user, String password, String remoteHost, String remotePort,
+            String pemFile) throws Exception {
+        this.pool = pool;
+        this.user = user;
+        this.password = password;
+        this.remoteHost = remoteHost;
+        this.pemFile = pemFile;
 
-        int sshPort = 22;
         if (remotePort != null) {
             // Set remote port if provided
-            sshPort = Integer.parseInt(remotePort);
-        }
-
-        Session session = jsch.getSession(user, remoteHost, sshPort);
-
-        // Pass user
-        UserInfo ui = new MyUserInfo();
-        session.setUserInfo(ui);
-
-        if (password != null) {
-            // Pass password if provided
-            session.setPassword(password);
+            this.sshPort = Integer.parseInt(remotePort);
         }
 
-        session.connect();
-
-        this.session = session;
+        this.session = pool.getSession(user, password, remoteHost, sshPort, pemFile);
     }
 
     public Session getSession() {
@@ -111,83 +118,85 @@ public class RemoteSSHConnection {
 
         // exec 'scp -t rfile' remotely
         String command = "scp " + (ptimestamp ? "-p" : "") + " -d -t " + rfile;
-        Channel channel = session.openChannel("exec");
-        ((ChannelExec) channel).setCommand(command);
+        Channel channel = openChannel();
+        try {
+            ((ChannelExec) channel).setCommand(command);
 
-        // get I/O streams for remote scp
-        OutputStream out = channel.getOutputStream();
-        InputStream in = channel.getInputStream();
+            // get I/O streams for remote scp
+            OutputStream out = channel.getOutputStream();
+            InputStream in = channel.getInputStream();
 
-        channel.connect();
+            channel.connect();
 
-        if (checkAck(in) != 0) {
-            return;
-        }
+            if (checkAck(in) != 0) {
+                return;
+            }
 
-        File myFile = new File(localfile);
-        List<String> files = new ArrayList<String>();
+            File myFile = new File(localfile);
+            List<String> files = new ArrayList<String>();
 
-        if (myFile.isDirectory()) {
-            File[] listFiles = myFile.listFiles();
-            for (File file : listFiles) {
-                files.add(file.getAbsolutePath());
+            if (myFile.isDirectory()) {
+                File[] listFiles = myFile.listFiles();
+                for (File file : listFiles) {
+                    files.add(file.getAbsolutePath());
+                }
+            } else {
+                files.add(localfile);
             }
-        } else {
-            files.add(localfile);
-        }
-        for (String lfile : files) {
-            File _lfile = new File(lfile);
-
-            if (ptimestamp) {
-                command = "T" + (_lfile.lastModified() / 1000) + " 0";
-                // The access time should be sent here,
-                // but it is not accessible with JavaAPI ;-<
-                command += (" " + (_lfile.lastModified() / 1000) + " 0\n");
+            for (String lfile : files) {
+                File _lfile = new File(lfile);
+
+                if (ptimestamp) {
+                    command = "T" + (_lfile.lastModified() / 1000) + " 0";
+                    // The access time should be sent here,
+                    // but it is not accessible with JavaAPI ;-<
+                    command += (" " + (_lfile.lastModified() / 1000) + " 0\n");
+                    out.write(command.getBytes());
+                    out.flush();
+                    if (checkAck(in) != 0) {
+                        break;
+                    }
+                }
+
+                // send "C0644 filesize filename", where filename should not include '/'
+                long filesize = _lfile.length();
+                command = "C0644 " + filesize + " ";
+                if (lfile.lastIndexOf('/') > 0) {
+                    command += lfile.substring(lfile.lastIndexOf('/') + 1);
+                } else {
+                    command += lfile;
+                }
+                command += "\n";
                 out.write(command.getBytes());
                 out.flush();
                 if (checkAck(in) != 0) {
                     break;
                 }
-            }
-
-            // send "C0644 filesize filename", where filename should not include '/'
-            long filesize = _lfile.length();
-            command = "C0644 " + filesize + " ";
-            if (lfile.lastIndexOf('/') > 0) {
-                command += lfile.substring(lfile.lastIndexOf('/') + 1);
-            } else {
-                command += lfile;
-            }
-            command += "\n";
-            out.write(command.getBytes());
-            out.flush();
-            if (checkAck(in) != 0) {
-                break;
-            }
 
-            // send a content of lfile
-            fis = new FileInputStream(lfile);
-            byte[] buf = new byte[1024];
-            while (true) {
-                int len = fis.read(buf, 0, buf.length);
-                if (len <= 0) {
+                // send a content of lfile
+                fis = new FileInputStream(lfile);
+                byte[] buf = new byte[1024];
+                while (true) {
+                    int len = fis.read(buf, 0, buf.length);
+                    if (len <= 0) {
+                        break;
+                    }
+                    out.write(buf, 0, len);
+                }
+                fis.close();
+                fis = null;
+                // send '\0'
+                buf[0] = 0;
+                out.write(buf, 0, 1);
+                out.flush();
+                if (checkAck(in) != 0) {
                     break;
                 }
-                out.write(buf, 0, len);
-            }
-            fis.close();
-            fis = null;
-            // send '\0'
-            buf[0] = 0;
-            out.write(buf, 0, 1);
-            out.flush();
-            if (checkAck(in) != 0) {
-                break;
             }
+            out.close();
+        } finally {
+            releaseChannel(channel);
         }
-        out.close();
-
-        channel.disconnect();
     }
 
 
@@ -197,47 +206,104 @@ public class RemoteSSHConnection {
      * @param command
      */
     public void runCommand(String command) throws Exception {
-        String result = "";
+        runCommand(command, null);
+    }
+
+    /**
+     * Execute the command in the session created, notifying every line of its output to the listener. The
+     * output is read as soon as it is sent, and the command finishes as soon as its channel is closed.
+     *
+     * Up to SSH_OUTPUT_MAX_MB (16) of output are kept in memory, the rest is spilled to a temporary file
+     * available through {@link #getOutput()}.
+     *
+     * @param command
+     * @param listener listener of the output lines, which can stop the command once the line it waits for is
+     *                 found. In that case the exit status is -1. May be null
+     * @return true if the listener stopped the command
+     */
+    public boolean runCommand(String command, CommandOutput.LineListener listener) throws Exception {
         String extras = "export PYTHONWARNINGS=\"ignore:Unverified HTTPS request\" && ";
 
-        Channel channel = session.openChannel("exec");
-        ((ChannelExec) channel).setCommand(extras + command);
+        Channel channel = openChannel();
+        ChannelCloseSignal closed = new ChannelCloseSignal();
+        InputStream in;
+        try {
+            in = connectExec(channel, extras + command, closed);
+        } catch (JSchException e) {
+            releaseChannel(channel);
+            if (session.isConnected()) {
+                throw e;
+            }
+            // the session died since it was last used, retry once on a new one
+            pool.invalidate(session);
+            channel = openChannel();
+            closed = new ChannelCloseSignal();
+            try {
+                in = connectExec(channel, extras + command, closed);
+            } catch (JSchException retryException) {
+                releaseChannel(channel);
+                throw retryException;
+            }
+        }
+
+        if (output != null) {
+            output.close();
+        }
+        output = new CommandOutput(Long.parseLong(System.getProperty("SSH_OUTPUT_MAX_MB", "16")) * 1024 * 1024);
+
+        boolean stopped;
+        try {
+            stopped = output.pump(in, listener);
+            if (!stopped) {
+                // exit status is received right before the channel is closed
+                closed.await(CLOSE_TIMEOUT);
+            }
+            this.exitStatus = channel.getExitStatus();
+        } finally {
+            releaseChannel(channel);
+        }
+        if (output.isTruncated()) {
+            logger.info("Output of the command truncated, {}", output.getSpillNote());
+        }
+        this.setResult(output.getText());
+        return stopped;
+    }
+
+    private InputStream connectExec(Channel channel, String command, ChannelCloseSignal closed) throws Exception {
+        ((ChannelExec) channel).setCommand(command);
 
         channel.setInputStream(null);
-        ((ChannelExec) channel).setErrStream(System.err);
+        ((ChannelExec) channel).setErrStream(closed);
 
         InputStream in = channel.getInputStream();
 
         ((ChannelExec) channel).setPty(true);
 
         channel.connect();
+        return in;
+    }
 
-        byte[] tmp = new byte[1024];
-        while (true) {
-            while (in.available() > 0) {
-                int i = in.read(tmp, 0, 1024);
-                if (i < 0) {
-                    break;
-                }
-                result = result + new String(tmp, 0, i);
-            }
-            this.result = result;
-            this.setResult(result);
-
-            if (channel.isClosed()) {
-                if (in.available() > 0) {
-                    continue;
-                }
-                this.exitStatus = channel.getExitStatus();
-                break;
-            }
-            try {
-                Thread.sleep(1000);
-            } catch (Exception ee) {
-            }
+    /**
+     * Opens a channel on the session, connecting a new one if it is down.
+     */
+    private Channel openChannel() throws Exception {
+        if (!session.isConnected()) {
+            session = pool.getSession(user, password, remoteHost, sshPort, pemFile);
         }
+        return pool.openChannel(session, "exec");
+    }
 
-        channel.disconnect();
+    private void releaseChannel(Channel channel) {
+        pool.releaseChannel(session, channel);
+    }
+
+    /**
+     * Output of the last command run.
+     *
+     * @return CommandOutput
+     */
+    public CommandOutput getOutput() {
+        return output;
     }
 
     /**
@@ -265,97 +331,104 @@ public class RemoteSSHConnection {
 
         // exec 'scp -f rfile' remotely
         String command = "scp -f " + remotePath;
-        Channel channel = this.session.openChannel("exec");
-        ((ChannelExec) channel).setCommand(command);
-
-        // get I/O streams for remote scp
-        OutputStream out = channel.getOutputStream();
-        InputStream in = channel.getInputStream();
+        Channel channel = openChannel();
+        try {
+            ((ChannelExec) channel).setCommand(command);
 
-        channel.connect();
-
-        byte[] buf = new byte[1024];
+            // get I/O streams for remote scp
+            OutputStream out = channel.getOutputStream();
+            InputStream in = channel.getInputStream();
 
-        // send '\0'
-        buf[0] = 0;
-        out.write(buf, 0, 1);
-        out.flush();
+            channel.connect();
 
-        while (true) {
-            int c = checkAck(in);
-            if (c != 'C') {
-                break;
-            }
+            byte[] buf = new byte[1024];
 
-            // read '0644 '
-            in.read(buf, 0, 5);
+            // send '\0'
+            buf[0] = 0;
+            out.write(buf, 0, 1);
+            out.flush();
 
-            long filesize = 0L;
             while (true) {
-                if (in.read(buf, 0, 1) < 0) {
-                    // error
+                int c = checkAck(in);
+                if (c != 'C') {
                     break;
                 }
-                if (buf[0] == ' ') {
-                    break;
+
+                // read '0644 '
+                in.read(buf, 0, 5);
+
+                long filesize = 0L;
+                while (true) {
+                    if (in.read(buf, 0, 1) < 0) {
+                        // error
+                        break;
+                    }
+                    if (buf[0] == ' ') {
+                        break;
+                    }
+                    filesize = filesize * 10L + (long) (buf[0] - '0');
                 }
-                filesize = filesize * 10L + (long) (buf[0] - '0');
-            }
 
-            String file = null;
-            for (int i = 0;; i++) {
-                in.read(buf, i, 1);
-                if (buf[i] == (byte) 0x0a) {
-                    file = new String(buf, 0, i);
-                    break;
+                String file = null;
+                for (int i = 0;; i++) {
+                    in.read(buf, i, 1);
+                    if (buf[i] == (byte) 0x0a) {
+                        file = new String(buf, 0, i);
+                        break;
+                    }
                 }
-            }
 
-            // send '\0'
-            buf[0] = 0;
-            out.write(buf, 0, 1);
-            out.flush();
+                // send '\0'
+                buf[0] = 0;
+                out.write(buf, 0, 1);
+                out.flush();
 
-            // read a content of lfile
-            fos = new FileOutputStream(prefix == null ? lfile : prefix + file);
-            int foo;
-            while (true) {
-                if (buf.length < filesize) {
-                    foo = buf.length;
-                } else {
-                    foo = (int) filesize;
+                // read a content of lfile
+                fos = new FileOutputStream(prefix == null ? lfile : prefix + file);
+                int foo;
+                while (true) {
+                    if (buf.length < filesize) {
+                        foo = buf.length;
+                    } else {
+                        foo = (int) filesize;
+                    }
+                    foo = in.read(buf, 0, foo);
+                    if (foo < 0) {
+                        // error
+                        break;
+                    }
+                    fos.write(buf, 0, foo);
+                    filesize -= foo;
+                    if (filesize == 0L) {
+                        break;
+                    }
                 }
-                foo = in.read(buf, 0, foo);
-                if (foo < 0) {
-                    // error
-                    break;
-                }
-                fos.write(buf, 0, foo);
-                filesize -= foo;
-                if (filesize == 0L) {
-                    break;
+                fos.close();
+                fos = null;
+
+                if (checkAck(in) != 0) {
+                    throw new RuntimeException("Read error on inputstream");
                 }
-            }
-            fos.close();
-            fos = null;
 
-            if (checkAck(in) != 0) {
-                throw new RuntimeException("Read error on inputstream");
+                // send '\0'
+                buf[0] = 0;
+                out.write(buf, 0, 1);
+                out.flush();
             }
-
-            // send '\0'
-            buf[0] = 0;
-            out.write(buf, 0, 1);
-            out.flush();
+        } finally {
+            releaseChannel(channel);
         }
-        channel.disconnect();
     }
 
     /**
-     * Close connection
+     * Close connection. Pooled sessions are kept open for the next connections to the same host, until the
+     * end of the execution
      */
     public void closeConnection() throws Exception {
-        session.disconnect();
+        if (output != null) {
+            output.close();
+        }
+        pool.release(session);
     }
 
     /**
@@ -392,29 +465,43 @@ public class RemoteSSHConnection {
         return b;
     }
 
-    private static class MyUserInfo implements UserInfo {
-        public String getPassword() {
-            return "";
-        }
+    /**
+     * Error stream of an exec channel, forwarded to System.err without closing it. The channel closes it when it
+     * is disconnected, right after being marked as closed, so the end of the command can be waited for.
+     */
+    static final class ChannelCloseSignal extends OutputStream {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
 
-        public boolean promptYesNo(String str) {
-            return true;
+        @Override
+        public void write(int b) {
+            System.err.write(b);
         }
 
-        public String getPassphrase() {
-            return null;
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.err.write(b, off, len);
         }
 
-        public boolean promptPassphrase(String message) {
-            return true;
+        @Override
+        public void flush() {
+            System.err.flush();
         }
 
-        public boolean promptPassword(String message) {
-            return true;
+        @Override
+        public void close() {
+            closed.countDown();
         }
 
-        public void showMessage(String message) {
+        /**
+         * Waits for the channel to be closed.
+         *
+         * @param timeout timeout in nanoseconds
+         * @return false if the timeout expired
+         * @throws InterruptedException exception
+         */
+        boolean await(long timeout) throws InterruptedException {
+            return closed.await(timeout, TimeUnit.NANOSECONDS);
         }
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Timing phases of a REST request: DNS resolution, connection, TLS handshake, time to first byte and body
+ * transfer. Phases not performed by the request (i.e. DNS, connect and TLS for pooled connections) are 0.
+ */
+public class RequestTimings {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String method;
+
+    private final String url;
+
+    private long start;
+
+    private long connectStart;
+
+    private long dnsResolved;
+
+    private long connected;
+
+    private long tlsHandshake;
+
+    private long requestSent;
+
+    private long firstByte;
+
+    private long completed;
+
+    private boolean reused = false;
+
+    private int statusCode = -1;
+
+    private long bodyBytes = 0;
+
+    private long wireBytes = -1;
+
+    private final Object owner;
+
+    /**
+     * Constructor of RequestTimings.
+     *
+     * @param method request method
+     * @param url    request url
+     */
+    public RequestTimings(String method, String url) {
+        this.method = method;
+        this.url = url;
+        this.start = System.nanoTime();
+        this.owner = ThreadProperty.getAll();
+    }
+
+    /**
+     * Thread properties of the scenario that sent the request, shared with the threads working for it.
+     *
+     * @return Object
+     */
+    Object getOwner() {
+        return owner;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isReused() {
+        return reused;
+    }
+
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    /**
+     * Size of the body as received, before being decompressed.
+     *
+     * @return long
+     */
+    public long getWireBytes() {
+        return wireBytes < 0 ? bodyBytes : wireBytes;
+    }
+
+    void connectStart() {
+        connectStart = System.nanoTime();
+    }
+
+    void dnsResolved() {
+        dnsResolved = System.nanoTime();
+    }
+
+    void connected() {
+        connected = System.nanoTime();
+    }
+
+    void tlsHandshake() {
+        tlsHandshake = System.nanoTime();
+    }
+
+    void reused() {
+        reused = true;
+    }
+
+    void requestSent() {
+        requestSent = System.nanoTime();
+    }
+
+    void firstByte(int statusCode) {
+        if (firstByte == 0) {
+            firstByte = System.nanoTime();
+        }
+        this.statusCode = statusCode;
+    }
+
+    void bodyPart(long bytes) {
+        bodyBytes += bytes;
+    }
+
+    void wireBytes(long bytes) {
+        wireBytes = bytes;
+    }
+
+    void completed() {
+        completed = System.nanoTime();
+    }
+
+    public double getDnsMillis() {
+        return phase(connectStart, dnsResolved);
+    }
+
+    public double getConnectMillis() {
+        return phase(dnsResolved != 0 ? dnsResolved : connectStart, connected);
+    }
+
+    public double getTlsMillis() {
+        return phase(connected, tlsHandshake);
+    }
+
+    public double getTtfbMillis() {
+        return phase(requestSent != 0 ? requestSent : start, firstByte);
+    }
+
+    public double getBodyMillis() {
+        return phase(firstByte, completed);
+    }
+
+    public double getTotalMillis() {
+        return phase(start, completed);
+    }
+
+    private double phase(long from, long to) {
+        if (from == 0 || to == 0 || to < from) {
+            return 0;
+        }
+        return round((to - from) / NANOS_PER_MILLI);
+    }
+
+    private static double round(double value) {
+        return BigDecimal.valueOf(value).setScale(3, BigDecimal.ROUND_HALF_UP).doubleValue();
+    }
+
+    /**
+     * JSON representation of the request timings.
+     *
+     * @return JSONObject
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("method", method);
+        json.put("url", url);
+        json.put("status", statusCode);
+        json.put("reused", reused);
+        json.put("bodyBytes", bodyBytes);
+        json.put("wireBytes", getWireBytes());
+        json.put("dnsMs", getDnsMillis());
+        json.put("connectMs", getConnectMillis());
+        json.put("tlsMs", getTlsMillis());
+        json.put("ttfbMs", getTtfbMillis());
+        json.put("bodyMs", getBodyMillis());
+        json.put("totalMs", getTotalMillis());
+        return json;
+    }
+
+    /**
+     * Aggregates the timings of several requests.
+     *
+     * @param timings request timings
+     * @return JSONObject with the number of requests and the sum of every phase
+     */
+    public static JSONObject totals(List<RequestTimings> timings) {
+        double dns = 0;
+        double connect = 0;
+        double tls = 0;
+        double ttfb = 0;
+        double body = 0;
+        double total = 0;
+        for (RequestTimings t : timings) {
+            dns += t.getDnsMillis();
+            connect += t.getConnectMillis();
+            tls += t.getTlsMillis();
+            ttfb += t.getTtfbMillis();
+            body += t.getBodyMillis();
+            total += t.getTotalMillis();
+        }
+        JSONObject json = new JSONObject();
+        json.put("requests", timings.size());
+        json.put("dnsMs", round(dns));
+        json.put("connectMs", round(connect));
+        json.put("tlsMs", round(tls));
+        json.put("ttfbMs", round(ttfb));
+        json.put("bodyMs", round(body));
+        json.put("totalMs", round(total));
+        return json;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the timings of the REST requests sent since the last time they were drained,
+ * so that reporters can attach them to the step that sent them. When scenarios run in parallel,
+ * each reporter only drains the timings of the requests sent by its own scenario.
+ */
+public class RequestTimingsUtils {
+
+    private final Queue<RequestTimings> timings = new ConcurrentLinkedQueue<>();
+
+    private boolean enabled;
+
+    /**
+     * Generic constructor of RequestTimingsUtils.
+     */
+    public RequestTimingsUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("REQUEST_TIMINGS", "true"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the timings of a completed request.
+     *
+     * @param requestTimings request timings
+     */
+    public void record(RequestTimings requestTimings) {
+        if (enabled) {
+            timings.add(requestTimings);
+        }
+    }
+
+    /**
+     * Returns and forgets the timings recorded so far by the scenario running in the current thread.
+     *
+     * @return List
+     */
+    public List<RequestTimings> drain() {
+        List<RequestTimings> drained = new ArrayList<>();
+        Object owner = ThreadProperty.getAll();
+        Iterator<RequestTimings> iterator = timings.iterator();
+        while (iterator.hasNext()) {
+            RequestTimings requestTimings = iterator.next();
+            if (requestTimings.getOwner() == owner) {
+                iterator.remove();
+                drained.add(requestTimings);
+            }
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Suite scoped registry of pooled, keep-alive REST clients.
+ *
+ * Clients are keyed by protocol, host, port and TLS settings, so every scenario talking to the same endpoint
+ * reuses the same connection pool. Clients do not keep any cookie or header state, which stays in each
+ * scenario's CommonG instance.
+ */
+public class RestClientUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(RestClientUtils.class);
+
+    private final ConcurrentMap<String, AsyncHttpClient> clients = new ConcurrentHashMap<>();
+
+    private int maxConnectionsPerHost;
+
+    private int maxConnections;
+
+    private int pooledConnectionIdleTimeout;
+
+    private int connectionTTL;
+
+    private boolean acceptAnyCertificate;
+
+    private boolean compression;
+
+    /**
+     * Generic constructor of RestClientUtils.
+     */
+    public RestClientUtils() {
+        this.maxConnectionsPerHost = Integer.valueOf(System.getProperty("REST_MAX_CONNECTIONS_PER_HOST", "20"));
+        this.maxConnections = Integer.valueOf(System.getProperty("REST_MAX_CONNECTIONS", "-1"));
+        this.pooledConnectionIdleTimeout = Integer.valueOf(System.getProperty("REST_POOLED_IDLE_TIMEOUT", "60000"));
+        this.connectionTTL = Integer.valueOf(System.getProperty("REST_CONNECTION_TTL", "-1"));
+        this.acceptAnyCertificate = Boolean.valueOf(System.getProperty("REST_ACCEPT_ANY_CERTIFICATE", "true"));
+        this.compression = Boolean.valueOf(System.getProperty("REST_COMPRESSION", "true"));
+    }
+
+    /**
+     * Returns the pooled client for the given endpoint, creating it on first use.
+     *
+     * @param protocol rest protocol (http:// or https://)
+     * @param host     rest host
+     * @param port     rest port (as stored in CommonG, i.e. ":80")
+     * @return AsyncHttpClient
+     */
+    public AsyncHttpClient getClient(String protocol, String host, String port) {
+        String key = generateKey(protocol, host, port);
+        AsyncHttpClient client = clients.get(key);
+        if (client == null || client.isClosed()) {
+            synchronized (clients) {
+                client = clients.get(key);
+                if (client == null || client.isClosed()) {
+                    logger.debug("Creating pooled REST client for {}", key);
+                    client = new AsyncHttpClient(buildConfig());
+                    clients.put(key, client);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Closes every pooled client. Clients are lazily recreated if requested again.
+     */
+    public void closeAll() {
+        synchronized (clients) {
+            for (AsyncHttpClient client : clients.values()) {
+                client.close();
+            }
+            clients.clear();
+        }
+    }
+
+    /**
+     * Number of pooled clients currently open.
+     *
+     * @return int
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Whether compressed responses are requested by default (Accept-Encoding: gzip, deflate).
+     *
+     * @return boolean
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    private String generateKey(String protocol, String host, String port) {
+        return (protocol == null ? "http://" : protocol) + host + (port == null ? "" : port) + "|acceptAnyCertificate=" + acceptAnyCertificate;
+    }
+
+    private AsyncHttpClientConfig buildConfig() {
+        NettyAsyncHttpProviderConfig nettyConfig = new NettyAsyncHttpProviderConfig();
+        nettyConfig.setHttpAdditionalPipelineInitializer(WireSizeHandler::install);
+        nettyConfig.setHttpsAdditionalPipelineInitializer(WireSizeHandler::install);
+
+        return new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(nettyConfig)
+                .setCompressionEnforced(compression)
+                .setAcceptAnyCertificate(acceptAnyCertificate)
+                .setAllowPoolingConnections(true)
+                .setAllowPoolingSslConnections(true)
+                .setMaxConnectionsPerHost(maxConnectionsPerHost)
+                .setMaxConnections(maxConnections)
+                .setPooledConnectionIdleTimeout(pooledConnectionIdleTimeout)
+                .setConnectionTTL(connectionTTL)
+                .build();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Live totals of the running execution, updated by the reporter as every scenario finishes, so that the
+ * progress of long executions can be followed while they run.
+ *
+ * Besides {@link #toJson()}, when RUN_STATUS_FILE is set the totals are written to that file every
+ * RUN_STATUS_INTERVAL milliseconds (5000 by default), and once more when the execution ends.
+ *
+ * Several runners may share the JVM, so the totals cover from the first {@link #start()} until the
+ * last runner calls {@link #stop()}.
+ */
+public class RunStatusUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final String statusFile;
+
+    private final long interval;
+
+    private final AtomicInteger started = new AtomicInteger();
+
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final AtomicInteger passed = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final DoubleAdder durationMs = new DoubleAdder();
+
+    private volatile String lastFeature;
+
+    private volatile String lastScenario;
+
+    private volatile long startMillis;
+
+    private volatile boolean running = false;
+
+    private int runners = 0;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Generic constructor of RunStatusUtils.
+     */
+    public RunStatusUtils() {
+        this(System.getProperty("RUN_STATUS_FILE", ""), Long.parseLong(System.getProperty("RUN_STATUS_INTERVAL", "5000")));
+    }
+
+    RunStatusUtils(String statusFile, long interval) {
+        this.statusFile = statusFile;
+        this.interval = interval;
+    }
+
+    /**
+     * Registers a runner. The first one resets the totals and starts refreshing the status file, if any.
+     */
+    public synchronized void start() {
+        if (runners++ > 0) {
+            return;
+        }
+        started.set(0);
+        finished.set(0);
+        total.set(0);
+        passed.set(0);
+        failed.set(0);
+        skipped.set(0);
+        durationMs.reset();
+        lastFeature = null;
+        lastScenario = null;
+        startMillis = System.currentTimeMillis();
+        running = true;
+        if (!statusFile.isEmpty() && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "run-status");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::writeStatus, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Unregisters a runner. The last one stops refreshing the status file, writing the final totals.
+     */
+    public synchronized void stop() {
+        if (runners == 0 || --runners > 0) {
+            return;
+        }
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (!statusFile.isEmpty()) {
+            writeStatus();
+        }
+    }
+
+    /**
+     * Records the start of a scenario.
+     *
+     * @param feature  feature name
+     * @param scenario scenario name
+     */
+    public void scenarioStarted(String feature, String scenario) {
+        started.incrementAndGet();
+        lastFeature = feature;
+        lastScenario = scenario;
+    }
+
+    /**
+     * Records a finished scenario.
+     *
+     * @param status   reported status (PASS, FAIL or SKIP), null if the scenario is not reported
+     * @param duration duration in milliseconds
+     */
+    public void scenarioFinished(String status, double duration) {
+        finished.incrementAndGet();
+        durationMs.add(duration);
+        if (status == null) {
+            return;
+        }
+        total.incrementAndGet();
+        switch (status) {
+            case "PASS":
+                passed.incrementAndGet();
+                break;
+            case "FAIL":
+                failed.incrementAndGet();
+                break;
+            case "SKIP":
+                skipped.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getPassed() {
+        return passed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Scenarios started and not finished yet.
+     *
+     * @return int
+     */
+    public int getRunning() {
+        return Math.max(started.get() - finished.get(), 0);
+    }
+
+    /**
+     * JSON representation of the totals.
+     *
+     * @return JSONObject
+     */
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("running", running);
+        json.put("total", getTotal());
+        json.put("passed", getPassed());
+        json.put("failed", getFailed());
+        json.put("skipped", getSkipped());
+        json.put("inProgress", getRunning());
+        json.put("durationMs", durationMs.sum());
+        json.put("elapsedMs", startMillis == 0 ? 0 : System.currentTimeMillis() - startMillis);
+        json.put("lastFeature", lastFeature == null ? JSONObject.NULL : lastFeature);
+        json.put("lastScenario", lastScenario == null ? JSONObject.NULL : lastScenario);
+        json.put("updated", new Date().toString());
+        return json;
+    }
+
+    /**
+     * Writes the totals to the status file, replacing it atomically so readers never see it half written.
+     */
+    synchronized void writeStatus() {
+        File file = new File(statusFile).getAbsoluteFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(temp.toPath(), toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Error writing run status to {}: {}", statusFile, e.getMessage());
+        }
+    }
+}
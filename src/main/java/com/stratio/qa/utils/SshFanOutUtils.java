@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a command in several hosts at the same time.
+ *
+ * At most SSH_FANOUT_PARALLELISM (10) hosts run the command at once, and each host is given
+ * SSH_FANOUT_TIMEOUT seconds (60) from the moment its command starts: the thread running it is interrupted
+ * when it expires, which stops the reading of the output and closes its channel. A host failing or timing out
+ * does not stop the others, its result holds the error.
+ */
+public class SshFanOutUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(SshFanOutUtils.class);
+
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    private final int parallelism;
+
+    private final long timeout;
+
+    /**
+     * Command run in a host.
+     */
+    public interface HostCommand {
+
+        /**
+         * Runs the command, saving its exit status and output in the result.
+         *
+         * @param host   host
+         * @param result result of the host
+         * @throws Exception exception, saved as the error of the host
+         */
+        void run(String host, HostCommandResult result) throws Exception;
+    }
+
+    /**
+     * Generic constructor of SshFanOutUtils.
+     */
+    public SshFanOutUtils() {
+        this.parallelism = Integer.valueOf(System.getProperty("SSH_FANOUT_PARALLELISM", "10"));
+        this.timeout = Long.valueOf(System.getProperty("SSH_FANOUT_TIMEOUT", "60"));
+        this.timeouts = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bdt-fanout-timeout-%d").build());
+        this.timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Command run through a pooled ssh connection to each host.
+     *
+     * @param command  command
+     * @param user     remote user
+     * @param password password, null to authenticate with the pem file
+     * @param port     remote port, null for 22
+     * @param pemFile  pem file, may be null
+     * @return HostCommand
+     */
+    public static HostCommand sshCommand(String command, String user, String password, String port, String pemFile) {
+        return (host, result) -> {
+            RemoteSSHConnection connection = new RemoteSSHConnection(user, password, host, port, pemFile);
+            try {
+                connection.runCommand(command);
+                result.setExitStatus(connection.getExitStatus());
+                result.setOutput(connection.getResult());
+            } finally {
+                connection.closeConnection();
+            }
+        };
+    }
+
+    /**
+     * Runs the command in every host, with the default parallelism and timeout.
+     *
+     * @param hosts   hosts
+     * @param command command
+     * @return results, in the order of the hosts
+     * @throws InterruptedException if interrupted while waiting for the hosts
+     */
+    public List<HostCommandResult> run(List<String> hosts, HostCommand command) throws InterruptedException {
+        return run(hosts, command, parallelism, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs the command in every host.
+     *
+     * @param hosts       hosts
+     * @param command     command
+     * @param parallelism maximum number of hosts running the command at once
+     * @param timeout     time given to each host
+     * @param unit        time unit of the timeout
+     * @return results, in the order of the hosts
+     * @throws InterruptedException if interrupted while waiting for the hosts
+     */
+    public List<HostCommandResult> run(List<String> hosts, HostCommand command, int parallelism, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        List<HostCommandResult> results = new ArrayList<HostCommandResult>();
+        if (hosts.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(Math.min(parallelism, hosts.size()), 1),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bdt-fanout-%d").build());
+        try {
+            List<Future<HostCommandResult>> futures = new ArrayList<Future<HostCommandResult>>();
+            for (String host : hosts) {
+                futures.add(executor.submit(VariableStore.inherit(() -> runInHost(host, command, timeout, unit))));
+            }
+            for (Future<HostCommandResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // runInHost saves every exception in the result
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private HostCommandResult runInHost(String host, HostCommand command, long timeout, TimeUnit unit) {
+        HostCommandResult result = new HostCommandResult(host);
+        Thread worker = Thread.currentThread();
+        // finished, expired
+        boolean[] state = new boolean[2];
+        ScheduledFuture<?> expiration = timeouts.schedule(() -> {
+            synchronized (state) {
+                if (!state[0]) {
+                    state[1] = true;
+                    worker.interrupt();
+                }
+            }
+        }, timeout, unit);
+
+        long start = System.nanoTime();
+        try {
+            command.run(host, result);
+        } catch (Exception e) {
+            synchronized (state) {
+                if (state[1]) {
+                    result.setTimedOut(true);
+                    result.setError("Timed out after " + unit.toMillis(timeout) + " ms");
+                } else {
+                    result.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+                }
+            }
+        } finally {
+            expiration.cancel(false);
+            synchronized (state) {
+                state[0] = true;
+            }
+            // clear the interruption of an expired host, so that the thread can run the next one
+            Thread.interrupted();
+        }
+        result.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        logger.debug("{}", result);
+        return result;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Suite scoped pool of SSH sessions.
+ *
+ * Sessions are keyed by host, port, user and credentials, so every scenario connecting to the same node reuses
+ * the same authenticated session, and commands just open a new channel on it. Up to SSH_MAX_CHANNELS (8) channels
+ * are open at the same time on each session, below the 10 sessions per connection allowed by default by OpenSSH.
+ * Sessions send keepalives every SSH_KEEPALIVE_INTERVAL milliseconds (15000), so the ones whose server stopped
+ * answering are disconnected and replaced by a new one the next time they are requested. Connecting a session
+ * fails after SSH_CONNECT_TIMEOUT milliseconds (30000).
+ *
+ * With SSH_SESSION_POOL=false every connection gets a session of its own, disconnected when it is released.
+ */
+public class SshSessionUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(SshSessionUtils.class);
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Session, Semaphore> channels = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    private final int maxChannels;
+
+    private final int keepAliveInterval;
+
+    private final int keepAliveCountMax;
+
+    private final int connectTimeout;
+
+    /**
+     * Generic constructor of SshSessionUtils.
+     */
+    public SshSessionUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("SSH_SESSION_POOL", "true"));
+        this.maxChannels = Integer.valueOf(System.getProperty("SSH_MAX_CHANNELS", "8"));
+        this.keepAliveInterval = Integer.valueOf(System.getProperty("SSH_KEEPALIVE_INTERVAL", "15000"));
+        this.keepAliveCountMax = Integer.valueOf(System.getProperty("SSH_KEEPALIVE_COUNT_MAX", "3"));
+        this.connectTimeout = Integer.valueOf(System.getProperty("SSH_CONNECT_TIMEOUT", "30000"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a connected session, the pooled one if it is still alive.
+     *
+     * Sessions to different nodes are connected at the same time, while the connections requesting the session
+     * being connected to the same node wait for it, and can be interrupted while waiting.
+     *
+     * @param user     remote user
+     * @param password password, null to authenticate with the pem file
+     * @param host     remote host
+     * @param port     remote port
+     * @param pemFile  pem file, may be null
+     * @return Session
+     * @throws JSchException exception connecting the session, or if interrupted while waiting for it
+     */
+    public Session getSession(String user, String password, String host, int port, String pemFile) throws JSchException {
+        if (!enabled) {
+            return connect(user, password, host, port, pemFile);
+        }
+        String key = generateKey(user, password, host, port, pemFile);
+        Session session = sessions.get(key);
+        if (session != null && session.isConnected()) {
+            return session;
+        }
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted waiting for the SSH session to " + user + "@" + host + ":" + port, e);
+        }
+        try {
+            session = sessions.get(key);
+            if (session == null || !session.isConnected()) {
+                if (session != null) {
+                    logger.warn("SSH session to {}@{}:{} is down, reconnecting", user, host, port);
+                    channels.remove(session);
+                }
+                session = connect(user, password, host, port, pemFile);
+                sessions.put(key, session);
+            }
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a channel, waiting if the session already has the maximum number of open channels. It must be
+     * released with {@link #releaseChannel(Session, Channel)}.
+     *
+     * @param session session
+     * @param type    channel type, i.e. exec
+     * @return Channel, not connected
+     * @throws JSchException        exception opening the channel
+     * @throws InterruptedException if interrupted while waiting for a free channel
+     */
+    public Channel openChannel(Session session, String type) throws JSchException, InterruptedException {
+        Semaphore permits = channels.computeIfAbsent(session, s -> new Semaphore(maxChannels));
+        permits.acquire();
+        try {
+            return session.openChannel(type);
+        } catch (JSchException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Disconnects a channel opened with {@link #openChannel(Session, String)}.
+     *
+     * @param session session of the channel
+     * @param channel channel
+     */
+    public void releaseChannel(Session session, Channel channel) {
+        channel.disconnect();
+        Semaphore permits = channels.get(session);
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Disconnects a session that is not working any more, so that a new one is connected when requested again.
+     *
+     * @param session session
+     */
+    public void invalidate(Session session) {
+        sessions.values().remove(session);
+        channels.remove(session);
+        session.disconnect();
+    }
+
+    /**
+     * Releases a session no longer used by a connection. Pooled sessions stay connected.
+     *
+     * @param session session
+     */
+    public void release(Session session) {
+        if (!enabled || !sessions.containsValue(session)) {
+            channels.remove(session);
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Disconnects every pooled session. Sessions are lazily connected again if requested.
+     */
+    public void closeAll() {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            iterator.remove();
+            channels.remove(session);
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Number of pooled sessions.
+     *
+     * @return int
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    static String generateKey(String user, String password, String host, int port, String pemFile) {
+        String credentials = (password == null ? "" : password) + "\u0000" + (pemFile == null ? "" : pemFile);
+        return user + "@" + host + ":" + port + "|" + digest(credentials);
+    }
+
+    private static String digest(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Session connect(String user, String password, String host, int port, String pemFile) throws JSchException {
+        logger.debug("Connecting SSH session to {}@{}:{}", user, host, port);
+        JSch jsch = new JSch();
+
+        if (pemFile != null) {
+            // Pass pem file
+            jsch.addIdentity(pemFile);
+        }
+
+        Session session = jsch.getSession(user, host, port);
+
+        // Pass user
+        session.setUserInfo(new MyUserInfo());
+
+        if (password != null) {
+            // Pass password if provided
+            session.setPassword(password);
+        }
+
+        session.setServerAliveInterval(keepAliveInterval);
+        session.setServerAliveCountMax(keepAliveCountMax);
+        session.connect(connectTimeout);
+        return session;
+    }
+
+    private static class MyUserInfo implements UserInfo {
+        public String getPassword() {
+            return "";
+        }
+
+        public boolean promptYesNo(String str) {
+            return true;
+        }
+
+        public String getPassphrase() {
+            return null;
+        }
+
+        public boolean promptPassphrase(String message) {
+            return true;
+        }
+
+        public boolean promptPassword(String message) {
+            return true;
+        }
+
+        public void showMessage(String message) {
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import cucumber.runtime.AmbiguousStepDefinitionsException;
+import cucumber.runtime.StepDefinition;
+import cucumber.runtime.StepDefinitionMatch;
+import cucumber.runtime.UndefinedStepsTracker;
+import cucumber.runtime.xstream.LocalizedXStreams;
+import gherkin.I18n;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.Step;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoization of the step definition matched by each step text, so that steps repeated by scenario outlines
+ * and loops are not matched again against every step definition pattern.
+ *
+ * Matches are kept per cucumber glue, as each runtime has its own step definitions. Steps matching no step
+ * definition, or more than one, are not cached: they are reported as undefined or ambiguous as cucumber does,
+ * from the matches already computed. Ambiguous steps and patterns slower than STEP_MATCH_SLOW_MICROS are
+ * recorded to be reported.
+ */
+public class StepMatchCacheUtils {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass().getCanonicalName());
+
+    private final boolean enabled;
+
+    private final int maxSize;
+
+    private final long slowMicros;
+
+    private final Map<Object, Map<String, CachedMatch>> matches = Collections.synchronizedMap(new WeakHashMap<Object, Map<String, CachedMatch>>());
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Set<String> ambiguous = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ConcurrentMap<String, Long> slowPatterns = new ConcurrentHashMap<>();
+
+    private volatile Field stepDefinitionsField;
+
+    private volatile Field localizedXStreamsField;
+
+    private volatile Field trackerField;
+
+    private volatile boolean available = true;
+
+    /**
+     * Matches a step without the cache, as cucumber does.
+     */
+    public interface Matcher {
+        StepDefinitionMatch match() throws Throwable;
+    }
+
+    /**
+     * Generic constructor of StepMatchCacheUtils.
+     */
+    public StepMatchCacheUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("STEP_MATCH_CACHE", "true"));
+        this.maxSize = Integer.parseInt(System.getProperty("STEP_MATCH_CACHE_SIZE", "4096"));
+        this.slowMicros = Long.parseLong(System.getProperty("STEP_MATCH_SLOW_MICROS", "1000"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Step definition match of a step, taken from the cache when the same text was matched before.
+     *
+     * @param glue        cucumber glue with the step definitions
+     * @param featurePath path of the feature of the step
+     * @param step        step to match
+     * @param i18n        language of the feature
+     * @param matcher     matches the step as cucumber does, when the glue is not supported by the cache
+     * @return StepDefinitionMatch, or null if undefined
+     * @throws Throwable AmbiguousStepDefinitionsException if several step definitions match, or exception
+     *                   thrown by the matcher
+     */
+    public StepDefinitionMatch match(Object glue, String featurePath, Step step, I18n i18n, Matcher matcher) throws Throwable {
+        if (!enabled || !available) {
+            return matcher.match();
+        }
+        Collection<StepDefinition> stepDefinitions;
+        LocalizedXStreams localizedXStreams;
+        UndefinedStepsTracker tracker;
+        try {
+            stepDefinitions = stepDefinitions(glue);
+            localizedXStreams = localizedXStreams(glue);
+            tracker = tracker(glue);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Step match cache disabled, glue of {} not supported: {}", glue.getClass().getName(), e.toString());
+            available = false;
+            return matcher.match();
+        }
+
+        try {
+            return match(glue, featurePath, step, stepDefinitions, localizedXStreams, i18n, tracker);
+        } finally {
+            tracker.storeStepKeyword(step, i18n);
+        }
+    }
+
+    private StepDefinitionMatch match(Object glue, String featurePath, Step step, Collection<StepDefinition> stepDefinitions,
+            LocalizedXStreams localizedXStreams, I18n i18n, UndefinedStepsTracker tracker) {
+        Map<String, CachedMatch> glueMatches = matchesOf(glue);
+        CachedMatch cached = glueMatches.get(step.getName());
+        if (cached != null) {
+            hits.incrementAndGet();
+            return new StepDefinitionMatch(cached.arguments, cached.stepDefinition, featurePath, step, localizedXStreams);
+        }
+        misses.incrementAndGet();
+
+        List<StepDefinitionMatch> matching = new ArrayList<>();
+        for (StepDefinition stepDefinition : stepDefinitions) {
+            long start = System.nanoTime();
+            List<Argument> arguments = stepDefinition.matchedArguments(step);
+            long micros = (System.nanoTime() - start) / 1000;
+            if (micros >= slowMicros) {
+                slowPatterns.merge(stepDefinition.getPattern(), micros, Math::max);
+            }
+            if (arguments != null) {
+                matching.add(new StepDefinitionMatch(arguments, stepDefinition, featurePath, step, localizedXStreams));
+                if (matching.size() == 1) {
+                    cached = new CachedMatch(stepDefinition, arguments);
+                }
+            }
+        }
+        if (matching.isEmpty()) {
+            tracker.addUndefinedStep(step, i18n);
+            return null;
+        }
+        if (matching.size() > 1) {
+            List<String> patterns = new ArrayList<>();
+            for (StepDefinitionMatch match : matching) {
+                patterns.add(match.getPattern());
+            }
+            ambiguous.add(step.getName() + " -> " + patterns);
+            throw new AmbiguousStepDefinitionsException(matching);
+        }
+        glueMatches.put(step.getName(), cached);
+        return matching.get(0);
+    }
+
+    private Map<String, CachedMatch> matchesOf(Object glue) {
+        synchronized (matches) {
+            Map<String, CachedMatch> glueMatches = matches.get(glue);
+            if (glueMatches == null) {
+                glueMatches = Collections.synchronizedMap(new LruMap<String, CachedMatch>(maxSize));
+                matches.put(glue, glueMatches);
+            }
+            return glueMatches;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<StepDefinition> stepDefinitions(Object glue) throws ReflectiveOperationException {
+        if (stepDefinitionsField == null) {
+            Field field = glue.getClass().getDeclaredField("stepDefinitionsByPattern");
+            field.setAccessible(true);
+            stepDefinitionsField = field;
+        }
+        return ((Map<String, StepDefinition>) stepDefinitionsField.get(glue)).values();
+    }
+
+    private LocalizedXStreams localizedXStreams(Object glue) throws ReflectiveOperationException {
+        if (localizedXStreamsField == null) {
+            Field field = glue.getClass().getDeclaredField("localizedXStreams");
+            field.setAccessible(true);
+            localizedXStreamsField = field;
+        }
+        return (LocalizedXStreams) localizedXStreamsField.get(glue);
+    }
+
+    private UndefinedStepsTracker tracker(Object glue) throws ReflectiveOperationException {
+        if (trackerField == null) {
+            Field field = glue.getClass().getDeclaredField("tracker");
+            field.setAccessible(true);
+            trackerField = field;
+        }
+        return (UndefinedStepsTracker) trackerField.get(glue);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Steps matching several step definitions, with the patterns they match.
+     *
+     * @return Set
+     */
+    public Set<String> getAmbiguous() {
+        return Collections.unmodifiableSet(ambiguous);
+    }
+
+    /**
+     * Patterns that took STEP_MATCH_SLOW_MICROS or more to match a step, with their slowest match in microseconds.
+     *
+     * @return Map
+     */
+    public Map<String, Long> getSlowPatterns() {
+        return new TreeMap<>(slowPatterns);
+    }
+
+    /**
+     * Logs the hit/miss metrics, the ambiguous steps and the slow patterns.
+     */
+    public void report() {
+        if (hits.get() + misses.get() == 0) {
+            return;
+        }
+        logger.info("Step match cache: {} hits, {} misses", hits.get(), misses.get());
+        for (String step : ambiguous) {
+            logger.warn("Ambiguous step: {}", step);
+        }
+        for (Map.Entry<String, Long> pattern : getSlowPatterns().entrySet()) {
+            logger.warn("Slow step pattern ({} us): {}", pattern.getValue(), pattern.getKey());
+        }
+    }
+
+    /**
+     * Forgets every cached match and metric.
+     */
+    public void clear() {
+        matches.clear();
+        hits.set(0);
+        misses.set(0);
+        ambiguous.clear();
+        slowPatterns.clear();
+    }
+
+    private static final class CachedMatch {
+
+        private final StepDefinition stepDefinition;
+
+        private final List<Argument> arguments;
+
+        private CachedMatch(StepDefinition stepDefinition, List<Argument> arguments) {
+            this.stepDefinition = stepDefinition;
+            this.arguments = arguments;
+        }
+    }
+}
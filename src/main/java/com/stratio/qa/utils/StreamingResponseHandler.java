@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming handler for REST responses.
+ *
+ * The body is matched against a pattern while it is being received, so the verdict is known as soon as
+ * the pattern appears, and the request can be aborted at that point. Only the last REST_STREAMING_MATCH_WINDOW
+ * characters (65536) of the decoded text are kept for matching, and bodies bigger than a threshold are
+ * spilled to a temporary file instead of being kept in memory.
+ *
+ * A match in the window is a match in the body, but a match longer than the window is only found in the whole
+ * body, so when the window has been exceeded without a match the whole body is matched once it is received.
+ * Patterns with anchors or lookbehinds, whose meaning depends on where the text starts and ends, are only
+ * matched against the whole body.
+ */
+public class StreamingResponseHandler implements AsyncHandler<HttpResponse> {
+
+    private final Logger logger = LoggerFactory.getLogger(StreamingResponseHandler.class);
+
+    private final Pattern pattern;
+
+    private final boolean abortOnMatch;
+
+    private final int spillThreshold;
+
+    private final int matchWindow;
+
+    private final boolean streamable;
+
+    private boolean windowExceeded = false;
+
+    private final Response.ResponseBuilder builder = new Response.ResponseBuilder();
+
+    private final StringBuilder window = new StringBuilder();
+
+    private ByteArrayOutputStream memoryBody = new ByteArrayOutputStream();
+
+    private OutputStream fileBody;
+
+    private File spillFile;
+
+    private long bodySize = 0;
+
+    private String wireLength;
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    private CharsetDecoder decoder;
+
+    private ByteBuffer pendingBytes = ByteBuffer.allocate(0);
+
+    private boolean matched = false;
+
+    private boolean aborted = false;
+
+    /**
+     * Constructor of a StreamingResponseHandler.
+     *
+     * @param pattern      pattern to look for in the body (null to just stream it)
+     * @param abortOnMatch stop reading the body as soon as the pattern is found
+     */
+    public StreamingResponseHandler(Pattern pattern, boolean abortOnMatch) {
+        this.pattern = pattern;
+        this.abortOnMatch = abortOnMatch;
+        this.spillThreshold = Integer.valueOf(System.getProperty("REST_STREAMING_SPILL_THRESHOLD", "1048576"));
+        this.matchWindow = Integer.valueOf(System.getProperty("REST_STREAMING_MATCH_WINDOW", "65536"));
+        this.streamable = pattern == null || isStreamable(pattern);
+    }
+
+    /**
+     * Whether a match of the pattern in part of a text is a match in the whole text, i.e. it has no anchors,
+     * word boundaries nor lookbehinds out of quoted sections.
+     */
+    static boolean isStreamable(Pattern pattern) {
+        String regex = pattern.pattern().replaceAll("(?s)\\\\Q.*?(\\\\E|$)", "");
+        return !regex.matches("(?s).*(\\^|\\$|\\\\[AzZGbB]|\\(\\?<[=!]).*");
+    }
+
+    @Override
+    public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+        builder.accumulate(responseStatus);
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+        builder.accumulate(headers);
+        if (headers.getHeaders().getFirstValue(WireSizeHandler.WIRE_LENGTH_HEADER) != null) {
+            wireLength = headers.getHeaders().getFirstValue(WireSizeHandler.WIRE_LENGTH_HEADER);
+        }
+        String contentType = headers.getHeaders().getFirstValue("Content-Type");
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                String trimmed = param.trim();
+                if (trimmed.toLowerCase().startsWith("charset=")) {
+                    try {
+                        charset = Charset.forName(trimmed.substring("charset=".length()).replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        logger.debug("Unknown response charset {}, using {}", trimmed, charset);
+                    }
+                }
+            }
+        }
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+        byte[] bytes = bodyPart.getBodyPartBytes();
+        store(bytes);
+
+        if (pattern != null && streamable && !matched) {
+            window.append(decode(bytes));
+            if (pattern.matcher(window).find()) {
+                matched = true;
+                window.setLength(0);
+                if (abortOnMatch) {
+                    logger.debug("Pattern found after {} bytes, aborting response", bodySize);
+                    aborted = true;
+                    return STATE.ABORT;
+                }
+            } else if (window.length() > matchWindow) {
+                windowExceeded = true;
+                window.delete(0, window.length() - matchWindow);
+            }
+        }
+        return STATE.CONTINUE;
+    }
+
+    @Override
+    public HttpResponse onCompleted() throws Exception {
+        Response headersOnly = builder.build();
+        HttpResponse httpResponse;
+        if (fileBody != null) {
+            fileBody.close();
+        }
+        if (pattern != null && !matched && (!streamable || windowExceeded)) {
+            logger.debug("Matching the whole body of {} bytes", bodySize);
+            String body = fileBody != null ? FileUtils.readFileToString(spillFile, charset) : new String(memoryBody.toByteArray(), charset);
+            matched = pattern.matcher(body).find();
+        }
+        if (fileBody != null) {
+            httpResponse = new HttpResponse(headersOnly.getStatusCode(), null, headersOnly.getCookies());
+            httpResponse.setResponseFile(spillFile, charset);
+        } else {
+            httpResponse = new HttpResponse(headersOnly.getStatusCode(), new String(memoryBody.toByteArray(), charset), headersOnly.getCookies());
+        }
+        httpResponse.setResponseSize(bodySize);
+        httpResponse.setWireSize(aborted ? -1 : WireSizeHandler.getWireSize(wireLength, bodySize));
+        httpResponse.setTruncated(aborted);
+        memoryBody = null;
+        return httpResponse;
+    }
+
+    @Override
+    public void onThrowable(Throwable t) {
+        logger.debug("Error while streaming response", t);
+        try {
+            if (fileBody != null) {
+                fileBody.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Error closing spill file", e);
+        }
+    }
+
+    /**
+     * Whether the pattern has been found in the body.
+     *
+     * @return boolean
+     */
+    public boolean isMatched() {
+        return matched;
+    }
+
+    /**
+     * Whether the body was not completely read because the verdict was known before.
+     *
+     * @return boolean
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    private void store(byte[] bytes) throws IOException {
+        bodySize += bytes.length;
+        if (fileBody == null && bodySize > spillThreshold) {
+            spillFile = File.createTempFile("bdt-response-", ".tmp");
+            spillFile.deleteOnExit();
+            logger.debug("Response bigger than {} bytes, spilling to {}", spillThreshold, spillFile.getAbsolutePath());
+            fileBody = new FileOutputStream(spillFile);
+            memoryBody.writeTo(fileBody);
+            memoryBody = new ByteArrayOutputStream();
+        }
+        if (fileBody != null) {
+            fileBody.write(bytes);
+        } else {
+            memoryBody.write(bytes);
+        }
+    }
+
+    private CharSequence decode(byte[] bytes) {
+        if (decoder == null) {
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        ByteBuffer in = ByteBuffer.allocate(pendingBytes.remaining() + bytes.length);
+        in.put(pendingBytes).put(bytes).flip();
+        CharBuffer out = CharBuffer.allocate((int) (in.remaining() * decoder.maxCharsPerByte()) + 1);
+        // Incomplete multi-byte sequences are kept for the next chunk
+        decoder.decode(in, out, false);
+        pendingBytes = in.slice();
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the request templates read from the classpath and of the bodies obtained applying a modifications
+ * table to them, so that polling steps and scenario outlines do not read and parse the same files again and again.
+ *
+ * Templates are invalidated when the file they were read from changes on disk. Modified bodies are keyed by the
+ * template content itself, so they never get stale. Both caches are bounded and evict the least recently used
+ * entries.
+ */
+public class TemplateCacheUtils {
+
+    private final boolean enabled;
+
+    private final int maxSize;
+
+    private final Map<List<String>, Template> templates;
+
+    private final Map<List<Object>, String> bodies;
+
+    /**
+     * Generic constructor of TemplateCacheUtils.
+     */
+    public TemplateCacheUtils() {
+        this.enabled = Boolean.valueOf(System.getProperty("TEMPLATE_CACHE", "true"));
+        this.maxSize = Integer.parseInt(System.getProperty("TEMPLATE_CACHE_SIZE", "256"));
+        this.templates = Collections.synchronizedMap(new LruMap<List<String>, Template>(maxSize));
+        this.bodies = Collections.synchronizedMap(new LruMap<List<Object>, String>(maxSize));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the template read from the resource, reading it only if it is not cached or the resource
+     * has been modified since it was cached.
+     *
+     * @param resource resource to read
+     * @param type     type of information, it can be: json|string
+     * @param reader   reads and parses the resource
+     * @return String
+     */
+    public String getTemplate(URL resource, String type, Supplier<String> reader) {
+        if (!enabled) {
+            return reader.get();
+        }
+        List<String> key = Arrays.asList(resource.toString(), type);
+        long lastModified = lastModified(resource);
+        Template template = templates.get(key);
+        if (template == null || template.lastModified != lastModified) {
+            template = new Template(reader.get(), lastModified);
+            templates.put(key, template);
+        }
+        return template.data;
+    }
+
+    /**
+     * Returns the body cached for the given data and modifications.
+     *
+     * @param data          data the modifications are applied to
+     * @param type          type of information, it can be: json|string
+     * @param modifications modifications table
+     * @return String, or null if not cached
+     */
+    public String getBody(String data, String type, List<List<String>> modifications) {
+        if (!enabled) {
+            return null;
+        }
+        return bodies.get(bodyKey(data, type, modifications));
+    }
+
+    /**
+     * Caches the body obtained applying the modifications to the given data.
+     *
+     * @param data          data the modifications are applied to
+     * @param type          type of information, it can be: json|string
+     * @param modifications modifications table
+     * @param body          resulting body
+     */
+    public void putBody(String data, String type, List<List<String>> modifications, String body) {
+        if (enabled) {
+            bodies.put(bodyKey(data, type, modifications), body);
+        }
+    }
+
+    /**
+     * Forgets every cached template and body.
+     */
+    public void clear() {
+        templates.clear();
+        bodies.clear();
+    }
+
+    public int size() {
+        return templates.size() + bodies.size();
+    }
+
+    private List<Object> bodyKey(String data, String type, List<List<String>> modifications) {
+        List<List<String>> rows = new ArrayList<>(modifications.size());
+        for (List<String> row : modifications) {
+            rows.add(new ArrayList<>(row));
+        }
+        return Arrays.asList(data, type, rows);
+    }
+
+    /**
+     * Resources inside jars can not change while the JVM is running, only plain files are checked.
+     */
+    private long lastModified(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return 0;
+        }
+        try {
+            return new File(resource.toURI()).lastModified();
+        } catch (Exception e) {
+            return new File(resource.getPath()).lastModified();
+        }
+    }
+
+    private static final class Template {
+
+        private final String data;
+
+        private final long lastModified;
+
+        private Template(String data, long lastModified) {
+            this.data = data;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -58,4 +58,23 @@ public final class ThreadProperty {
         PROPS.get().remove(key);
     }
 
+    /**
+     * Get all the properties shared by the current thread, so that they can be
+     * shared with a worker thread.
+     *
+     * @return Properties
+     */
+    public static Properties getAll() {
+        return PROPS.get();
+    }
+
+    /**
+     * Share the given properties in the current thread.
+     *
+     * @param props
+     */
+    public static void setAll(Properties props) {
+        PROPS.set(props);
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHandlerExtensions;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+
+import java.net.InetAddress;
+
+/**
+ * AsyncHandler decorator recording the timing phases of a request. Once the request is completed
+ * its timings are handed to {@link RequestTimingsUtils}.
+ *
+ * @param <T> type returned by the decorated handler
+ */
+public class TimingHandler<T> implements AsyncHandler<T>, AsyncHandlerExtensions {
+
+    private final AsyncHandler<T> delegate;
+
+    private final RequestTimings timings;
+
+    /**
+     * Constructor of TimingHandler.
+     *
+     * @param delegate handler processing the response
+     * @param method   request method
+     * @param url      request url
+     */
+    public TimingHandler(AsyncHandler<T> delegate, String method, String url) {
+        this.delegate = delegate;
+        this.timings = new RequestTimings(method, url);
+    }
+
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
+    @Override
+    public void onOpenConnection() {
+        timings.connectStart();
+    }
+
+    @Override
+    public void onDnsResolved(InetAddress remoteAddress) {
+        timings.dnsResolved();
+    }
+
+    @Override
+    public void onConnectionOpen() {
+        timings.connected();
+    }
+
+    @Override
+    public void onSslHandshakeCompleted() {
+        timings.tlsHandshake();
+    }
+
+    @Override
+    public void onPoolConnection() {
+    }
+
+    @Override
+    public void onConnectionPooled() {
+        timings.reused();
+    }
+
+    @Override
+    public void onSendRequest(Object request) {
+        timings.requestSent();
+    }
+
+    @Override
+    public void onRetry() {
+    }
+
+    @Override
+    public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+        timings.firstByte(responseStatus.getStatusCode());
+        return delegate.onStatusReceived(responseStatus);
+    }
+
+    @Override
+    public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+        String wireLength = headers.getHeaders().getFirstValue(WireSizeHandler.WIRE_LENGTH_HEADER);
+        if (wireLength != null) {
+            timings.wireBytes(WireSizeHandler.getWireSize(wireLength, -1));
+        }
+        return delegate.onHeadersReceived(headers);
+    }
+
+    @Override
+    public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+        timings.bodyPart(bodyPart.length());
+        return delegate.onBodyPartReceived(bodyPart);
+    }
+
+    @Override
+    public T onCompleted() throws Exception {
+        timings.completed();
+        RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().record(timings);
+        return delegate.onCompleted();
+    }
+
+    @Override
+    public void onThrowable(Throwable t) {
+        timings.completed();
+        RequestTimingsUtil.INSTANCE.getRequestTimingsUtils().record(timings);
+        delegate.onThrowable(t);
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Variables saved by the steps of a scenario and read through !{name} placeholders.
+ *
+ * Each thread works with its own store, so lookups are not synchronized. Values are kept typed: strings, json
+ * documents parsed the first time they are read, byte arrays and tables. Every value has a string form, the one
+ * used to resolve placeholders: tables are rendered as a json array of rows and byte arrays as UTF-8 text.
+ *
+ * The store is cleared when the scenario ends (or when the feature ends with VARIABLE_SCOPE=feature). Worker
+ * threads of a parallel step get a child store through {@link #inherit(Callable)}: they read the variables of
+ * the scenario and save their own ones locally, while the scenario thread waits for them.
+ *
+ * Variables not saved in the store are looked up in the {@link ThreadProperty} of the thread, where glue
+ * written for former versions saves them. Removing a variable from the store of the scenario removes it from
+ * there as well, so that a former value is not read again.
+ *
+ * The approximate size of the values is accounted, and a warning is logged once when it exceeds
+ * VARIABLE_STORE_WARN_MB (64 by default).
+ */
+public final class VariableStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VariableStore.class);
+
+    private static final ThreadLocal<VariableStore> CURRENT = new ThreadLocal<VariableStore>() {
+        protected VariableStore initialValue() {
+            return new VariableStore(null);
+        }
+    };
+
+    private static final Object REMOVED = new Object();
+
+    private static final long WARN_BYTES = Long.parseLong(System.getProperty("VARIABLE_STORE_WARN_MB", "64")) * 1024 * 1024;
+
+    private final VariableStore parent;
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    private long bytes = 0;
+
+    private boolean warned = false;
+
+    private VariableStore(VariableStore parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Store of the current thread.
+     *
+     * @return VariableStore
+     */
+    public static VariableStore current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the given store the one of the current thread.
+     *
+     * @param store store to work with, a new one if null
+     * @return the store the thread was working with
+     */
+    public static VariableStore attach(VariableStore store) {
+        VariableStore previous = CURRENT.get();
+        CURRENT.set(store != null ? store : new VariableStore(null));
+        return previous;
+    }
+
+    /**
+     * Starts the current thread with an empty store.
+     */
+    public static void reset() {
+        CURRENT.set(new VariableStore(null));
+    }
+
+    /**
+     * Wraps a task to be run by a worker thread, so that it works with a child of the current store.
+     *
+     * @param task task of the worker
+     * @param <T>  type returned by the task
+     * @return Callable
+     */
+    public static <T> Callable<T> inherit(Callable<T> task) {
+        VariableStore child = current().fork();
+        return () -> {
+            VariableStore previous = attach(child);
+            try {
+                return task.call();
+            } finally {
+                attach(previous);
+            }
+        };
+    }
+
+    /**
+     * Child store reading the variables of this one and saving its own ones locally. This store must not be
+     * modified while its children are in use.
+     *
+     * @return VariableStore
+     */
+    public VariableStore fork() {
+        return new VariableStore(this);
+    }
+
+    /**
+     * Copies the variables saved and removed in this child store to its parent, and clears it. Used when the
+     * work of a child has to be kept, i.e. the probe of a polling step that succeeded.
+     */
+    public void commit() {
+        if (parent == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            parent.put(entry.getKey(), entry.getValue() == REMOVED ? null : entry.getValue());
+        }
+        clear();
+    }
+
+    /**
+     * Saves a string variable.
+     *
+     * @param name  variable name
+     * @param value value, the variable is removed if null
+     */
+    public void set(String name, String value) {
+        put(name, value);
+    }
+
+    /**
+     * Saves a json variable, parsed only when read as a document.
+     *
+     * @param name variable name
+     * @param json json text, the variable is removed if null
+     */
+    public void setJson(String name, String json) {
+        put(name, json == null ? null : new Json(json));
+    }
+
+    /**
+     * Saves a binary variable.
+     *
+     * @param name  variable name
+     * @param value value, the variable is removed if null
+     */
+    public void setBytes(String name, byte[] value) {
+        put(name, value);
+    }
+
+    /**
+     * Saves a table variable.
+     *
+     * @param name  variable name
+     * @param table rows of the table, the variable is removed if null
+     */
+    public void setTable(String name, List<List<String>> table) {
+        List<List<String>> rows = null;
+        if (table != null) {
+            rows = new ArrayList<List<String>>(table.size());
+            for (List<String> row : table) {
+                rows.add(Collections.unmodifiableList(new ArrayList<String>(row)));
+            }
+            rows = Collections.unmodifiableList(rows);
+        }
+        put(name, rows);
+    }
+
+    /**
+     * Removes a variable.
+     *
+     * @param name variable name
+     */
+    public void remove(String name) {
+        put(name, null);
+    }
+
+    /**
+     * Whether the variable is saved.
+     *
+     * @param name variable name
+     * @return boolean
+     */
+    public boolean contains(String name) {
+        return lookup(name) != null;
+    }
+
+    /**
+     * String form of a variable.
+     *
+     * @param name variable name
+     * @return String, null if the variable is not saved
+     */
+    public String get(String name) {
+        Object value = lookup(name);
+        if (value == null || value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Json) {
+            return ((Json) value).text;
+        } else if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return new JSONArray((List<?>) value).toString();
+    }
+
+    /**
+     * Variable as a parsed json document. String variables are parsed as well.
+     *
+     * @param name variable name
+     * @return DocumentContext, read only, null if the variable is not saved
+     */
+    public DocumentContext getJson(String name) {
+        Object value = lookup(name);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Json) {
+            return ((Json) value).document();
+        }
+        return JsonDocumentUtil.INSTANCE.getJsonDocumentUtils().parse(get(name));
+    }
+
+    /**
+     * Variable as a byte array. Other variables are encoded as UTF-8.
+     *
+     * @param name variable name
+     * @return byte[], null if the variable is not saved
+     */
+    public byte[] getBytes(String name) {
+        Object value = lookup(name);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return get(name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Variable saved as a table.
+     *
+     * @param name variable name
+     * @return rows of the table, read only, null if the variable is not saved or is not a table
+     */
+    @SuppressWarnings("unchecked")
+    public List<List<String>> getTable(String name) {
+        Object value = lookup(name);
+        return value instanceof List ? (List<List<String>>) value : null;
+    }
+
+    /**
+     * Removes every variable saved in this store, the ones of the parent are kept.
+     */
+    public void clear() {
+        values.clear();
+        bytes = 0;
+        warned = false;
+    }
+
+    /**
+     * Number of variables saved in this store.
+     *
+     * @return int
+     */
+    public int size() {
+        int size = 0;
+        for (Object value : values.values()) {
+            if (value != REMOVED) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Approximate memory used by the variables saved in this store, in bytes.
+     *
+     * @return long
+     */
+    public long getMemoryBytes() {
+        return bytes;
+    }
+
+    private Object lookup(String name) {
+        Object value = values.get(name);
+        if (value == null) {
+            return parent != null ? parent.lookup(name) : ThreadProperty.get(name);
+        }
+        return value == REMOVED ? null : value;
+    }
+
+    private void put(String name, Object value) {
+        Object previous;
+        if (value == null && parent != null) {
+            previous = values.put(name, REMOVED);
+        } else if (value == null) {
+            previous = values.remove(name);
+            ThreadProperty.remove(name);
+        } else {
+            previous = values.put(name, value);
+        }
+        bytes += sizeOf(name, value) - sizeOf(name, previous);
+        if (!warned && bytes > WARN_BYTES) {
+            warned = true;
+            LOGGER.warn("Variables of scenario {} take about {} MB, the last one saved is {}",
+                    ThreadProperty.get("scenario"), bytes / (1024 * 1024), name);
+        }
+    }
+
+    static long sizeOf(String name, Object value) {
+        if (value == null || value == REMOVED) {
+            return 0;
+        }
+        return 32 + sizeOf(name) + sizeOf(value);
+    }
+
+    private static long sizeOf(Object value) {
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof Json) {
+            return 16 + sizeOf(((Json) value).text);
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        long size = 16;
+        for (Object row : (List<?>) value) {
+            size += 16;
+            for (Object cell : (List<?>) row) {
+                size += 8 + (cell != null ? sizeOf(cell) : 0);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Json text, parsed the first time it is read as a document.
+     */
+    private static final class Json {
+
+        private final String text;
+
+        private DocumentContext document;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        private DocumentContext document() {
+            if (document == null) {
+                document = JsonDocumentUtil.INSTANCE.getJsonDocumentUtils().parse(text);
+            }
+            return document;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunkTrailer;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunkTrailer;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+
+import java.util.Map;
+
+/**
+ * Netty handler measuring the size of compressed response bodies before they are decompressed.
+ *
+ * It sits between the http codec and the decompressor of the REST client pipeline. The compressed size is
+ * published in the {@link #WIRE_LENGTH_HEADER} header: directly in the response when it is received at once,
+ * or in the trailing headers when it is received in chunks. Uncompressed responses are not modified.
+ */
+public class WireSizeHandler extends SimpleChannelUpstreamHandler {
+
+    public static final String WIRE_LENGTH_HEADER = "X-Wire-Content-Length";
+
+    private static final String HANDLER_NAME = "wireSize";
+
+    private static final String INFLATER_HANDLER = "inflater";
+
+    private boolean compressed = false;
+
+    private long wireSize = 0;
+
+    /**
+     * Size of a response body as received.
+     *
+     * @param headerValue value of the {@link #WIRE_LENGTH_HEADER} header, null for uncompressed responses
+     * @param decodedSize size of the decoded body
+     * @return long
+     */
+    public static long getWireSize(String headerValue, long decodedSize) {
+        if (headerValue == null) {
+            return decodedSize;
+        }
+        try {
+            return Long.parseLong(headerValue.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Installs the handler before the decompressor of the pipeline, if there is one.
+     *
+     * @param pipeline REST client pipeline
+     */
+    public static void install(ChannelPipeline pipeline) {
+        if (pipeline.get(INFLATER_HANDLER) != null && pipeline.get(HANDLER_NAME) == null) {
+            pipeline.addBefore(INFLATER_HANDLER, HANDLER_NAME, new WireSizeHandler());
+        }
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object msg = e.getMessage();
+
+        if (msg instanceof HttpMessage) {
+            HttpMessage response = (HttpMessage) msg;
+            String encoding = response.headers().get("Content-Encoding");
+            compressed = encoding != null && !"identity".equalsIgnoreCase(encoding.trim());
+            wireSize = response.getContent().readableBytes();
+            if (compressed && !response.isChunked()) {
+                response.headers().set(WIRE_LENGTH_HEADER, String.valueOf(wireSize));
+            }
+        } else if (msg instanceof HttpChunk && compressed) {
+            HttpChunk chunk = (HttpChunk) msg;
+            wireSize += chunk.getContent().readableBytes();
+            if (chunk.isLast()) {
+                compressed = false;
+                if (chunk.getContent().readable()) {
+                    Channels.fireMessageReceived(ctx, new DefaultHttpChunk(chunk.getContent()), e.getRemoteAddress());
+                }
+                // The last chunk may be a shared immutable instance, a new trailer is sent instead
+                HttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
+                if (chunk instanceof HttpChunkTrailer) {
+                    for (Map.Entry<String, String> header : ((HttpChunkTrailer) chunk).trailingHeaders()) {
+                        trailer.trailingHeaders().add(header.getKey(), header.getValue());
+                    }
+                }
+                trailer.trailingHeaders().set(WIRE_LENGTH_HEADER, String.valueOf(wireSize));
+                Channels.fireMessageReceived(ctx, trailer, e.getRemoteAddress());
+                return;
+            }
+        }
+        ctx.sendUpstream(e);
+    }
+}
@@ -17,8 +17,12 @@ package com.stratio.qa.aspects;
 
 
 import com.stratio.qa.exceptions.IncludeException;
+import cucumber.runtime.io.Resource;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,6 +30,8 @@ import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 
 public class IncludeTagAspectTest {
@@ -141,4 +147,27 @@ public class IncludeTagAspectTest {
         inctag.exampleMultiloopLines(params, lines, 0);
         assertThat(lines).as("Test that @multiloop lines are created properly for multiple lists").containsExactly(expectedLines);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCachedLoopExpansion() throws Throwable {
+        File feature = File.createTempFile("cachedLoop", ".feature");
+        feature.deleteOnExit();
+        Files.write(feature.toPath(), ("Feature: cached loop\n\n  @loop(CACHED_LOOP_LIST,VAR)\n  Scenario: loop <VAR>\n"
+                + "    Given I run 'echo <VAR>' locally\n").getBytes(StandardCharsets.UTF_8));
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(feature.getPath());
+
+        System.setProperty("CACHED_LOOP_LIST", "a,b");
+        try {
+            String first = inctag.aroundAddLoopTagPointcutScenario(resource);
+            assertThat(first).as("Loop should be expanded").contains("| a | 0 |").contains("| b | 1 |");
+            assertThat(inctag.aroundAddLoopTagPointcutScenario(resource)).as("Expansion should not change").isEqualTo(first);
+
+            System.setProperty("CACHED_LOOP_LIST", "c");
+            assertThat(inctag.aroundAddLoopTagPointcutScenario(resource)).as("Expansion should follow the loop property")
+                    .contains("| c | 0 |").doesNotContain("| a | 0 |");
+        } finally {
+            System.clearProperty("CACHED_LOOP_LIST");
+        }
+    }
+}
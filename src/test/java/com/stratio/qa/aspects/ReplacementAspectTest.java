@@ -138,4 +138,20 @@ public class ReplacementAspectTest {
         assertThat(repAspect.replaceEnvironmentPlaceholders("${STRATIOBDD_ENV1}${STRATIOBDD_ENV2:-bb.bb}${STRATIOBDD_ENV3:-aa}", pjp)).as("Unexpected replacement").isEqualTo("aabb.bbcc");
         assertThat(repAspect.replaceEnvironmentPlaceholders("${STRATIOBDD_ENV1}${STRATIOBDD_ENV2:-bb}${STRATIOBDD_ENV3:-aa.aa}", pjp)).as("Unexpected replacement").isEqualTo("aabbcc");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void replaceNestedPlaceholdersTest() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        ThreadProperty.set("STRATIOBDD_LOCAL2", "LOCAL");
+        ProceedingJoinPoint pjp = null;
+        ReplacementAspect repAspect = new ReplacementAspect();
+        System.setProperty("STRATIOBDD_ENV6", "STRATIOBDD_LOCAL2");
+
+        assertThat(repAspect.replacedElement("!{${STRATIOBDD_ENV6}}", pjp)).as("Unexpected nested replacement").isEqualTo("LOCAL");
+        assertThat(repAspect.replacedElement("${STRATIOBDD_UNDEFINED:-${STRATIOBDD_ENV6.toLower}}", pjp)).as("Unexpected nested default")
+                .isEqualTo("stratiobdd_local2");
+        assertThat(repAspect.replacedElement("\\${STRATIOBDD_ENV6}:${STRATIOBDD_ENV6}", pjp)).as("Escaped placeholders should not be replaced")
+                .isEqualTo("${STRATIOBDD_ENV6}:STRATIOBDD_LOCAL2");
+        assertThatExceptionOfType(Exception.class).isThrownBy(() -> repAspect.replacedElement("${STRATIOBDD_ENV6", pjp));
+    }
+}
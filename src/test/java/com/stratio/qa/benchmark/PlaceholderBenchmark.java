@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.benchmark;
+
+import com.stratio.qa.exceptions.NonReplaceableException;
+import com.stratio.qa.utils.PlaceholderCacheUtils;
+import com.stratio.qa.utils.PlaceholderTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placeholder replacement of a DocString with two ${} placeholders every 60 characters: replacing them one by one
+ * in the whole string, as ReplacementAspect used to, against rendering the compiled template, with and without
+ * the template cache.
+ *
+ * java -cp test-classpath com.stratio.qa.benchmark.PlaceholderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaceholderBenchmark {
+
+    private static final PlaceholderTemplate.Resolver RESOLVER = (kind, name, defaultValue) -> System.getProperty(name, defaultValue);
+
+    @Param({"1", "10", "100"})
+    private int sizeKb;
+
+    private String docString;
+
+    private PlaceholderCacheUtils cache;
+
+    @Setup
+    public void setup() {
+        System.setProperty("BENCHMARK_HOST", "localhost");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < sizeKb * 1024; i++) {
+            System.setProperty("BENCHMARK_ID" + i, String.valueOf(i));
+            builder.append("{\"id\": ${BENCHMARK_ID").append(i).append("}, \"url\": \"http://${BENCHMARK_HOST}/items\"},\n");
+        }
+        docString = builder.toString();
+        cache = new PlaceholderCacheUtils();
+    }
+
+    @Benchmark
+    public String replaceLoop() {
+        return replaceOneByOne(docString);
+    }
+
+    @Benchmark
+    public String compileAndRender() throws NonReplaceableException {
+        return PlaceholderTemplate.compile(docString).render(RESOLVER);
+    }
+
+    @Benchmark
+    public String renderCached() throws NonReplaceableException {
+        return cache.getTemplate(docString).render(RESOLVER);
+    }
+
+    /**
+     * Replacement of ${} placeholders as done before the templates were compiled.
+     */
+    private static String replaceOneByOne(String element) {
+        String newVal = element;
+        while (newVal.contains("${")) {
+            String placeholder = newVal.substring(newVal.indexOf("${"), newVal.indexOf("}", newVal.indexOf("${")) + 1);
+            String sysProp = placeholder.substring(2, placeholder.length() - 1);
+            newVal = newVal.replace(placeholder, System.getProperty(sysProp));
+        }
+        return newVal;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PlaceholderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.benchmark;
+
+import com.stratio.qa.cucumber.testng.CucumberRunner;
+import cucumber.api.CucumberOptions;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Field;
+
+/**
+ * Startup benchmark comparing load time weaving and compile time weaving (woven profile).
+ *
+ * Each execution measures a fresh JVM: time until the runner is built, time to run a feature going through
+ * every tag aspect, loaded classes and used metaspace. Run it several times in each mode, i.e.
+ *
+ * java -javaagent:aspectjweaver.jar -cp default-classpath com.stratio.qa.benchmark.StartupBenchmark
+ * java -cp woven-classpath com.stratio.qa.benchmark.StartupBenchmark
+ */
+@CucumberOptions(features = "src/test/resources/features/ignored.feature")
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long mainStart = System.currentTimeMillis();
+
+        CucumberRunner runner = new CucumberRunner(StartupBenchmark.class);
+        long runnerReady = System.currentTimeMillis();
+        runner.runCukes();
+        long finished = System.currentTimeMillis();
+
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        System.out.println(String.format("mode=%s jvmToMainMs=%d runnerMs=%d runMs=%d totalMs=%d loadedClasses=%d metaspaceKb=%d",
+                mode(), mainStart - jvmStart, runnerReady - mainStart, finished - runnerReady, finished - jvmStart,
+                classLoading.getTotalLoadedClassCount(), metaspace() / 1024));
+    }
+
+    private static String mode() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-javaagent") && argument.contains("aspectjweaver")) {
+                return "load-time";
+            }
+        }
+        try {
+            for (Field field : Class.forName("gherkin.formatter.model.Scenario").getDeclaredFields()) {
+                if (field.getName().startsWith("ajc$")) {
+                    return "compile-time";
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            return "unknown";
+        }
+        return "none";
+    }
+
+    private static long metaspace() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+}
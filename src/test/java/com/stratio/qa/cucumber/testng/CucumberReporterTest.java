@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Tag;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CucumberReporterTest {
+
+    @Test
+    public void mergeTest() throws Exception {
+        File dir = Files.createTempDirectory("reporter").toFile();
+        String url = dir.getAbsolutePath() + File.separator;
+
+        CucumberReporter main = new CucumberReporter(url, "MergeTest", "");
+        CucumberReporter first = new CucumberReporter(url, "MergeTest", "");
+        CucumberReporter second = new CucumberReporter(url, "MergeTest", "");
+        first.feature(feature("first"));
+        second.feature(feature("second"));
+
+        main.merge(first);
+        main.merge(second);
+        main.done();
+
+        String testng = new String(Files.readAllBytes(new File(dir, "MergeTestTESTNG.xml").toPath()), StandardCharsets.UTF_8);
+        assertThat(testng.split("<class name=\"MergeTest\"").length - 1).as("Unexpected number of merged features").isEqualTo(2);
+        String junit = new String(Files.readAllBytes(new File(dir, "MergeTestJUNIT.xml").toPath()), StandardCharsets.UTF_8);
+        assertThat(junit).as("Suite should be named after the last merged feature").contains("MergeTest.second");
+    }
+
+    private Feature feature(String name) {
+        return new Feature(new ArrayList<Comment>(), new ArrayList<Tag>(), "Feature", name, "", 1, name);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.Step;
+import org.testng.annotations.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DaemonReporterTest {
+
+    @Test
+    public void streamResultsTest() {
+        StringWriter output = new StringWriter();
+        DaemonReporter reporter = new DaemonReporter(new PrintWriter(output));
+        Scenario scenario = mock(Scenario.class);
+        when(scenario.getName()).thenReturn("daemon scenario");
+
+        reporter.startOfScenarioLifeCycle(scenario);
+        reporter.step(step("I run 'ls' locally"));
+        reporter.step(step("the command output contains 'x'"));
+        reporter.result(result(Result.PASSED, null));
+        reporter.result(result(Result.FAILED, new AssertionError("expected x")));
+        reporter.endOfScenarioLifeCycle(scenario);
+
+        assertThat(output.toString()).as("Unexpected streamed results")
+                .contains("  Scenario: daemon scenario")
+                .contains("    [passed] Given I run 'ls' locally")
+                .contains("    [failed] Given the command output contains 'x'")
+                .contains("      expected x");
+        assertThat(reporter.getScenarios()).as("Unexpected scenarios").isEqualTo(1);
+        assertThat(reporter.getFailedScenarios()).as("Unexpected failed scenarios").isEqualTo(1);
+    }
+
+    private Step step(String name) {
+        Step step = mock(Step.class);
+        when(step.getKeyword()).thenReturn("Given ");
+        when(step.getName()).thenReturn(name);
+        return step;
+    }
+
+    private Result result(String status, Throwable error) {
+        Result result = mock(Result.class);
+        when(result.getStatus()).thenReturn(status);
+        when(result.getError()).thenReturn(error);
+        return result;
+    }
+}
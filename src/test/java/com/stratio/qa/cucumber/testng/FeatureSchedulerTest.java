@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeatureSchedulerTest {
+
+    @Test
+    public void longestFirstTest() {
+        List<Integer> order = FeatureScheduler.longestFirst(new long[]{10, 50, 10, 30});
+        assertThat(order).as("Features should be ordered longest first, keeping ties in order").containsExactly(1, 3, 0, 2);
+    }
+
+    @Test
+    public void binPackTest() {
+        List<List<Integer>> shards = FeatureScheduler.binPack(new long[]{70, 20, 40, 30, 10, 30}, 2);
+        assertThat(shards).as("Unexpected number of shards").hasSize(2);
+        assertThat(shards.get(0)).as("Unexpected features in the first shard").containsExactly(0, 5);
+        assertThat(shards.get(1)).as("Unexpected features in the second shard").containsExactly(2, 3, 1, 4);
+    }
+
+    @Test
+    public void binPackMoreShardsThanFeaturesTest() {
+        List<List<Integer>> shards = FeatureScheduler.binPack(new long[]{5, 15}, 3);
+        assertThat(shards).as("Unexpected number of shards").hasSize(3);
+        assertThat(shards.get(0)).as("Every feature should be assigned to one shard").containsExactly(1);
+        assertThat(shards.get(1)).as("Every feature should be assigned to one shard").containsExactly(0);
+        assertThat(shards.get(2)).as("Extra shards should be empty").isEmpty();
+    }
+
+    @Test
+    public void estimateByFeatureTest() {
+        Map<String, Long> login = new HashMap<String, Long>();
+        login.put("Login", 100L);
+        login.put("Login [admin]", 10L);
+        login.put("Login [guest]", 20L);
+        login.put("Login admin", 1000L);
+        Map<String, Long> other = new HashMap<String, Long>();
+        other.put("Login", 5000L);
+        Map<String, Map<String, Long>> durations = new HashMap<String, Map<String, Long>>();
+        durations.put("Users", login);
+        durations.put("Other", other);
+        FeatureScheduler scheduler = new FeatureScheduler(durations);
+        assertThat(scheduler.estimate("Users", "Login")).as("Only the scenario and its examples should be added up")
+                .isEqualTo(130L);
+        assertThat(scheduler.estimate("Users", "Logout")).as("Unknown scenarios should not be estimated").isEqualTo(-1L);
+        assertThat(scheduler.estimate("Unknown", "Login")).as("Unknown features should not be estimated").isEqualTo(-1L);
+    }
+
+    @Test
+    public void estimateWithoutFeatureTest() {
+        Map<String, Long> legacy = new HashMap<String, Long>();
+        legacy.put("Login", 100L);
+        Map<String, Map<String, Long>> durations = new HashMap<String, Map<String, Long>>();
+        durations.put("", legacy);
+        FeatureScheduler scheduler = new FeatureScheduler(durations);
+        assertThat(scheduler.estimate("Users", "Login")).as("Reports without features should still be used")
+                .isEqualTo(100L);
+    }
+
+    @Test
+    public void fromReportsTest() throws Exception {
+        File dir = Files.createTempDirectory("history").toFile();
+        File node = new File(dir, "node1");
+        node.mkdirs();
+        Files.write(new File(node, "LoginIT.featureTESTNG.xml").toPath(), ("<testng-results><suite><test><class>"
+                + "<test-method name=\"Login\" duration-ms=\"300\"/></class></test></suite></testng-results>")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(node, "LoginIT.featureDURATIONS.json").toPath(), "{\"Users\": {\"Login\": 100}, \"Other\": {\"Login\": 200}}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        FeatureScheduler scheduler = FeatureScheduler.fromReports(dir);
+        assertThat(scheduler.estimate("Users", "Login")).as("Durations should be read by feature").isEqualTo(100L);
+        assertThat(scheduler.estimate("Other", "Login")).as("Durations should be read by feature").isEqualTo(200L);
+        assertThat(scheduler.estimate("Unknown", "Login")).as("TESTNG reports should be used for other features")
+                .isEqualTo(300L);
+    }
+
+    @Test
+    public void splitByNameTest() {
+        List<String> paths = Arrays.asList("d.feature", "a.feature", "c.feature", "b.feature", "e.feature");
+        List<List<Integer>> shards = FeatureScheduler.splitByName(paths, new long[]{10, 10, 10, 10, 50}, 2);
+        assertThat(shards.get(0)).as("Unexpected features in the first shard").containsExactly(4, 1, 2);
+        assertThat(shards.get(1)).as("Unexpected features in the second shard").containsExactly(3, 0);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import com.stratio.qa.processor.GlueIndexProcessor;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GlueIndexTest {
+
+    private final GlueIndex index = new GlueIndex(Arrays.asList(
+            new String[]{GlueIndexProcessor.STEP, "com.stratio.qa.specs.GivenGSpec"},
+            new String[]{GlueIndexProcessor.HOOK, "com.stratio.qa.specs.HookGSpec"},
+            new String[]{GlueIndexProcessor.STEP, "com.stratio.qa.specsextra.OtherSpec"},
+            new String[]{GlueIndexProcessor.FORMATTER, "com.stratio.qa.utils.CukesGHooks"}));
+
+    @Test
+    public void getClassNamesByPackageTest() {
+        assertThat(index.getClassNames("com.stratio.qa.specs", GlueIndexProcessor.STEP, GlueIndexProcessor.HOOK))
+                .as("Only the glue classes of the package should be returned")
+                .containsExactly("com.stratio.qa.specs.GivenGSpec", "com.stratio.qa.specs.HookGSpec");
+    }
+
+    @Test
+    public void getClassNamesByKindTest() {
+        assertThat(index.getClassNames("com.stratio.qa", GlueIndexProcessor.FORMATTER))
+                .as("Only the formatters should be returned").containsExactly("com.stratio.qa.utils.CukesGHooks");
+        assertThat(index.getClassNames("com.stratio.qa.unknown", GlueIndexProcessor.STEP))
+                .as("Unknown packages should not have classes").isEmpty();
+    }
+
+    @Test
+    public void getKindTest() {
+        assertThat(index.getKind("com.stratio.qa.specs.HookGSpec")).as("Unexpected kind").isEqualTo(GlueIndexProcessor.HOOK);
+        assertThat(index.getKind("com.stratio.qa.specs.Unknown")).as("Unknown classes should not have a kind").isNull();
+    }
+}
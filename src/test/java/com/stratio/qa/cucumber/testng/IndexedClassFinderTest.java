@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import com.stratio.qa.processor.GlueIndexProcessor;
+import cucumber.runtime.io.Resource;
+import cucumber.runtime.io.ResourceLoader;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexedClassFinderTest {
+
+    @Test
+    public void indexedAndUnindexedClassesTest() {
+        String packageName = "com.stratio.qa.cucumber.testng";
+        List<Resource> resources = Arrays.asList(
+                resource(packageName + ".GlueIndexTest"),
+                resource(packageName + ".FeatureSchedulerTest"),
+                resource(packageName + ".IndexedClassFinderTest"),
+                resource(packageName + ".RemovedSpec"));
+        ResourceLoader resourceLoader = mock(ResourceLoader.class);
+        when(resourceLoader.resources("classpath:com/stratio/qa/cucumber/testng", ".class")).thenReturn(resources);
+        GlueIndex index = new GlueIndex(Arrays.asList(
+                new String[]{GlueIndexProcessor.STEP, packageName + ".GlueIndexTest"},
+                new String[]{GlueIndexProcessor.CLASS, packageName + ".FeatureSchedulerTest"},
+                new String[]{GlueIndexProcessor.HOOK, packageName + ".DeletedSpec"}));
+        IndexedClassFinder finder = new IndexedClassFinder(resourceLoader, getClass().getClassLoader(), index);
+
+        assertThat(finder.getDescendants(Object.class, packageName))
+                .as("Indexed glue and unindexed classes should be loaded, and the rest skipped")
+                .containsExactly(new Class<?>[]{GlueIndexTest.class, IndexedClassFinderTest.class});
+    }
+
+    private Resource resource(String className) {
+        Resource resource = mock(Resource.class);
+        when(resource.getClassName(".class")).thenReturn(className);
+        return resource;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportMergerTest {
+
+    @Test
+    public void mergeTestNGTest() throws Exception {
+        File dir = Files.createTempDirectory("merger").toFile();
+        File first = write(dir, "RunnerSHARD0TESTNG.xml", "<testng-results total=\"1\" passed=\"1\" failed=\"0\" skipped=\"0\">"
+                + "<suite duration-ms=\"100.0\"><test duration-ms=\"100.0\"><class name=\"Runner\">"
+                + "<test-method name=\"first\" status=\"PASS\" duration-ms=\"100.0\"/></class></test></suite></testng-results>");
+        File second = write(dir, "RunnerSHARD1TESTNG.xml", "<testng-results total=\"2\" passed=\"1\" failed=\"1\" skipped=\"0\">"
+                + "<suite duration-ms=\"50.0\"><test duration-ms=\"50.0\"><class name=\"Runner\">"
+                + "<test-method name=\"second\" status=\"PASS\" duration-ms=\"20.0\"/>"
+                + "<test-method name=\"third\" status=\"FAIL\" duration-ms=\"30.0\"/></class></test></suite></testng-results>");
+        File output = new File(dir, "RunnerTESTNG.xml");
+
+        ReportMerger.merge(Arrays.asList(first, second), output);
+
+        String merged = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        assertThat(merged).as("Totals should be added up").contains("total=\"3\"").contains("passed=\"2\"").contains("failed=\"1\"");
+        assertThat(merged).as("Durations should be added up").contains("duration-ms=\"150.0\"");
+        assertThat(merged.split("<class name=\"Runner\"").length - 1).as("Unexpected number of merged classes").isEqualTo(2);
+        assertThat(merged.indexOf("\"first\"")).as("Shards should be merged in order").isLessThan(merged.indexOf("\"third\""));
+    }
+
+    @Test
+    public void mergeJUnitTest() throws Exception {
+        File dir = Files.createTempDirectory("merger").toFile();
+        File first = write(dir, "RunnerSHARD0JUNIT.xml", "<testsuites><testsuite name=\"Runner.a\" tests=\"1\" failures=\"0\" errors=\"0\""
+                + " skipped=\"0\" time=\"0.1\"><testcase name=\"first\" classname=\"Runner\" time=\"0.1\"/></testsuite></testsuites>");
+        File second = write(dir, "RunnerSHARD1JUNIT.xml", "<testsuites><testsuite name=\"Runner.b\" tests=\"1\" failures=\"1\" errors=\"1\""
+                + " skipped=\"0\" time=\"0.25\"><testcase name=\"second\" classname=\"Runner\" time=\"0.25\"/></testsuite></testsuites>");
+        File output = new File(dir, "RunnerJUNIT.xml");
+
+        ReportMerger.main(new String[]{output.getPath(), dir.getPath()});
+
+        String merged = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        assertThat(merged).as("Totals should be added up").contains("tests=\"2\"").contains("failures=\"1\"").contains("time=\"0.35\"");
+        assertThat(merged).as("Test cases of every shard should be merged").contains("\"first\"").contains("\"second\"");
+    }
+
+    private File write(File dir, String name, String content) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.cucumber.testng;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingXmlReportTest {
+
+    private static final String[] CONTAINERS = {"testng-results", "suite", "test"};
+
+    @Test
+    public void streamedReportIsIdenticalToDocumentTest() throws Exception {
+        File dir = Files.createTempDirectory("streaming").toFile();
+        File target = new File(dir, "StreamingTESTNG.xml");
+        StreamingXmlReport main = new StreamingXmlReport(target, CONTAINERS, "class");
+        StreamingXmlReport other = new StreamingXmlReport(target, CONTAINERS, "class");
+
+        Document whole = newDocument();
+        Element test = appendContainers(whole);
+        int position = 0;
+        for (int clazz = 0; clazz < 4; clazz++) {
+            StreamingXmlReport report = clazz < 2 ? main : other;
+            Element group = whole.createElement("class");
+            group.setAttribute("name", "Class" + clazz);
+            test.appendChild(group);
+            report.openGroup(group);
+            for (int i = 0; i < (clazz == 1 ? 0 : 2); i++, position++) {
+                group.appendChild(testMethod(whole, position));
+                Document entry = report.newEntryDocument();
+                report.getEntryParent(entry).appendChild(testMethod(entry, position));
+                report.append(entry);
+            }
+            if (clazz == 0) {
+                File[] partials = dir.listFiles((d, name) -> name.endsWith(".partial"));
+                assertThat(partials).as("Unexpected spool files").hasSize(1);
+                Document partial = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(partials[0]);
+                assertThat(partial.getElementsByTagName("test-method").getLength()).as("Spool should be well formed").isEqualTo(2);
+            }
+            // Released after every class, as the reporter of a feature is, and opened again by the next one
+            report.close();
+        }
+        main.append(other);
+
+        whole.getDocumentElement().setAttribute("total", String.valueOf(position));
+        Document containers = newDocument();
+        appendContainers(containers);
+        containers.getDocumentElement().setAttribute("total", String.valueOf(position));
+        main.finish(containers);
+
+        String streamed = new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8);
+        assertThat(streamed).as("Streamed report differs from the serialized document").isEqualTo(serialize(whole));
+        assertThat(dir.listFiles((d, name) -> name.endsWith(".partial"))).as("Spool files should be deleted").isEmpty();
+    }
+
+    @Test
+    public void emptyReportTest() throws Exception {
+        File target = new File(Files.createTempDirectory("streaming").toFile(), "EmptyJUNIT.xml");
+        StreamingXmlReport report = new StreamingXmlReport(target, new String[]{"testsuites", "testsuite"}, null);
+
+        Document containers = newDocument();
+        containers.appendChild(containers.createElement("testsuites")).appendChild(containers.createElement("testsuite"));
+        String expected = serialize(containers);
+        report.finish(containers);
+
+        assertThat(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).as("Unexpected empty report").isEqualTo(expected);
+    }
+
+    private Element testMethod(Document document, int position) {
+        Element testMethod = document.createElement("test-method");
+        testMethod.setAttribute("name", "Scenario <" + position + ">");
+        testMethod.setAttribute("status", position % 2 == 0 ? "PASS" : "FAIL");
+        Element message = document.createElement("message");
+        message.appendChild(document.createCDATASection("\r\n<pre>\r\nfailed " + position + "\r\n</pre>\r\n"));
+        testMethod.appendChild(message);
+        return testMethod;
+    }
+
+    private Document newDocument() throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    }
+
+    private Element appendContainers(Document document) {
+        Element results = document.createElement("testng-results");
+        Element suite = document.createElement("suite");
+        Element test = document.createElement("test");
+        document.appendChild(results);
+        results.appendChild(suite);
+        suite.appendChild(test);
+        return test;
+    }
+
+    private String serialize(Document document) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        StringWriter writer = new StringWriter();
+        transformer.transform(new DOMSource(document), new StreamResult(writer));
+        return writer.toString();
+    }
+}
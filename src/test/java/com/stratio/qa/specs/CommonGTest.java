@@ -17,6 +17,7 @@ package com.stratio.qa.specs;
 
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
+import com.stratio.qa.utils.HttpResponse;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
 import org.hjson.JsonObject;
@@ -29,6 +30,8 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -308,6 +311,23 @@ public class CommonGTest {
         assertThat(modifiedData).as("Unexpected modified data").isEqualTo(expectedData);
     }
 
+    @Test
+    public void modifyDataCachedHeaderTest() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        String data = "{\"key1\":\"value1\",\"key2\":\"value2\"}";
+        String type = "json";
+        List<List<String>> rawData = Arrays.asList(Arrays.asList("key1", "DELETE", "N/A"), Arrays.asList("Authorization", "HEADER", "token"));
+
+        CommonG first = new CommonG();
+        String firstData = first.modifyData(data, type, DataTable.create(rawData));
+        CommonG second = new CommonG();
+        String secondData = second.modifyData(data, type, DataTable.create(rawData));
+
+        assertThat(secondData).as("Unexpected modified data").isEqualTo(firstData);
+        JSONAssert.assertEquals("{\"key2\":\"value2\"}", secondData, false);
+        assertThat(second.getHeaders()).as("Headers should be applied for cached bodies").containsEntry("Authorization", "token");
+    }
+
     @Test
     public void modifyDataAddStringTest() throws Exception {
         ThreadProperty.set("class", this.getClass().getCanonicalName());
@@ -1375,4 +1395,34 @@ public class CommonGTest {
         CommonG commong = new CommonG();
         assertThat(false).isEqualTo(commong.cookieExists(cookieName));
     }
+
+    @Test
+    public void testSetResponseDeletesSpilledBody() throws Exception {
+        File spilled = File.createTempFile("bdt-response-", ".tmp");
+        HttpResponse first = new HttpResponse(200, null, null);
+        first.setResponseFile(spilled, StandardCharsets.UTF_8);
+        CommonG commong = new CommonG();
+        commong.setResponse(first);
+        commong.setResponse(new HttpResponse(200, "second", null));
+
+        assertThat(spilled).as("Spilled body of the replaced response not deleted").doesNotExist();
+        assertThat(commong.getResponse().getResponse()).as("Unexpected response").isEqualTo("second");
+    }
+
+    @Test
+    public void testLoadRequestsValidation() throws Exception {
+        CommonG commong = new CommonG();
+        try {
+            commong.generateConcurrentRequests("GET", "/", "", "json", 10, 0);
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).as("Unexpected error").contains("Concurrency must be at least 1");
+        }
+        try {
+            commong.generateRequestsAtRate("GET", "/", "", "json", 10, 0);
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).as("Unexpected error").contains("Rate must be at least 1");
+        }
+    }
 }
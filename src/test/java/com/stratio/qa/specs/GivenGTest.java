@@ -16,6 +16,7 @@
 package com.stratio.qa.specs;
 
 import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.VariableStore;
 import cucumber.api.DataTable;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -51,7 +52,7 @@ public class GivenGTest {
             fail("Error parsing JSON String");
         }
 
-        assertThat(ThreadProperty.get(envVar)).as("Not correctly ordered").isEqualTo("stratiopaaslogs-2016-07-26");
+        assertThat(VariableStore.current().get(envVar)).as("Not correctly ordered").isEqualTo("stratiopaaslogs-2016-07-26");
     }
 
 
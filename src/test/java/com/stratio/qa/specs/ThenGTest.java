@@ -15,6 +15,7 @@
  */
 package com.stratio.qa.specs;
 
+import com.stratio.qa.utils.HttpResponse;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
 import org.testng.annotations.Test;
@@ -272,4 +273,34 @@ public class ThenGTest {
         theng.checkValue(ThreadProperty.get(envVar), "is lower than", "1O");
     }
 
+    @Test
+    public void testResponseMatches() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        ThenGSpec theng = new ThenGSpec(commong);
+
+        commong.setResponse(new HttpResponse(200, "{\"id\":\"1\",\"name\":\"stratio\",\"tags\":[\"a\",\"b\"]}", null));
+
+        List<String> row1 = Arrays.asList("$.id", "equal", "1");
+        List<String> row2 = Arrays.asList("$.name", "contains", "rat");
+        List<String> row3 = Arrays.asList("$.tags", "size", "2");
+
+        theng.assertResponseMatches(DataTable.create(Arrays.asList(row1, row2, row3)));
+    }
+
+    @Test(expectedExceptions = AssertionError.class, expectedExceptionsMessageRegExp = "(?s)^2 of 3 expressions did not match:\n'\\$.id' equal '2'.*'\\$.missing' equal 'value'.*")
+    public void testResponseMatchesReportsAllMismatches() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        ThenGSpec theng = new ThenGSpec(commong);
+
+        commong.setResponse(new HttpResponse(200, "{\"id\":\"1\",\"name\":\"stratio\"}", null));
+
+        List<String> row1 = Arrays.asList("$.id", "equal", "2");
+        List<String> row2 = Arrays.asList("$.name", "equal", "stratio");
+        List<String> row3 = Arrays.asList("$.missing", "equal", "value");
+
+        theng.assertResponseMatches(DataTable.create(Arrays.asList(row1, row2, row3)));
+    }
+
 }
@@ -16,6 +16,7 @@
 package com.stratio.qa.specs;
 
 import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.VariableStore;
 import org.testng.annotations.Test;
 
 import java.nio.file.Files;
@@ -48,7 +49,7 @@ public class WhenGTest {
         CommonG commong = new CommonG();
         WhenGSpec wheng = new WhenGSpec(commong);
 
-        ThreadProperty.set(envVar, jsonString);
+        VariableStore.current().set(envVar, jsonString);
 
         try {
             wheng.sortElements(envVar, "alphabetical", "ascending");
@@ -56,7 +57,7 @@ public class WhenGTest {
             fail("Error parsing JSON String");
         }
 
-        String value = ThreadProperty.get(envVar);
+        String value = VariableStore.current().get(envVar);
 
         assertThat(value).as("Not correctly ordered").isEqualTo(jsonStringAscending);
     }
@@ -77,7 +78,7 @@ public class WhenGTest {
         CommonG commong = new CommonG();
         WhenGSpec wheng = new WhenGSpec(commong);
 
-        ThreadProperty.set(envVar, jsonString);
+        VariableStore.current().set(envVar, jsonString);
 
         try {
             wheng.sortElements(envVar, "alphabetical", "descending");
@@ -85,7 +86,7 @@ public class WhenGTest {
             fail("Error parsing JSON String");
         }
 
-        String value = ThreadProperty.get(envVar);
+        String value = VariableStore.current().get(envVar);
 
         assertThat(value).as("Not correctly ordered").isEqualTo(jsonStringDescending);
     }
@@ -105,7 +106,7 @@ public class WhenGTest {
 
         wheng.readFileToVariable(baseData, type, envVar, modifications);
 
-        String envVarResult = ThreadProperty.get(envVar);
+        String envVarResult = VariableStore.current().get(envVar);
         String expectedResult = "{\"key1\":\"new_value\",\"key2\":[[\"new_value\"]],\"key3\":{\"key3_2\":\"value3_2\",\"key3_1\":\"value3_1\"}}";
 
         assertThat(envVarResult).as("Not as expected").isEqualTo(expectedResult);
@@ -126,10 +127,44 @@ public class WhenGTest {
 
         wheng.readFileToVariable(baseData, type, envVar, modifications);
 
-        String envVarResult = ThreadProperty.get(envVar);
+        String envVarResult = VariableStore.current().get(envVar);
         String expectedResult = "bar = bar";
 
         assertThat(envVarResult).as("Not as expected").isEqualTo(expectedResult);
     }
 
+    @Test
+    public void testSendParallelRequestsMissingColumns() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        WhenGSpec wheng = new WhenGSpec(commong);
+        List<List<String>> rawData = Arrays.asList(Arrays.asList("endpoint", "status"), Arrays.asList("/health", "200"));
+        DataTable requests = DataTable.create(rawData);
+
+        try {
+            wheng.sendParallelRequests(requests);
+            fail("Expected Exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage()).as("Unexpected exception message").isEqualTo("Columns 'method' and 'endpoint' are mandatory");
+        }
+    }
+
+    @Test
+    public void testSendParallelRequestsInvalidRequestType() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        commong.setRestHost("localhost");
+        commong.setRestPort(":80");
+        WhenGSpec wheng = new WhenGSpec(commong);
+        List<List<String>> rawData = Arrays.asList(Arrays.asList("method", "endpoint", "status"),
+                Arrays.asList("MYREQUEST", "/health", "200"));
+        DataTable requests = DataTable.create(rawData);
+
+        try {
+            wheng.sendParallelRequests(requests);
+            fail("Expected Exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage()).as("Unexpected exception message").isEqualTo("Operation not valid: MYREQUEST");
+        }
+    }
 }
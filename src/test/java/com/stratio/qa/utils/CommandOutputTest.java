@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandOutputTest {
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pumpTest() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("line ").append(i).append("\r\n");
+        }
+        List<String> lines = new ArrayList<String>();
+        try (CommandOutput output = new CommandOutput(1024 * 1024)) {
+            boolean stopped = output.pump(stream(text.toString()), line -> !lines.add(line));
+
+            assertThat(stopped).as("Reading stopped").isFalse();
+            assertThat(output.getText()).as("Unexpected output").isEqualTo(text.toString());
+            assertThat(output.isTruncated()).as("Output truncated").isFalse();
+            assertThat(output.getSpillNote()).as("Unexpected spill note").isEmpty();
+            assertThat(lines).as("Unexpected number of lines").hasSize(10000);
+            assertThat(lines.get(9999)).as("Unexpected last line").isEqualTo("line 9999");
+        }
+    }
+
+    @Test
+    public void stopTest() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        try (CommandOutput output = new CommandOutput(1024)) {
+            boolean stopped = output.pump(stream("starting\nready\nrunning\n"), line -> lines.add(line) && line.contains("ready"));
+
+            assertThat(stopped).as("Reading not stopped").isTrue();
+            assertThat(lines).as("Lines read after the match").containsExactly("starting", "ready");
+        }
+    }
+
+    @Test
+    public void lastLineTest() throws Exception {
+        try (CommandOutput output = new CommandOutput(1024)) {
+            boolean stopped = output.pump(stream("first\nlast"), line -> line.equals("last"));
+
+            assertThat(stopped).as("Line without terminator not notified").isTrue();
+        }
+    }
+
+    @Test
+    public void spillTest() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        File spillFile;
+        try (CommandOutput output = new CommandOutput(100)) {
+            output.pump(stream(text.toString()), null);
+            spillFile = output.getSpillFile();
+
+            assertThat(output.isTruncated()).as("Output not truncated").isTrue();
+            assertThat(output.getSize()).as("Unexpected size").isEqualTo((long) text.length());
+            assertThat(output.getText()).as("Unexpected text in memory").isEqualTo(text.substring(0, 100));
+            assertThat(output.getSpillNote()).as("Unexpected spill note")
+                    .isEqualTo((text.length() - 100) + " more bytes in " + spillFile.getAbsolutePath());
+            assertThat(output.contains("line 2")).as("Text in memory not found").isTrue();
+            assertThat(output.contains("line 999\n")).as("Spilled text not found").isTrue();
+            assertThat(output.contains("line 1000")).as("Missing text found").isFalse();
+        }
+        assertThat(spillFile.exists()).as("Spilled output not deleted").isFalse();
+    }
+
+    @Test
+    public void containsAcrossSpillTest() throws Exception {
+        try (CommandOutput output = new CommandOutput(10)) {
+            output.pump(stream("0123456789abcdef"), null);
+
+            assertThat(output.contains("789abc")).as("Text across memory and disk not found").isTrue();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvidenceUtilsTest {
+
+    @Test
+    public void compressedSourceTest() throws Exception {
+        File dir = Files.createTempDirectory("evidence").toFile();
+        EvidenceUtils evidences = new EvidenceUtils(true, 1024 * 1024, 2, 4);
+
+        String path = evidences.writeSource(new File(dir, "page.html").getPath(), "<html>página</html>");
+        assertThat(evidences.flush(10000)).as("Evidences should be written").isTrue();
+
+        assertThat(path).as("Unexpected evidence path").endsWith("page.html.gz");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(new File(path).toPath()))) {
+            assertThat(new String(readAll(in), StandardCharsets.UTF_8)).as("Unexpected page source").isEqualTo("<html>página</html>");
+        }
+    }
+
+    @Test
+    public void duplicatedEvidenceTest() throws Exception {
+        File dir = Files.createTempDirectory("evidence").toFile();
+        EvidenceUtils evidences = new EvidenceUtils(false, 1024 * 1024, 1, 4);
+        File capture = new File(dir, "capture.tmp");
+        Files.write(capture.toPath(), new byte[]{1, 2, 3});
+
+        String first = evidences.writeCapture(new File(dir, "first.png").getPath(), capture);
+        String second = evidences.writeCapture(new File(dir, "second.png").getPath(), capture);
+        evidences.writeSource(new File(dir, "page.html").getPath(), "<html/>");
+        assertThat(evidences.flush(10000)).as("Evidences should be written").isTrue();
+
+        assertThat(second).as("Identical capture should return the path of the first one").isEqualTo(first);
+
+        assertThat(new File(dir, "first.png")).as("First capture should be written").exists();
+        assertThat(new File(dir, "second.png")).as("Identical capture should not be written").doesNotExist();
+        assertThat(new File(dir, "page.html")).as("Page source should be written").exists();
+    }
+
+    @Test
+    public void scenarioSizeLimitTest() throws Exception {
+        File dir = Files.createTempDirectory("evidence").toFile();
+        EvidenceUtils evidences = new EvidenceUtils(false, 10, 1, 8);
+
+        String[] paths = new String[5];
+        for (int i = 0; i < 5; i++) {
+            paths[i] = evidences.writeSource(new File(dir, i + ".html").getPath(), "<p>" + i + "</p>");
+        }
+        assertThat(evidences.flush(10000)).as("Evidences should be written").isTrue();
+
+        assertThat(paths[0]).as("Unexpected evidence path").endsWith("0.html");
+        assertThat(paths[1]).as("Discarded evidence should return an empty path").isEmpty();
+
+        assertThat(new File(dir, "0.html")).as("First evidence should be written").exists();
+        assertThat(dir.listFiles()).as("Evidences over the limit should be discarded").hasSize(1);
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
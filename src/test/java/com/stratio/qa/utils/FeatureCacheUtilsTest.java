@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeatureCacheUtilsTest {
+
+    private String previous;
+
+    @BeforeMethod
+    public void enableCache() {
+        previous = System.setProperty("FEATURE_CACHE", "true");
+    }
+
+    @AfterMethod
+    public void restoreCache() {
+        if (previous == null) {
+            System.clearProperty("FEATURE_CACHE");
+        } else {
+            System.setProperty("FEATURE_CACHE", previous);
+        }
+    }
+
+    @Test
+    public void keyTest() {
+        FeatureCacheUtils cache = new FeatureCacheUtils();
+        Map<String, byte[]> includes = new HashMap<>();
+        includes.put("included.feature", "first".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("LIST", "a,b");
+        String key = cache.key("Feature: test", includes, properties);
+
+        assertThat(cache.key("Feature: test", includes, properties)).as("Key should be stable").isEqualTo(key);
+        assertThat(cache.key("Feature: other", includes, properties)).as("Key should depend on the source").isNotEqualTo(key);
+        includes.put("included.feature", "second".getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.key("Feature: test", includes, properties)).as("Key should depend on the includes").isNotEqualTo(key);
+        includes.put("included.feature", "first".getBytes(StandardCharsets.UTF_8));
+        properties.put("LIST", "a,c");
+        assertThat(cache.key("Feature: test", includes, properties)).as("Key should depend on the properties").isNotEqualTo(key);
+        properties.put("LIST", null);
+        assertThat(cache.key("Feature: test", includes, properties)).as("Undefined properties should be told apart")
+                .isNotEqualTo(cache.key("Feature: test", includes, Collections.singletonMap("LIST", "")));
+    }
+
+    @Test
+    public void diskCacheTest() throws Exception {
+        File dir = Files.createTempDirectory("features").toFile();
+        System.setProperty("FEATURE_CACHE_DIR", dir.getPath());
+        try {
+            FeatureCacheUtils cache = new FeatureCacheUtils();
+            String key = cache.key("Feature: disk", Collections.<String, byte[]>emptyMap(), Collections.<String, String>emptyMap());
+            assertThat(cache.get(key)).as("Feature should not be cached yet").isNull();
+            cache.put(key, "Feature: expanded");
+
+            FeatureCacheUtils other = new FeatureCacheUtils();
+            assertThat(other.get(key)).as("Feature should be read from disk").isEqualTo("Feature: expanded");
+            assertThat(dir.list()).as("Only the cached feature should be left").containsExactly(key + ".feature");
+        } finally {
+            System.clearProperty("FEATURE_CACHE_DIR");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonDocumentUtilsTest {
+
+    @Test
+    public void parseOnceTest() {
+        JsonDocumentUtils utils = new JsonDocumentUtils();
+        String json = "{\"id\": 1, \"element\": {\"name\": \"value\"}}";
+
+        DocumentContext document = utils.parse(json);
+        assertThat(utils.parse(new String(json))).as("Document should be parsed once").isSameAs(document);
+        assertThat(utils.<String>read(document, "$.element.name")).as("Unexpected value").isEqualTo("value");
+        assertThat(utils.<Integer>read(document, "$.id")).as("Unexpected value").isEqualTo(1);
+    }
+
+    @Test
+    public void parseHjsonTest() {
+        JsonDocumentUtils utils = new JsonDocumentUtils();
+
+        DocumentContext document = utils.parse("{\n  key: value\n}");
+        assertThat(utils.<String>read(document, "$.key")).as("Unexpected value").isEqualTo("value");
+    }
+
+    @Test
+    public void compileOnceTest() {
+        JsonDocumentUtils utils = new JsonDocumentUtils();
+
+        assertThat(utils.compile("$.element.name")).as("Expression should be compiled once").isSameAs(utils.compile("$.element.name"));
+        utils.clear();
+        assertThat(utils.compile("$.element.name")).as("Expression should be compiled again").isNotNull();
+    }
+}
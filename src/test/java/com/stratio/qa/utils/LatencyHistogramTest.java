@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount()).as("Unexpected count").isEqualTo(0);
+        assertThat(histogram.getPercentile(99)).as("Unexpected percentile").isEqualTo(0);
+        assertThat(histogram.getMin()).as("Unexpected min").isEqualTo(0);
+    }
+
+    @Test
+    public void percentilesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(histogram.getCount()).as("Unexpected count").isEqualTo(1000);
+        assertThat((double) histogram.getPercentile(50)).as("Unexpected p50").isCloseTo(500000, within(500000 * 0.016));
+        assertThat((double) histogram.getPercentile(99)).as("Unexpected p99").isCloseTo(990000, within(990000 * 0.016));
+        assertThat(histogram.getPercentile(100)).as("Unexpected p100").isEqualTo(1000000);
+        assertThat(histogram.getMin()).as("Unexpected min").isEqualTo(1000);
+        assertThat(histogram.getMax()).as("Unexpected max").isEqualTo(1000000);
+        assertThat(histogram.getMean()).as("Unexpected mean").isCloseTo(500500, within(0.1));
+    }
+
+    @Test
+    public void bucketsTest() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 1000, 123456789, Long.MAX_VALUE / 2}) {
+            int index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.highestValue(index)).as("Value out of its bucket").isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(LatencyHistogram.highestValue(index - 1)).as("Value out of its bucket").isLessThan(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadResultsTest {
+
+    @Test
+    public void errorRateTest() {
+        LoadResults results = new LoadResults();
+        results.start();
+        results.record(TimeUnit.MILLISECONDS.toNanos(10), 200);
+        results.record(TimeUnit.MILLISECONDS.toNanos(10), 200);
+        results.record(TimeUnit.MILLISECONDS.toNanos(10), 503);
+        results.recordError();
+        results.finish();
+
+        assertThat(results.getRequests()).as("Unexpected number of requests").isEqualTo(4);
+        assertThat(results.getErrors()).as("Unexpected number of errors").isEqualTo(2);
+        assertThat(results.getErrorRate()).as("Unexpected error rate").isEqualTo(50.0);
+        assertThat(results.getStatusCodes()).as("Unexpected status codes").containsEntry(200, 2L).containsEntry(503, 1L);
+        assertThat(results.getPercentile(50)).as("Unexpected p50").isEqualTo(10.0);
+        assertThat(results.getThroughput()).as("Unexpected throughput").isGreaterThan(0);
+    }
+
+    @Test
+    public void unansweredTest() {
+        LoadResults results = new LoadResults();
+        results.start();
+        results.record(TimeUnit.MILLISECONDS.toNanos(10), 200);
+        results.finish();
+        results.recordUnanswered(2);
+        results.record(TimeUnit.MILLISECONDS.toNanos(10), 200);
+
+        assertThat(results.getRequests()).as("Unexpected number of requests").isEqualTo(3);
+        assertThat(results.getErrors()).as("Unexpected number of errors").isEqualTo(2);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.stratio.qa.exceptions.NonReplaceableException;
+import com.stratio.qa.utils.PlaceholderTemplate.Kind;
+import org.testng.annotations.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+
+public class PlaceholderTemplateTest {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private final PlaceholderTemplate.Resolver resolver = (kind, name, defaultValue) -> {
+        String value = values.get(kind.name() + ":" + name);
+        return value == null ? defaultValue : value;
+    };
+
+    @Test
+    public void renderTest() throws Exception {
+        values.put("ENVIRONMENT:HOST", "localhost");
+        values.put("VARIABLE:port", "8080");
+        values.put("CODE:JSON.a.json", "{\"a\":true}");
+
+        PlaceholderTemplate template = PlaceholderTemplate.compile("http://${HOST}:!{port}/ {\"body\": @{JSON.a.json}}");
+        assertThat(template.hasPlaceholders()).as("Template should have placeholders").isTrue();
+        assertThat(template.render(resolver)).as("Unexpected rendering").isEqualTo("http://localhost:8080/ {\"body\": {\"a\":true}}");
+        assertThat(PlaceholderTemplate.compile("{\"a\": \"$1 !\"}").hasPlaceholders()).as("Text should have no placeholders").isFalse();
+    }
+
+    @Test
+    public void nestedPlaceholdersTest() throws Exception {
+        values.put("ENVIRONMENT:NAME", "port");
+        values.put("VARIABLE:port", "8080");
+
+        assertThat(PlaceholderTemplate.compile("!{${NAME}}").render(resolver)).as("Unexpected nested rendering").isEqualTo("8080");
+        assertThat(PlaceholderTemplate.compile("${MISSING:-${NAME}}").render(resolver)).as("Unexpected nested default").isEqualTo("port");
+        assertThat(PlaceholderTemplate.compile("${MISSING:-a:-b}").render(resolver)).as("Unexpected default").isEqualTo("a:-b");
+    }
+
+    @Test
+    public void escapedPlaceholdersTest() throws Exception {
+        values.put("ENVIRONMENT:HOST", "localhost");
+
+        assertThat(PlaceholderTemplate.compile("\\${HOST} ${HOST}").render(resolver)).as("Unexpected escaped rendering").isEqualTo("${HOST} localhost");
+        assertThat(PlaceholderTemplate.compile("\\!{a}").hasPlaceholders()).as("Escaped text should have no placeholders").isFalse();
+    }
+
+    @Test
+    public void replacedValuesTest() throws Exception {
+        values.put("ENVIRONMENT:REF", "!{var}");
+        values.put("VARIABLE:var", "value");
+        values.put("VARIABLE:ref", "${REF}");
+
+        assertThat(PlaceholderTemplate.compile("${REF}").render(resolver)).as("Environment values should be replaced").isEqualTo("value");
+        assertThat(PlaceholderTemplate.compile("!{ref}").render(resolver)).as("Variable values should not be replaced by environment").isEqualTo("${REF}");
+        assertThat(PlaceholderTemplate.compile("${REF}", EnumSet.of(Kind.ENVIRONMENT)).render(resolver)).as("Only the given kinds should be replaced").isEqualTo("!{var}");
+    }
+
+    @Test
+    public void unresolvedPlaceholdersTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        PlaceholderTemplate template = PlaceholderTemplate.compile("a ${X} b ${X}");
+        assertThat(template.render((kind, name, defaultValue) -> {
+            calls.incrementAndGet();
+            return null;
+        })).as("Unresolved placeholders should be kept").isEqualTo("a ${X} b ${X}");
+        assertThat(calls.get()).as("Unexpected resolutions").isEqualTo(2);
+
+        assertThatExceptionOfType(NonReplaceableException.class).isThrownBy(() -> PlaceholderTemplate.compile("a ${X"));
+        values.put("VARIABLE:loop", "!{loop}");
+        assertThatExceptionOfType(NonReplaceableException.class).isThrownBy(() -> PlaceholderTemplate.compile("!{loop}").render(resolver));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.stratio.qa.utils.PollingUtils.Backoff;
+import com.stratio.qa.utils.PollingUtils.PollResult;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class PollingUtilsTest {
+
+    private final PollingUtils pollingUtils = new PollingUtils();
+
+    @Test
+    public void pollUntilSuccessTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        PollResult result = pollingUtils.poll("test", () -> calls.incrementAndGet() == 3, 5000, 10, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("Polling failed").isTrue();
+        assertThat(result.getAttempts()).as("Unexpected number of attempts").isEqualTo(3);
+        assertThat(result.getLatencies()).as("Unexpected number of latencies").hasSize(3);
+    }
+
+    @Test
+    public void pollAssertionErrorTest() throws Exception {
+        PollResult result = pollingUtils.poll("test", () -> {
+            assertThat("value").as("Unexpected value").isEqualTo("other");
+            return true;
+        }, 1000, 20, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("Polling succeeded").isFalse();
+        assertThat(result.getAttempts()).as("Unexpected number of attempts").isGreaterThan(1);
+        assertThat(result.getError().getMessage()).as("Unexpected error").contains("Unexpected value");
+    }
+
+    @Test
+    public void pollDeadlineCancelsProbeTest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean();
+        long start = System.nanoTime();
+        PollResult result = pollingUtils.poll("test", () -> {
+            if (calls.incrementAndGet() == 1) {
+                return false;
+            }
+            running.set(true);
+            try {
+                Thread.sleep(10000);
+            } finally {
+                Thread.sleep(100);
+                running.set(false);
+            }
+            return true;
+        }, 200, 50, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("Polling succeeded").isFalse();
+        assertThat(result.getAttempts()).as("Unexpected number of attempts").isEqualTo(2);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).as("Deadline not enforced").isLessThan(5000);
+        assertThat(running.get()).as("Cancelled probe still running").isFalse();
+        assertThat(result.getError().getMessage()).as("Unexpected error").contains("deadline");
+    }
+
+    @Test
+    public void pollFirstAttemptTest() throws Exception {
+        PollResult result = pollingUtils.poll("test", () -> {
+            Thread.sleep(100);
+            return true;
+        }, 0, 10, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("First probe not run until it finished").isTrue();
+        assertThat(result.getAttempts()).as("Unexpected number of attempts").isEqualTo(1);
+    }
+
+    @Test
+    public void pollExceptionTest() throws Exception {
+        try {
+            pollingUtils.poll("test", () -> {
+                throw new Exception("probe error");
+            }, 1000, 10, TimeUnit.MILLISECONDS, Backoff.FIXED);
+            fail("Expected Exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage()).as("Unexpected exception message").isEqualTo("probe error");
+        }
+    }
+
+    @Test
+    public void pollThreadPropertyTest() throws Exception {
+        ThreadProperty.set("pollingVar", "pollingValue");
+        PollResult result = pollingUtils.poll("test", () -> "pollingValue".equals(ThreadProperty.get("pollingVar")),
+                1000, 10, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("ThreadProperty not available in probe").isTrue();
+        ThreadProperty.remove("pollingVar");
+    }
+
+    @Test
+    public void pollVariableStoreTest() throws Exception {
+        VariableStore.current().set("pollingVar", "pollingValue");
+        AtomicInteger attempts = new AtomicInteger();
+        PollResult result = pollingUtils.poll("test", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                VariableStore.current().set("failedVar", "failedValue");
+                return false;
+            }
+            VariableStore.current().set("probeVar", "probeValue");
+            return "pollingValue".equals(VariableStore.current().get("pollingVar"));
+        }, 1000, 10, TimeUnit.MILLISECONDS, Backoff.FIXED);
+
+        assertThat(result.isSuccess()).as("Variable not available in probe").isTrue();
+        assertThat(VariableStore.current().get("probeVar")).as("Variable saved by probe not available").isEqualTo("probeValue");
+        assertThat(VariableStore.current().contains("failedVar")).as("Variable saved by failed probe available").isFalse();
+        VariableStore.current().clear();
+    }
+
+    @Test
+    public void pollResultErrorTest() {
+        PollResult result = new PollResult("test");
+
+        assertThat(result.hasError()).as("Default error reported as set").isFalse();
+        assertThat(result.getError().getMessage()).as("Unexpected default error").contains("condition not met");
+        result.setError(new AssertionError("probe error"));
+        assertThat(result.hasError()).as("Error not set").isTrue();
+        assertThat(result.getError().getMessage()).as("Unexpected error").isEqualTo("probe error");
+    }
+
+    @Test
+    public void backoffTest() {
+        long max = 1000;
+
+        assertThat(Backoff.FIXED.delay(100, 5, max)).as("Unexpected fixed delay").isEqualTo(100);
+        assertThat(Backoff.EXPONENTIAL.delay(100, 1, max)).as("Unexpected exponential delay").isEqualTo(100);
+        assertThat(Backoff.EXPONENTIAL.delay(100, 3, max)).as("Unexpected exponential delay").isEqualTo(400);
+        assertThat(Backoff.EXPONENTIAL.delay(100, 10, max)).as("Unexpected exponential delay").isEqualTo(max);
+        for (int i = 1; i < 10; i++) {
+            long exponential = Backoff.EXPONENTIAL.delay(100, i, max);
+            assertThat(Backoff.JITTERED.delay(100, i, max)).as("Unexpected jittered delay")
+                    .isBetween(exponential / 2, exponential);
+        }
+    }
+}
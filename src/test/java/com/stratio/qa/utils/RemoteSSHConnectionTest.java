@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RemoteSSHConnectionTest {
+
+    @Test
+    public void retryOnDeadSessionTest() throws Exception {
+        List<Session> connected = new CopyOnWriteArrayList<>();
+        List<ChannelExec> channels = new CopyOnWriteArrayList<>();
+        SshSessionUtils pool = new SshSessionUtils() {
+            @Override
+            Session connect(String user, String password, String host, int port, String pemFile) throws JSchException {
+                AtomicBoolean alive = new AtomicBoolean(true);
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenAnswer(invocation -> alive.get());
+                ChannelExec channel = connected.isEmpty() ? deadChannel(alive) : commandChannel("done\n", 0);
+                when(session.openChannel("exec")).thenReturn(channel);
+                connected.add(session);
+                channels.add(channel);
+                return session;
+            }
+        };
+
+        RemoteSSHConnection connection = new RemoteSSHConnection(pool, "root", "stratio", "node", null, null);
+        connection.runCommand("echo done");
+
+        assertThat(connected).as("Command not retried on a new session").hasSize(2);
+        verify(connected.get(0)).disconnect();
+        verify(channels.get(1)).disconnect();
+        assertThat(connection.getResult()).as("Unexpected result").isEqualTo("done");
+        assertThat(connection.getExitStatus()).as("Unexpected exit status").isEqualTo(0);
+    }
+
+    @Test
+    public void noRetryOnLiveSessionTest() throws Exception {
+        List<Session> connected = new CopyOnWriteArrayList<>();
+        SshSessionUtils pool = new SshSessionUtils() {
+            @Override
+            Session connect(String user, String password, String host, int port, String pemFile) throws JSchException {
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenReturn(true);
+                ChannelExec channel = deadChannel(new AtomicBoolean());
+                when(session.openChannel("exec")).thenReturn(channel);
+                connected.add(session);
+                return session;
+            }
+        };
+
+        RemoteSSHConnection connection = new RemoteSSHConnection(pool, "root", "stratio", "node", null, null);
+        try {
+            connection.runCommand("echo done");
+        } catch (JSchException e) {
+            assertThat(connected).as("Command retried on a live session").hasSize(1);
+            verify(connected.get(0), never()).disconnect();
+            return;
+        }
+        throw new AssertionError("Expected JSchException");
+    }
+
+    private static ChannelExec deadChannel(AtomicBoolean alive) throws JSchException {
+        ChannelExec channel = mock(ChannelExec.class);
+        doAnswer(invocation -> {
+            alive.set(false);
+            throw new JSchException("session is down");
+        }).when(channel).connect();
+        return channel;
+    }
+
+    /**
+     * Channel writing the output and closed a while after it, with the exit status only available once closed.
+     */
+    private static ChannelExec commandChannel(String output, int exitStatus) throws JSchException {
+        ChannelExec channel = mock(ChannelExec.class);
+        AtomicReference<OutputStream> errStream = new AtomicReference<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        try {
+            when(channel.getInputStream()).thenReturn(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        when(channel.getExitStatus()).thenAnswer(invocation -> closed.get() ? exitStatus : -1);
+        doAnswer(invocation -> {
+            errStream.set((OutputStream) invocation.getArguments()[0]);
+            return null;
+        }).when(channel).setErrStream(any(OutputStream.class));
+        doAnswer(invocation -> {
+            new Thread(() -> {
+                try {
+                    Thread.sleep(200);
+                    closed.set(true);
+                    errStream.get().close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }).start();
+            return null;
+        }).when(channel).connect();
+        return channel;
+    }
+}
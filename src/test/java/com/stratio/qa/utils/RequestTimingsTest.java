@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.assertj.core.data.Offset;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestTimingsTest {
+
+    @Test
+    public void pooledConnectionPhasesTest() throws InterruptedException {
+        RequestTimings timings = new RequestTimings("GET", "http://localhost:80/test");
+        timings.reused();
+        timings.requestSent();
+        Thread.sleep(5);
+        timings.firstByte(200);
+        timings.bodyPart(10);
+        timings.bodyPart(5);
+        timings.completed();
+
+        assertThat(timings.getDnsMillis()).as("Unexpected dns time").isEqualTo(0);
+        assertThat(timings.getConnectMillis()).as("Unexpected connect time").isEqualTo(0);
+        assertThat(timings.getTlsMillis()).as("Unexpected tls time").isEqualTo(0);
+        assertThat(timings.getTtfbMillis()).as("Unexpected time to first byte").isGreaterThanOrEqualTo(5);
+        assertThat(timings.getTotalMillis()).as("Unexpected total time").isGreaterThanOrEqualTo(timings.getTtfbMillis());
+
+        JSONObject json = timings.toJson();
+        assertThat(json.getInt("status")).as("Unexpected status").isEqualTo(200);
+        assertThat(json.getBoolean("reused")).as("Unexpected reused flag").isTrue();
+        assertThat(json.getLong("bodyBytes")).as("Unexpected body size").isEqualTo(15);
+    }
+
+    @Test
+    public void totalsTest() {
+        RequestTimings first = new RequestTimings("GET", "http://localhost:80/first");
+        first.completed();
+        RequestTimings second = new RequestTimings("POST", "http://localhost:80/second");
+        second.completed();
+
+        JSONObject totals = RequestTimings.totals(Arrays.asList(first, second));
+        assertThat(totals.getInt("requests")).as("Unexpected number of requests").isEqualTo(2);
+        assertThat(totals.getDouble("totalMs")).as("Unexpected total time")
+                .isEqualTo(first.getTotalMillis() + second.getTotalMillis(), Offset.offset(0.002));
+    }
+
+    @Test
+    public void drainTest() {
+        RequestTimingsUtils utils = new RequestTimingsUtils();
+        utils.drain();
+        utils.record(new RequestTimings("GET", "http://localhost:80/test"));
+
+        assertThat(utils.drain()).as("Unexpected drained timings").hasSize(utils.isEnabled() ? 1 : 0);
+        assertThat(utils.drain()).as("Timings should be forgotten once drained").isEmpty();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.AsyncHttpClient;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RestClientUtilsTest {
+
+    @Test
+    public void sameEndpointReusesClientTest() {
+        RestClientUtils utils = new RestClientUtils();
+        AsyncHttpClient first = utils.getClient("http://", "localhost", ":80");
+        AsyncHttpClient second = utils.getClient("http://", "localhost", ":80");
+
+        assertThat(second).as("Client not reused for the same endpoint").isSameAs(first);
+        assertThat(utils.size()).as("Unexpected number of pooled clients").isEqualTo(1);
+        utils.closeAll();
+    }
+
+    @Test
+    public void differentEndpointsUseDifferentClientsTest() {
+        RestClientUtils utils = new RestClientUtils();
+        AsyncHttpClient http = utils.getClient("http://", "localhost", ":80");
+        AsyncHttpClient https = utils.getClient("https://", "localhost", ":443");
+
+        assertThat(https).as("Client shared between different endpoints").isNotSameAs(http);
+        assertThat(utils.size()).as("Unexpected number of pooled clients").isEqualTo(2);
+        utils.closeAll();
+    }
+
+    @Test
+    public void closeAllTest() {
+        RestClientUtils utils = new RestClientUtils();
+        AsyncHttpClient client = utils.getClient("http://", "localhost", ":80");
+        utils.closeAll();
+
+        assertThat(client.isClosed()).as("Client not closed").isTrue();
+        assertThat(utils.size()).as("Pool not emptied").isEqualTo(0);
+        assertThat(utils.getClient("http://", "localhost", ":80")).as("Closed client returned").isNotSameAs(client);
+        utils.closeAll();
+    }
+}
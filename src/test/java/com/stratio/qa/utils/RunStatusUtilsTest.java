@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RunStatusUtilsTest {
+
+    @Test
+    public void totalsTest() {
+        RunStatusUtils status = new RunStatusUtils("", 1000);
+        status.start();
+        status.scenarioStarted("feature", "first");
+        status.scenarioFinished("PASS", 10.5);
+        status.scenarioStarted("feature", "second");
+        status.scenarioFinished("FAIL", 2);
+        status.scenarioStarted("feature", "third");
+        status.scenarioFinished(null, 0);
+        status.scenarioStarted("feature", "fourth");
+
+        assertThat(status.getTotal()).as("Unreported scenarios should not be counted").isEqualTo(2);
+        assertThat(status.getPassed()).as("Unexpected passed scenarios").isEqualTo(1);
+        assertThat(status.getFailed()).as("Unexpected failed scenarios").isEqualTo(1);
+        assertThat(status.getSkipped()).as("Unexpected skipped scenarios").isEqualTo(0);
+        assertThat(status.getRunning()).as("Unexpected running scenarios").isEqualTo(1);
+
+        JSONObject json = status.toJson();
+        assertThat(json.getDouble("durationMs")).as("Unexpected duration").isEqualTo(12.5);
+        assertThat(json.getString("lastScenario")).as("Unexpected last scenario").isEqualTo("fourth");
+        assertThat(json.getBoolean("running")).as("Execution should be running").isTrue();
+
+        status.stop();
+        status.start();
+        assertThat(status.getTotal()).as("Totals should be reset").isEqualTo(0);
+        status.stop();
+    }
+
+    @Test
+    public void concurrentRunnersTest() {
+        RunStatusUtils status = new RunStatusUtils("", 1000);
+        status.start();
+        status.scenarioStarted("feature", "first");
+        status.scenarioFinished("PASS", 1);
+        status.start();
+        assertThat(status.getTotal()).as("Totals should not be reset by a second runner").isEqualTo(1);
+        status.stop();
+        assertThat(status.toJson().getBoolean("running")).as("Execution should be running until the last runner stops")
+                .isTrue();
+        status.stop();
+        assertThat(status.toJson().getBoolean("running")).as("Execution should be stopped").isFalse();
+        status.stop();
+        status.start();
+        assertThat(status.getTotal()).as("Totals should be reset by a new run").isEqualTo(0);
+        status.stop();
+    }
+
+    @Test
+    public void statusFileTest() throws Exception {
+        File file = new File(Files.createTempDirectory("status").toFile(), "status.json");
+        RunStatusUtils status = new RunStatusUtils(file.getPath(), 60000);
+        status.start();
+        status.scenarioStarted("feature", "first");
+        status.scenarioFinished("SKIP", 1);
+        status.stop();
+
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertThat(json.getInt("skipped")).as("Unexpected skipped scenarios in status file").isEqualTo(1);
+        assertThat(json.getBoolean("running")).as("Execution should be finished").isFalse();
+    }
+}
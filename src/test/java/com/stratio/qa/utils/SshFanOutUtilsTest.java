@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SshFanOutUtilsTest {
+
+    private final SshFanOutUtils fanOut = new SshFanOutUtils();
+
+    @Test
+    public void resultsTest() throws Exception {
+        List<HostCommandResult> results = fanOut.run(Arrays.asList("host1", "host2", "host3"), (host, result) -> {
+            if ("host2".equals(host)) {
+                throw new IllegalStateException("Auth fail");
+            }
+            result.setExitStatus("host3".equals(host) ? 1 : 0);
+            result.setOutput("output of " + host);
+        }, 2, 10, TimeUnit.SECONDS);
+
+        assertThat(results).as("Unexpected number of results").hasSize(3);
+        assertThat(results.get(0).toRow()).as("Unexpected result of host1").containsExactly("host1", "0", "output of host1", "");
+        assertThat(results.get(1).toRow()).as("Unexpected result of host2").containsExactly("host2", "-1", "", "Auth fail");
+        assertThat(results.get(2).toRow()).as("Unexpected result of host3").containsExactly("host3", "1", "output of host3", "");
+    }
+
+    @Test
+    public void parallelismTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> hosts = Arrays.asList("host1", "host2", "host3", "host4", "host5", "host6", "host7", "host8");
+        List<HostCommandResult> results = fanOut.run(hosts, (host, result) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            result.setExitStatus(0);
+        }, 3, 10, TimeUnit.SECONDS);
+
+        assertThat(results).as("Unexpected number of results").hasSize(8);
+        assertThat(maxRunning.get()).as("Parallelism not bounded").isEqualTo(3);
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        long start = System.nanoTime();
+        List<HostCommandResult> results = fanOut.run(Arrays.asList("slow", "fast"), (host, result) -> {
+            if ("slow".equals(host)) {
+                Thread.sleep(10000);
+            }
+            result.setExitStatus(0);
+        }, 2, 200, TimeUnit.MILLISECONDS);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).as("Slow host not stopped").isLessThan(5000);
+        assertThat(results.get(0).isTimedOut()).as("Slow host not timed out").isTrue();
+        assertThat(results.get(0).getError()).as("Unexpected error").isEqualTo("Timed out after 200 ms");
+        assertThat(results.get(1).isTimedOut()).as("Fast host timed out").isFalse();
+        assertThat(results.get(1).getExitStatus()).as("Unexpected exit status").isEqualTo(0);
+    }
+
+    @Test
+    public void variablesTest() throws Exception {
+        VariableStore.current().set("fanOutVar", "value");
+        try {
+            List<HostCommandResult> results = fanOut.run(Arrays.asList("host1", "host2"),
+                    (host, result) -> result.setOutput(VariableStore.current().get("fanOutVar")), 2, 10, TimeUnit.SECONDS);
+
+            assertThat(results.get(1).getOutput()).as("Scenario variable not available in host").isEqualTo("value");
+        } finally {
+            VariableStore.current().remove("fanOutVar");
+        }
+    }
+}
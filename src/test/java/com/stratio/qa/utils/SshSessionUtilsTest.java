@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SshSessionUtilsTest {
+
+    @Test
+    public void keyTest() {
+        String key = SshSessionUtils.generateKey("root", "stratio", "localhost", 22, null);
+
+        assertThat(SshSessionUtils.generateKey("root", "stratio", "localhost", 22, null)).as("Key not stable").isEqualTo(key);
+        assertThat(SshSessionUtils.generateKey("root", "other", "localhost", 22, null)).as("Password not in key").isNotEqualTo(key);
+        assertThat(SshSessionUtils.generateKey("root", null, "localhost", 22, "key.pem")).as("Pem file not in key").isNotEqualTo(key);
+        assertThat(SshSessionUtils.generateKey("root", "stratio", "localhost", 2222, null)).as("Port not in key").isNotEqualTo(key);
+        assertThat(key).as("Password in clear in key").startsWith("root@localhost:22|").doesNotContain("stratio");
+    }
+
+    @Test
+    public void failedConnectionNotPooledTest() throws Exception {
+        SshSessionUtils utils = new SshSessionUtils();
+
+        assertThatExceptionOfType(JSchException.class).isThrownBy(() -> utils.getSession("root", "stratio", "127.0.0.1", 1, null));
+        assertThat(utils.size()).as("Failed session pooled").isEqualTo(0);
+        utils.closeAll();
+    }
+
+    @Test
+    public void blockedConnectionTest() throws Exception {
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        SshSessionUtils utils = new SshSessionUtils() {
+            @Override
+            Session connect(String user, String password, String host, int port, String pemFile) throws JSchException {
+                if ("unreachable".equals(host)) {
+                    connecting.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new JSchException("timeout: socket is not established");
+                }
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenReturn(true);
+                return session;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Session> blocked = executor.submit(() -> utils.getSession("root", "stratio", "unreachable", 22, null));
+            assertThat(connecting.await(10, TimeUnit.SECONDS)).as("Connection not started").isTrue();
+
+            Future<Session> healthy = executor.submit(() -> utils.getSession("root", "stratio", "healthy", 22, null));
+            assertThat(healthy.get(10, TimeUnit.SECONDS)).as("Blocked by the connection to another node").isNotNull();
+            assertThat(utils.size()).as("Unexpected pooled sessions").isEqualTo(1);
+
+            CountDownLatch interrupted = new CountDownLatch(1);
+            Thread waiting = new Thread(() -> {
+                try {
+                    utils.getSession("root", "stratio", "unreachable", 22, null);
+                } catch (JSchException e) {
+                    interrupted.countDown();
+                }
+            });
+            waiting.start();
+            waiting.interrupt();
+            assertThat(interrupted.await(10, TimeUnit.SECONDS)).as("Waiting connection not interrupted").isTrue();
+
+            unblock.countDown();
+            assertThatExceptionOfType(ExecutionException.class).isThrownBy(() -> blocked.get(10, TimeUnit.SECONDS));
+            assertThat(utils.size()).as("Failed session pooled").isEqualTo(1);
+        } finally {
+            unblock.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void channelLimitTest() throws Exception {
+        SshSessionUtils utils = withMaxChannels("2");
+        Session session = mock(Session.class);
+        Channel first = mock(Channel.class);
+        Channel third = mock(Channel.class);
+        when(session.openChannel("exec")).thenReturn(first, mock(Channel.class), third);
+        utils.openChannel(session, "exec");
+        utils.openChannel(session, "exec");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Channel> waiting = executor.submit(() -> utils.openChannel(session, "exec"));
+            assertThatExceptionOfType(TimeoutException.class).isThrownBy(() -> waiting.get(200, TimeUnit.MILLISECONDS));
+            utils.releaseChannel(session, first);
+            assertThat(waiting.get(10, TimeUnit.SECONDS)).as("Channel not opened once released").isSameAs(third);
+            verify(first).disconnect();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedChannelReleasedTest() throws Exception {
+        SshSessionUtils utils = withMaxChannels("1");
+        Session session = mock(Session.class);
+        Channel channel = mock(Channel.class);
+        when(session.openChannel("exec")).thenThrow(new JSchException("channel is not opened")).thenReturn(channel);
+
+        assertThatExceptionOfType(JSchException.class).isThrownBy(() -> utils.openChannel(session, "exec"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(executor.submit(() -> utils.openChannel(session, "exec")).get(10, TimeUnit.SECONDS))
+                    .as("Failed channel not released").isSameAs(channel);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void releaseAndInvalidateTest() throws Exception {
+        List<Session> connected = new CopyOnWriteArrayList<>();
+        SshSessionUtils utils = pool(connected);
+        Session session = utils.getSession("root", "stratio", "node", 22, null);
+
+        utils.release(session);
+        verify(session, never()).disconnect();
+        assertThat(utils.getSession("root", "stratio", "node", 22, null)).as("Released session not reused").isSameAs(session);
+
+        utils.invalidate(session);
+        verify(session).disconnect();
+        assertThat(utils.size()).as("Invalidated session pooled").isEqualTo(0);
+        assertThat(utils.getSession("root", "stratio", "node", 22, null)).as("Invalidated session reused").isNotSameAs(session);
+        assertThat(connected).as("Unexpected connections").hasSize(2);
+
+        Session unpooled = mock(Session.class);
+        utils.release(unpooled);
+        verify(unpooled).disconnect();
+    }
+
+    @Test
+    public void reconnectDeadSessionTest() throws Exception {
+        List<Session> connected = new CopyOnWriteArrayList<>();
+        SshSessionUtils utils = pool(connected);
+        Session session = utils.getSession("root", "stratio", "node", 22, null);
+        when(session.isConnected()).thenReturn(false);
+
+        Session reconnected = utils.getSession("root", "stratio", "node", 22, null);
+        assertThat(reconnected).as("Dead session reused").isNotSameAs(session);
+        assertThat(utils.size()).as("Unexpected pooled sessions").isEqualTo(1);
+        assertThat(utils.getSession("root", "stratio", "node", 22, null)).as("New session not pooled").isSameAs(reconnected);
+        assertThat(connected).as("Unexpected connections").hasSize(2);
+    }
+
+    private SshSessionUtils withMaxChannels(String maxChannels) {
+        System.setProperty("SSH_MAX_CHANNELS", maxChannels);
+        try {
+            return new SshSessionUtils();
+        } finally {
+            System.clearProperty("SSH_MAX_CHANNELS");
+        }
+    }
+
+    /**
+     * Pool connecting mocked sessions, added to the given list.
+     */
+    static SshSessionUtils pool(List<Session> connected) {
+        return new SshSessionUtils() {
+            @Override
+            Session connect(String user, String password, String host, int port, String pemFile) {
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenReturn(true);
+                connected.add(session);
+                return session;
+            }
+        };
+    }
+}
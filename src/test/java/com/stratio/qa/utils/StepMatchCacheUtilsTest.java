@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import cucumber.runtime.AmbiguousStepDefinitionsException;
+import cucumber.runtime.StepDefinition;
+import cucumber.runtime.StepDefinitionMatch;
+import cucumber.runtime.UndefinedStepsTracker;
+import cucumber.runtime.xstream.LocalizedXStreams;
+import gherkin.I18n;
+import gherkin.formatter.Argument;
+import gherkin.formatter.model.Step;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+public class StepMatchCacheUtilsTest {
+
+    private static final I18n I18N = new I18n("en");
+
+    private String previous;
+
+    @BeforeMethod
+    public void enableCache() {
+        previous = System.setProperty("STEP_MATCH_CACHE", "true");
+    }
+
+    @AfterMethod
+    public void restoreCache() {
+        if (previous == null) {
+            System.clearProperty("STEP_MATCH_CACHE");
+        } else {
+            System.setProperty("STEP_MATCH_CACHE", previous);
+        }
+    }
+
+    @Test
+    public void cachedMatchTest() throws Throwable {
+        StepMatchCacheUtils cache = new StepMatchCacheUtils();
+        StepDefinition matching = stepDefinition("^I do (.*)$", true);
+        StepDefinition other = stepDefinition("^I check (.*)$", false);
+        Glue glue = new Glue(matching, other);
+        AtomicInteger cucumberMatches = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            StepDefinitionMatch match = cache.match(glue, "test.feature", step("I do something"), I18N, () -> {
+                cucumberMatches.incrementAndGet();
+                return null;
+            });
+            assertThat(match).as("Step should match").isNotNull();
+            assertThat(match.getArguments()).as("Unexpected arguments").hasSize(1);
+        }
+
+        assertThat(cucumberMatches.get()).as("Cucumber should not match the step").isEqualTo(0);
+        assertThat(cache.getHits()).as("Unexpected hits").isEqualTo(2);
+        assertThat(cache.getMisses()).as("Unexpected misses").isEqualTo(1);
+        verify(matching, times(1)).matchedArguments(any(Step.class));
+        verify(other, times(1)).matchedArguments(any(Step.class));
+    }
+
+    @Test
+    public void ambiguousMatchTest() throws Throwable {
+        StepMatchCacheUtils cache = new StepMatchCacheUtils();
+        Glue glue = new Glue(stepDefinition("^I do (.*)$", true), stepDefinition("^I (.*) something$", true));
+        AtomicInteger cucumberMatches = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.match(glue, "test.feature", step("I do something"), I18N, () -> {
+                    cucumberMatches.incrementAndGet();
+                    return null;
+                });
+                fail("Expected AmbiguousStepDefinitionsException");
+            } catch (AmbiguousStepDefinitionsException e) {
+                assertThat(e.getMatches()).as("Unexpected ambiguous matches").hasSize(2);
+            }
+        }
+
+        assertThat(cucumberMatches.get()).as("Ambiguous steps should not be matched again by cucumber").isEqualTo(0);
+        assertThat(cache.getHits()).as("Ambiguous steps should not be cached").isEqualTo(0);
+        assertThat(cache.getAmbiguous()).as("Ambiguous step should be reported").hasSize(1);
+    }
+
+    @Test
+    public void undefinedStepTest() throws Throwable {
+        StepMatchCacheUtils cache = new StepMatchCacheUtils();
+        Glue glue = new Glue(stepDefinition("^I check (.*)$", false));
+        AtomicInteger cucumberMatches = new AtomicInteger();
+
+        StepDefinitionMatch match = cache.match(glue, "test.feature", step("I do something"), I18N, () -> {
+            cucumberMatches.incrementAndGet();
+            return null;
+        });
+
+        assertThat(match).as("Undefined step should not match").isNull();
+        assertThat(cucumberMatches.get()).as("Undefined steps should not be matched again by cucumber").isEqualTo(0);
+        assertThat(glue.tracker.hasUndefinedSteps()).as("Undefined step should be tracked").isTrue();
+    }
+
+    private StepDefinition stepDefinition(String pattern, boolean matches) {
+        StepDefinition stepDefinition = mock(StepDefinition.class);
+        when(stepDefinition.getPattern()).thenReturn(pattern);
+        when(stepDefinition.matchedArguments(any(Step.class)))
+                .thenReturn(matches ? Collections.singletonList(new Argument(5, "something")) : null);
+        return stepDefinition;
+    }
+
+    private Step step(String name) {
+        Step step = mock(Step.class);
+        when(step.getName()).thenReturn(name);
+        when(step.getKeyword()).thenReturn("Given ");
+        return step;
+    }
+
+    /**
+     * Fields read from the cucumber glue.
+     */
+    private static final class Glue {
+
+        private final Map<String, StepDefinition> stepDefinitionsByPattern = new TreeMap<>();
+
+        private final LocalizedXStreams localizedXStreams = null;
+
+        private final UndefinedStepsTracker tracker = new UndefinedStepsTracker();
+
+        private Glue(StepDefinition... stepDefinitions) {
+            for (StepDefinition stepDefinition : stepDefinitions) {
+                stepDefinitionsByPattern.put(stepDefinition.getPattern(), stepDefinition);
+            }
+        }
+    }
+}
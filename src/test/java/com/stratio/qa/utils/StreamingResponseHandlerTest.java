@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.AsyncHandler.STATE;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.fail;
+
+public class StreamingResponseHandlerTest {
+
+    private HttpResponseBodyPart part(byte[] bytes) {
+        HttpResponseBodyPart part = mock(HttpResponseBodyPart.class);
+        when(part.getBodyPartBytes()).thenReturn(bytes);
+        return part;
+    }
+
+    @Test
+    public void patternSplitBetweenPartsTest() throws Exception {
+        StreamingResponseHandler handler = new StreamingResponseHandler(Pattern.compile(Pattern.quote("\"status\":\"RUNNING\"")), false);
+
+        assertThat(handler.onBodyPartReceived(part("{\"id\":\"app\",\"sta".getBytes(StandardCharsets.UTF_8))))
+                .as("Unexpected state").isEqualTo(STATE.CONTINUE);
+        assertThat(handler.isMatched()).as("Pattern matched too early").isFalse();
+        assertThat(handler.onBodyPartReceived(part("tus\":\"RUNNING\"}".getBytes(StandardCharsets.UTF_8))))
+                .as("Unexpected state").isEqualTo(STATE.CONTINUE);
+        assertThat(handler.isMatched()).as("Pattern not matched").isTrue();
+        assertThat(handler.isAborted()).as("Response aborted").isFalse();
+    }
+
+    @Test
+    public void abortOnMatchTest() throws Exception {
+        StreamingResponseHandler handler = new StreamingResponseHandler(Pattern.compile("FAIL(ED)?"), true);
+
+        assertThat(handler.onBodyPartReceived(part("[\"OK\",\"FAILED\"".getBytes(StandardCharsets.UTF_8))))
+                .as("Response not aborted").isEqualTo(STATE.ABORT);
+        assertThat(handler.isMatched()).as("Pattern not matched").isTrue();
+        assertThat(handler.isAborted()).as("Response not aborted").isTrue();
+    }
+
+    @Test
+    public void abortedResponseTruncatedTest() throws Exception {
+        StreamingResponseHandler handler = new StreamingResponseHandler(Pattern.compile("FAIL(ED)?"), true);
+        handler.onStatusReceived(status());
+        handler.onBodyPartReceived(part("[\"OK\",\"FAILED\"".getBytes(StandardCharsets.UTF_8)));
+        HttpResponse response = handler.onCompleted();
+
+        assertThat(response.isTruncated()).as("Aborted response not truncated").isTrue();
+        assertThat(response.getStatusCode()).as("Unexpected status code").isEqualTo(200);
+        try {
+            response.getResponse();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).as("Unexpected exception message").contains("not completely read");
+        }
+    }
+
+    @Test
+    public void multiByteCharacterSplitBetweenPartsTest() throws Exception {
+        StreamingResponseHandler handler = new StreamingResponseHandler(Pattern.compile(Pattern.quote("año")), false);
+        byte[] bytes = "el año".getBytes(StandardCharsets.UTF_8);
+        // Split in the middle of the two bytes encoding 'ñ'
+        handler.onBodyPartReceived(part(Arrays.copyOfRange(bytes, 0, 5)));
+        handler.onBodyPartReceived(part(Arrays.copyOfRange(bytes, 5, bytes.length)));
+
+        assertThat(handler.isMatched()).as("Pattern not matched").isTrue();
+    }
+
+    @Test
+    public void anchoredPatternMatchedInWholeBodyTest() throws Exception {
+        StreamingResponseHandler handler = new StreamingResponseHandler(Pattern.compile("\"done\"}$"), false);
+        handler.onStatusReceived(status());
+        handler.onBodyPartReceived(part("{\"state\":\"done\"}".getBytes(StandardCharsets.UTF_8)));
+        handler.onBodyPartReceived(part("\n{\"state\":\"running\"}".getBytes(StandardCharsets.UTF_8)));
+        handler.onCompleted();
+
+        assertThat(handler.isMatched()).as("Anchored pattern matched the end of a part").isFalse();
+    }
+
+    @Test
+    public void matchLongerThanWindowTest() throws Exception {
+        System.setProperty("REST_STREAMING_MATCH_WINDOW", "8");
+        StreamingResponseHandler handler;
+        try {
+            handler = new StreamingResponseHandler(Pattern.compile("start.*end"), false);
+        } finally {
+            System.clearProperty("REST_STREAMING_MATCH_WINDOW");
+        }
+        handler.onStatusReceived(status());
+        handler.onBodyPartReceived(part("start-".getBytes(StandardCharsets.UTF_8)));
+        handler.onBodyPartReceived(part("0123456789".getBytes(StandardCharsets.UTF_8)));
+        handler.onBodyPartReceived(part("-end".getBytes(StandardCharsets.UTF_8)));
+        assertThat(handler.isMatched()).as("Pattern matched in the window").isFalse();
+        handler.onCompleted();
+
+        assertThat(handler.isMatched()).as("Pattern longer than the window not matched in the whole body").isTrue();
+    }
+
+    @Test
+    public void streamablePatternTest() {
+        assertThat(StreamingResponseHandler.isStreamable(Pattern.compile("FAIL(ED)?"))).as("Unexpected streamable").isTrue();
+        assertThat(StreamingResponseHandler.isStreamable(Pattern.compile(Pattern.quote("^$")))).as("Unexpected streamable").isTrue();
+        assertThat(StreamingResponseHandler.isStreamable(Pattern.compile("^OK"))).as("Unexpected streamable").isFalse();
+        assertThat(StreamingResponseHandler.isStreamable(Pattern.compile("\\bOK\\b"))).as("Unexpected streamable").isFalse();
+        assertThat(StreamingResponseHandler.isStreamable(Pattern.compile("(?<=id=)1"))).as("Unexpected streamable").isFalse();
+    }
+
+    private HttpResponseStatus status() {
+        Response response = mock(Response.class);
+        when(response.getStatusCode()).thenReturn(200);
+        HttpResponseStatus status = mock(HttpResponseStatus.class);
+        when(status.prepareResponse(any(HttpResponseHeaders.class), anyListOf(HttpResponseBodyPart.class))).thenReturn(response);
+        return status;
+    }
+}
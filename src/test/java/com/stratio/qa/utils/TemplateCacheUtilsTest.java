@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TemplateCacheUtilsTest {
+
+    @Test
+    public void templateInvalidationTest() throws Exception {
+        TemplateCacheUtils cache = new TemplateCacheUtils();
+        File file = File.createTempFile("template", ".conf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "first".getBytes(StandardCharsets.UTF_8));
+        URL resource = file.toURI().toURL();
+        AtomicInteger reads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            String data = cache.getTemplate(resource, "string", () -> {
+                reads.incrementAndGet();
+                return readFile(file);
+            });
+            assertThat(data).as("Unexpected template").isEqualTo("first");
+        }
+        assertThat(reads.get()).as("Template should be read once").isEqualTo(cache.isEnabled() ? 1 : 3);
+
+        Files.write(file.toPath(), "second".getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(file.lastModified() + 2000);
+        String data = cache.getTemplate(resource, "string", () -> readFile(file));
+        assertThat(data).as("Modified template should be read again").isEqualTo("second");
+    }
+
+    @Test
+    public void bodyTest() {
+        TemplateCacheUtils cache = new TemplateCacheUtils();
+        List<List<String>> modifications = Collections.singletonList(Arrays.asList("key1", "DELETE", "N/A"));
+
+        assertThat(cache.getBody("{\"key1\":\"value1\"}", "json", modifications)).as("Unexpected cached body").isNull();
+        cache.putBody("{\"key1\":\"value1\"}", "json", modifications, "{}");
+
+        if (cache.isEnabled()) {
+            assertThat(cache.getBody("{\"key1\":\"value1\"}", "json", Collections.singletonList(Arrays.asList("key1", "DELETE", "N/A"))))
+                    .as("Unexpected cached body").isEqualTo("{}");
+        }
+        assertThat(cache.getBody("{\"key1\":\"value1\"}", "string", modifications)).as("Type should be part of the key").isNull();
+        assertThat(cache.getBody("{\"key1\":\"value2\"}", "json", modifications)).as("Data should be part of the key").isNull();
+
+        cache.clear();
+        assertThat(cache.size()).as("Cache should be empty").isEqualTo(0);
+    }
+
+    private String readFile(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VariableStoreTest {
+
+    @AfterMethod
+    public void reset() {
+        VariableStore.reset();
+    }
+
+    @Test
+    public void typedValuesTest() {
+        VariableStore store = VariableStore.current();
+        store.set("string", "value");
+        store.setBytes("bytes", "binary".getBytes(StandardCharsets.UTF_8));
+        store.setJson("json", "{\"a\":{\"b\":[1,2]}}");
+        store.setTable("table", Arrays.asList(Arrays.asList("id", "name"), Arrays.asList("1", "first")));
+
+        assertThat(store.get("string")).as("Unexpected string").isEqualTo("value");
+        assertThat(store.get("bytes")).as("Unexpected bytes as string").isEqualTo("binary");
+        assertThat(store.get("json")).as("Unexpected json as string").isEqualTo("{\"a\":{\"b\":[1,2]}}");
+        assertThat(store.getJson("json").read("$.a.b[1]", Integer.class)).as("Unexpected json value").isEqualTo(2);
+        assertThat(store.get("table")).as("Unexpected table as string").isEqualTo("[[\"id\",\"name\"],[\"1\",\"first\"]]");
+        assertThat(store.getTable("table").get(1)).as("Unexpected table row").containsExactly("1", "first");
+        assertThat(store.getTable("string")).as("String returned as table").isNull();
+        assertThat(store.size()).as("Unexpected number of variables").isEqualTo(4);
+    }
+
+    @Test
+    public void removeTest() {
+        VariableStore store = VariableStore.current();
+        store.set("var", "value");
+        store.set("var", null);
+
+        assertThat(store.contains("var")).as("Variable not removed").isFalse();
+        assertThat(store.getMemoryBytes()).as("Memory of removed variable still accounted").isEqualTo(0);
+    }
+
+    @Test
+    public void removeThreadPropertyTest() {
+        ThreadProperty.set("legacyVar", "legacyValue");
+        VariableStore store = VariableStore.current();
+
+        assertThat(store.get("legacyVar")).as("ThreadProperty variable not read").isEqualTo("legacyValue");
+        store.set("legacyVar", "value");
+        store.remove("legacyVar");
+        assertThat(store.contains("legacyVar")).as("Former ThreadProperty value read after removal").isFalse();
+    }
+
+    @Test
+    public void memoryTest() {
+        VariableStore store = VariableStore.current();
+        store.set("var", "value");
+        long small = store.getMemoryBytes();
+        store.set("var", new String(new char[1000]));
+
+        assertThat(small).as("Memory not accounted").isGreaterThan(0);
+        assertThat(store.getMemoryBytes()).as("Replaced value not accounted").isGreaterThan(small + 1000);
+
+        store.clear();
+        assertThat(store.getMemoryBytes()).as("Memory not released").isEqualTo(0);
+        assertThat(store.size()).as("Variables not cleared").isEqualTo(0);
+    }
+
+    @Test
+    public void forkTest() {
+        VariableStore parent = VariableStore.current();
+        parent.set("shared", "parent");
+        parent.set("removed", "parent");
+        VariableStore child = parent.fork();
+        child.set("local", "child");
+        child.remove("removed");
+
+        assertThat(child.get("shared")).as("Parent variable not inherited").isEqualTo("parent");
+        assertThat(child.contains("removed")).as("Variable removed in child still visible").isFalse();
+        assertThat(parent.get("removed")).as("Variable removed in parent").isEqualTo("parent");
+        assertThat(parent.contains("local")).as("Child variable visible in parent").isFalse();
+    }
+
+    @Test
+    public void threadPropertyFallbackTest() {
+        ThreadProperty.set("legacy", "{\"key\":\"value\"}");
+        try {
+            VariableStore store = VariableStore.current().fork();
+
+            assertThat(store.get("legacy")).as("ThreadProperty not read").isEqualTo("{\"key\":\"value\"}");
+            assertThat(store.getJson("legacy").read("$.key", String.class)).as("ThreadProperty not read as json").isEqualTo("value");
+            store.set("legacy", "saved");
+            assertThat(store.get("legacy")).as("Saved variable not preferred").isEqualTo("saved");
+        } finally {
+            ThreadProperty.remove("legacy");
+        }
+    }
+
+    @Test
+    public void commitTest() {
+        VariableStore parent = VariableStore.current();
+        parent.set("removed", "parent");
+        VariableStore child = parent.fork();
+        child.set("local", "child");
+        child.remove("removed");
+        child.commit();
+
+        assertThat(parent.get("local")).as("Child variable not copied to parent").isEqualTo("child");
+        assertThat(parent.contains("removed")).as("Variable removed in child not removed in parent").isFalse();
+        assertThat(child.size()).as("Child not cleared").isEqualTo(0);
+    }
+
+    @Test
+    public void inheritTest() throws Exception {
+        VariableStore.current().set("shared", "value");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> values = Arrays.asList(
+                    executor.submit(VariableStore.inherit(() -> {
+                        VariableStore.current().set("worker", "first");
+                        return VariableStore.current().get("shared") + VariableStore.current().get("worker");
+                    })).get(),
+                    executor.submit(VariableStore.inherit(() -> VariableStore.current().get("shared") + VariableStore.current().get("worker"))).get());
+
+            assertThat(values).as("Unexpected values in workers").containsExactly("valuefirst", "valuenull");
+            assertThat(VariableStore.current().contains("worker")).as("Worker variable visible in scenario").isFalse();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
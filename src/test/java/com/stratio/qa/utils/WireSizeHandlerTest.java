@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunkTrailer;
+import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WireSizeHandlerTest {
+
+    private static final String BODY = "{\"key\":\"value value value value value value value value value value\"}";
+
+    @Test
+    public void compressedResponseTest() throws Exception {
+        byte[] compressed = gzip(BODY);
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new WireSizeHandler(), new HttpContentDecompressor());
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set("Content-Encoding", "gzip");
+        response.setContent(ChannelBuffers.wrappedBuffer(compressed));
+        embedder.offer(response);
+        embedder.finish();
+
+        HttpMessage decoded = (HttpMessage) embedder.poll();
+        assertThat(decoded.headers().get(WireSizeHandler.WIRE_LENGTH_HEADER)).as("Unexpected wire size").isEqualTo(String.valueOf(compressed.length));
+        assertThat(decoded.getContent().toString(StandardCharsets.UTF_8)).as("Unexpected body").isEqualTo(BODY);
+    }
+
+    @Test
+    public void chunkedCompressedResponseTest() throws Exception {
+        byte[] compressed = gzip(BODY);
+        int half = compressed.length / 2;
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new WireSizeHandler(), new HttpContentDecompressor());
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set("Content-Encoding", "gzip");
+        response.setChunked(true);
+        embedder.offer(response);
+        embedder.offer(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(compressed, 0, half)));
+        embedder.offer(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(compressed, half, compressed.length - half)));
+        embedder.offer(HttpChunk.LAST_CHUNK);
+        embedder.finish();
+
+        StringBuilder body = new StringBuilder();
+        String wireSize = null;
+        Object msg;
+        while ((msg = embedder.poll()) != null) {
+            if (msg instanceof HttpChunkTrailer) {
+                wireSize = ((HttpChunkTrailer) msg).trailingHeaders().get(WireSizeHandler.WIRE_LENGTH_HEADER);
+            } else if (msg instanceof HttpChunk) {
+                body.append(((HttpChunk) msg).getContent().toString(StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(wireSize).as("Unexpected wire size").isEqualTo(String.valueOf(compressed.length));
+        assertThat(body.toString()).as("Unexpected body").isEqualTo(BODY);
+    }
+
+    @Test
+    public void uncompressedResponseTest() {
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new WireSizeHandler(), new HttpContentDecompressor());
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.setContent(ChannelBuffers.wrappedBuffer(BODY.getBytes(StandardCharsets.UTF_8)));
+        embedder.offer(response);
+        embedder.finish();
+
+        HttpMessage decoded = (HttpMessage) embedder.poll();
+        assertThat(decoded.headers().get(WireSizeHandler.WIRE_LENGTH_HEADER)).as("Uncompressed responses should not be modified").isNull();
+        assertThat(WireSizeHandler.getWireSize(null, 10)).as("Unexpected wire size").isEqualTo(10);
+    }
+
+    private byte[] gzip(String text) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}